@@ -1,37 +1,66 @@
 package com.megan.dataproject.config;
 
+import com.megan.dataproject.model.JobType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
+/**
+ * Executors, one per kind of work. Pick by what the task waits on:
+ * <ul>
+ *   <li>cpuExecutor - CPU-bound (xlsx generation and parsing). Platform threads, one per
+ *   core by default, so these jobs don't oversubscribe the machine.</li>
+ *   <li>ioExecutor - file and network I/O (the CSV upload job, which mostly reads its file
+ *   and waits on inserts). Virtual threads, no limit.</li>
+ *   <li>dbExecutor - work that holds a DB connection per task (parallel export queries and
+ *   the score summary rebuild). Virtual threads behind a semaphore sized to the Hikari pool, less what
+ *   running jobs may hold, so tasks wait for a permit instead of timing out on a connection.</li>
+ * </ul>
+ * {@code @Scheduled} methods get their own small pool, see {@link #taskScheduler}.
+ */
 @Configuration
-@EnableAsync
+@EnableScheduling
+@EnableConfigurationProperties(JobSchedulerProperties.class)
 public class AsyncConfig {
 
-    @Bean(name = "taskExecutor")
-    public Executor taskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-
-        // Core pool size - threads always kept alive
-        executor.setCorePoolSize(4);
-
-        // Max pool size - maximum threads when queue is full
-        executor.setMaxPoolSize(8);
+    @Bean(name = "cpuExecutor", destroyMethod = "shutdown")
+    public WorkloadExecutor cpuExecutor(@Value("${app.executors.cpu-threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return WorkloadExecutor.platform("Cpu", size, 100);
+    }
 
-        // Queue capacity
-        executor.setQueueCapacity(100);
+    @Bean(name = "ioExecutor", destroyMethod = "shutdown")
+    public WorkloadExecutor ioExecutor() {
+        return WorkloadExecutor.virtual("Io", 0);
+    }
 
-        // Thread name prefix for debugging
-        executor.setThreadNamePrefix("DataProcessor-");
+    // One connection is left over for request threads (reports, counts, job status). Uploads and
+    // pipelines (through their upload stage) hold a connection each on ioExecutor while they insert,
+    // so as many as the scheduler lets run at once are held back too.
+    @Bean(name = "dbExecutor", destroyMethod = "shutdown")
+    public WorkloadExecutor dbExecutor(
+            @Value("${app.executors.db-permits:0}") int permits,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+            JobSchedulerProperties scheduler) {
+        return WorkloadExecutor.virtual("Db", permits > 0 ? permits : defaultDbPermits(poolSize, scheduler));
+    }
 
-        // Wait for tasks to complete on shutdown
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setAwaitTerminationSeconds(60);
+    static int defaultDbPermits(int poolSize, JobSchedulerProperties scheduler) {
+        int jobConnections = Math.min(scheduler.maxConcurrency(),
+                scheduler.limits(JobType.UPLOAD).concurrency() + scheduler.limits(JobType.PIPELINE).concurrency());
+        return Math.max(1, poolSize - 1 - jobConnections);
+    }
 
-        executor.initialize();
-        return executor;
+    // Boot's default with virtual threads runs every fixed-delay task on one scheduler thread,
+    // so a slow job-store flush or dispatcher heartbeat would hold up the 250ms SSE tick
+    @Bean(name = "taskScheduler", destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${app.executors.scheduler-threads:4}") int threads) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(2, threads));
+        scheduler.setThreadNamePrefix("Scheduled-");
+        return scheduler;
     }
 }
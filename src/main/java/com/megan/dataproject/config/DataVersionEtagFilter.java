@@ -0,0 +1,153 @@
+package com.megan.dataproject.config;
+
+import com.megan.dataproject.service.DataVersionService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Conditional GET for report, count and export responses. The ETag is the data version
+ * plus a hash of the request URI and query, so it is known before the controller runs:
+ * a matching If-None-Match gets a 304 without touching the database. The ETag and
+ * Cache-Control go out with 2xx responses only, so an error is never cached or revalidated
+ * as if it were the data.
+ */
+@Component
+@RequiredArgsConstructor
+public class DataVersionEtagFilter extends OncePerRequestFilter {
+
+    private static final String REPORT_PATH = "/api/students/report";
+    private static final String COUNT_PATH = "/api/students/count";
+
+    private final DataVersionService dataVersionService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return true;
+        }
+        String uri = request.getRequestURI();
+        return !(uri.equals(COUNT_PATH) || uri.equals(REPORT_PATH) || uri.startsWith(REPORT_PATH + "/"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        String etag = etag(request);
+
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            tag(response, etag);
+            // Short-circuits before the controller, so add the CORS header @CrossOrigin would have
+            if (request.getHeader(HttpHeaders.ORIGIN) != null) {
+                response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+            }
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        TaggingResponse tagging = new TaggingResponse(response, etag);
+        filterChain.doFilter(request, tagging);
+        // No body was written, e.g. a HEAD request
+        tagging.tagIfSuccessful();
+    }
+
+    private static void tag(HttpServletResponse response, String etag) {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        // Let the browser keep the response but revalidate before every reuse
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    }
+
+    /**
+     * Headers can't be taken back once set, and the status is only final when the body
+     * starts, so the tag is added then, and only if the status is 2xx by that point.
+     */
+    private static final class TaggingResponse extends HttpServletResponseWrapper {
+
+        private final String etag;
+        private boolean decided;
+
+        TaggingResponse(HttpServletResponse response, String etag) {
+            super(response);
+            this.etag = etag;
+        }
+
+        void tagIfSuccessful() {
+            if (decided || isCommitted()) {
+                return;
+            }
+            decided = true;
+            if (getStatus() >= 200 && getStatus() < 300) {
+                tag((HttpServletResponse) getResponse(), etag);
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            decided = true;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            decided = true;
+            super.sendError(sc);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            tagIfSuccessful();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            tagIfSuccessful();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            tagIfSuccessful();
+            super.flushBuffer();
+        }
+    }
+
+    private String etag(HttpServletRequest request) {
+        String queryString = request.getQueryString();
+        String target = queryString != null ? request.getRequestURI() + "?" + queryString : request.getRequestURI();
+        CRC32 crc = new CRC32();
+        crc.update(target.getBytes(StandardCharsets.UTF_8));
+        return "\"" + Long.toHexString(dataVersionService.current()) + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    // If-None-Match uses weak comparison and may list several tags or "*"
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,29 @@
+package com.megan.dataproject.config;
+
+import com.megan.dataproject.model.JobType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * app.scheduler: a global cap on running jobs plus, per job type, its own cap, queue
+ * length and share of the global slots. A type missing from app.scheduler.types gets
+ * the Limits defaults.
+ */
+@ConfigurationProperties(prefix = "app.scheduler")
+public record JobSchedulerProperties(
+        @DefaultValue("4") int maxConcurrency,
+        Map<JobType, Limits> types) {
+
+    public record Limits(
+            @DefaultValue("2") int concurrency,
+            @DefaultValue("20") int queueCapacity,
+            @DefaultValue("1") int weight) {
+    }
+
+    public Limits limits(JobType type) {
+        Limits limits = types == null ? null : types.get(type);
+        return limits != null ? limits : new Limits(2, 20, 1);
+    }
+}
@@ -0,0 +1,104 @@
+package com.megan.dataproject.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the Postgres-only indexes that JPA's @Index can't express.
+ * Runs after Hibernate's ddl-auto, and is a no-op on other databases (H2 in tests).
+ * With the partitioned schema the indexes come from schema-partitioned.sql instead,
+ * and this only checks that students really is partitioned.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SchemaInitializer {
+
+    // text_pattern_ops lets LIKE 'abc%' use the index regardless of the database collation
+    private static final List<String> POSTGRES_INDEXES = List.of(
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_student_first_name_prefix " +
+                    "ON students (lower(first_name) text_pattern_ops)",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_student_last_name_prefix " +
+                    "ON students (lower(last_name) text_pattern_ops)",
+            // Name-sorted offset pages order by code point so they match the replica
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_student_first_name_c_id " +
+                    "ON students (first_name COLLATE \"C\", student_id)",
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_student_last_name_c_id " +
+                    "ON students (last_name COLLATE \"C\", student_id)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.schema.partitioned:false}")
+    private boolean partitioned;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!isPostgres()) {
+            return;
+        }
+        dropEnumCheckConstraints();
+        if (partitioned) {
+            // schema-partitioned.sql already built every index; CONCURRENTLY fails on partitioned tables
+            verifyPartitioned();
+            return;
+        }
+        for (String ddl : POSTGRES_INDEXES) {
+            try {
+                // CONCURRENTLY can't run inside a transaction; JdbcTemplate autocommits here
+                jdbcTemplate.execute(ddl);
+            } catch (DataAccessException e) {
+                log.warn("Could not create index: {} - {}", ddl, e.getMessage());
+            }
+        }
+        log.info("Postgres expression indexes verified");
+    }
+
+    // Tables created while jobs.status and job_queue.job_type were @Enumerated carry a CHECK listing
+    // the enum values, which would reject a new JobStatus (e.g. CANCELLED) or JobType. The columns
+    // now go through EnumNameConverter and get none, so this only finds work once per old schema;
+    // the ALTER, and the table lock it takes, is skipped once the constraint is gone.
+    private void dropEnumCheckConstraints() {
+        Map.of("jobs", "jobs_status_check", "job_queue", "job_queue_job_type_check").forEach((table, constraint) -> {
+            Integer present = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_constraint WHERE conname = ? AND conrelid = to_regclass(?)",
+                    Integer.class, constraint, table);
+            if (present == null || present == 0) {
+                return;
+            }
+            try {
+                jdbcTemplate.execute("ALTER TABLE IF EXISTS " + table + " DROP CONSTRAINT IF EXISTS " + constraint);
+                log.info("Dropped {} left by the old enum mapping", constraint);
+            } catch (DataAccessException e) {
+                log.warn("Could not drop {}: {}", constraint, e.getMessage());
+            }
+        });
+    }
+
+    private void verifyPartitioned() {
+        Integer partitions = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_inherits i JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'students'",
+                Integer.class);
+        if (partitions == null || partitions == 0) {
+            log.warn("Partitioned schema requested but students is a plain table - " +
+                    "migrate it into the partitioned layout to get partition pruning");
+        } else {
+            log.info("students is list-partitioned by class into {} partitions", partitions);
+        }
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+        return product != null && product.toLowerCase().contains("postgres");
+    }
+}
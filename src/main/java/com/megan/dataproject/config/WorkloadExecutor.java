@@ -0,0 +1,137 @@
+package com.megan.dataproject.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for one kind of workload, with saturation counters. Two shapes:
+ * <ul>
+ *   <li>{@link #platform}: a fixed pool of platform threads, for CPU-bound work.</li>
+ *   <li>{@link #virtual}: a virtual thread per task, optionally behind a semaphore. The
+ *   semaphore bounds how many tasks run at once, e.g. to the DB connections they need,
+ *   while waiting tasks only park a virtual thread.</li>
+ * </ul>
+ * A task is "waiting" from submission until it gets a thread (platform) or a permit
+ * (virtual), then "active" until it returns.
+ */
+public class WorkloadExecutor implements java.util.concurrent.Executor {
+
+    private final String name;
+    private final String kind;
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final int capacity;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private WorkloadExecutor(String name, String kind, ExecutorService delegate, Semaphore permits, int capacity) {
+        this.name = name;
+        this.kind = kind;
+        this.delegate = delegate;
+        this.permits = permits;
+        this.capacity = capacity;
+    }
+
+    public static WorkloadExecutor platform(String name, int threads, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        return new WorkloadExecutor(name, "platform", pool, null, threads);
+    }
+
+    // permits <= 0 means unbounded
+    public static WorkloadExecutor virtual(String name, int permits) {
+        ExecutorService perTask = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+        return new WorkloadExecutor(name, "virtual", perTask,
+                permits > 0 ? new Semaphore(permits, true) : null, Math.max(permits, 0));
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long submittedAt = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            delegate.execute(() -> run(task, submittedAt));
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task, long submittedAt) {
+        if (permits != null) {
+            permits.acquireUninterruptibly();
+        }
+        waiting.decrementAndGet();
+        waitNanos.add(System.nanoTime() - submittedAt);
+        peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            task.run();
+        } catch (RuntimeException | Error e) {
+            failed.increment();
+            throw e;
+        } finally {
+            active.decrementAndGet();
+            completed.increment();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getStats() {
+        long done = completed.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("kind", kind);
+        // Threads for a platform pool, permits for a bounded virtual executor, 0 when unbounded
+        stats.put("capacity", capacity);
+        stats.put("active", active.get());
+        stats.put("waiting", waiting.get());
+        stats.put("peakActive", peakActive.get());
+        stats.put("saturation", capacity > 0 ? Math.round(active.get() * 100.0 / capacity) / 100.0 : null);
+        stats.put("completed", done);
+        stats.put("failed", failed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("averageWaitMillis", done > 0 ? Math.round(waitNanos.sum() / 1e4 / done) / 100.0 : 0.0);
+        return stats;
+    }
+
+    // Destroy method for the Spring bean; lets running tasks finish
+    public void shutdown() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(60, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,30 +1,49 @@
 package com.megan.dataproject.controller;
 
-import com.megan.dataproject.model.Student;
+import com.megan.dataproject.config.WorkloadExecutor;
+import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.JobType;
 import com.megan.dataproject.model.StudentClass;
 import com.megan.dataproject.payload.ApiResponse;
+import com.megan.dataproject.payload.CursorPageResponse;
 import com.megan.dataproject.payload.ExportResponse;
 import com.megan.dataproject.payload.PageResponse;
+import com.megan.dataproject.payload.PipelineRequest;
+import com.megan.dataproject.payload.ScoreStats;
+import com.megan.dataproject.payload.SliceResponse;
+import com.megan.dataproject.repository.StudentFilter;
+import com.megan.dataproject.repository.StudentView;
 import com.megan.dataproject.service.*;
+import com.megan.dataproject.sketch.DataProfile;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/students")
@@ -32,11 +51,24 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class StudentController {
 
-    private final ExcelGeneratorService excelGeneratorService;
-    private final ExcelToCsvService excelToCsvService;
-    private final CsvToDatabaseService csvToDatabaseService;
     private final JobService jobService;
+    private final JobDispatcher jobDispatcher;
+    private final FileStorageService fileStorageService;
     private final ReportService reportService;
+    private final FileDownloadService fileDownloadService;
+    private final StudentCountService studentCountService;
+    private final StudentColumnStore studentColumnStore;
+    private final ScoreStatsService scoreStatsService;
+    private final DataVersionService dataVersionService;
+    private final StudentCache studentCache;
+    private final StudentLookupService studentLookupService;
+    private final ArtifactService artifactService;
+    private final JobEventService jobEventService;
+    private final JobScheduler jobScheduler;
+    private final PipelineService pipelineService;
+    private final ResourceGovernor resourceGovernor;
+    private final List<WorkloadExecutor> workloadExecutors;
+    private final ObjectMapper objectMapper;
 
 
     // 1. POLLING ENDPOINT (Frontend calls this to check job status)
@@ -49,58 +81,112 @@ public class StudentController {
         return ResponseEntity.ok(ApiResponse.success("Job status retrieved", jobInfo));
     }
 
-    // 2. DOWNLOAD FILE (After job completes, download the generated file)
-    @GetMapping("/download/{jobId}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String jobId) {
-        try {
-            JobService.JobInfo jobInfo = jobService.getJob(jobId);
-            if (jobInfo == null || jobInfo.getResult() == null) {
-                return ResponseEntity.notFound().build();
-            }
+    // 1a. PROFILE (score quantiles, distinct names, class counts of the rows a finished job wrote)
+    @GetMapping("/status/{jobId}/profile")
+    public ResponseEntity<ApiResponse<DataProfile>> getJobProfile(@PathVariable String jobId) {
+        JobService.JobInfo jobInfo = jobService.getJob(jobId);
+        if (jobInfo == null || jobInfo.getProfile() == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ApiResponse.success("Job profile retrieved", jobInfo.getProfile()));
+    }
 
-            Path filePath = Paths.get(jobInfo.getResult());
-            Resource resource = new UrlResource(filePath.toUri());
+    // 1b. PROGRESS STREAM (text/event-stream; replaces polling /status/{jobId})
+    // Sends the current state, then a "job" event per change (coalesced), and closes when the job ends
+    @GetMapping(value = "/status/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJobStatus(@PathVariable String jobId) {
+        return jobEventService.subscribe(List.of(jobId))
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-            if (!resource.exists()) {
-                return ResponseEntity.notFound().build();
-            }
+    // 1c. MULTIPLEXED PROGRESS STREAM for several jobs on one connection: ?jobIds=a,b,c
+    // Each event carries its jobId; the stream closes once every job has ended
+    @GetMapping(value = "/status/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJobStatuses(@RequestParam List<String> jobIds) {
+        if (jobIds.isEmpty() || jobIds.size() > JobEventService.MAX_JOBS_PER_STREAM) {
+            return ResponseEntity.badRequest().build();
+        }
+        return jobEventService.subscribe(jobIds.stream().distinct().toList())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-            String fileName = filePath.getFileName().toString();
-            String contentType = fileName.endsWith(".xlsx")
-                    ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
-                    : fileName.endsWith(".csv") ? "text/csv" : "application/octet-stream";
+    // 1d. CANCEL: a queued job is CANCELLED at once; a running one stops at its next batch
+    // boundary (within 10,000 rows), discarding the batch in progress and any partial output
+    @PostMapping("/status/{jobId}/cancel")
+    public ResponseEntity<ApiResponse<Map<String, JobStatus>>> cancelJob(@PathVariable String jobId) {
+        Optional<JobStatus> status = jobService.cancel(jobId);
+        if (status.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (status.get() != JobStatus.CANCELLED && status.get().isTerminal()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(ApiResponse.error("Job already " + status.get()));
+        }
+        String message = status.get() == JobStatus.CANCELLED ? "Job cancelled" : "Cancellation requested";
+        return ResponseEntity.accepted().body(ApiResponse.success(message, Map.of("status", status.get())));
+    }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                    .body(resource);
+    // 2. DOWNLOAD FILE (After job completes, download the generated file)
+    // Supports Range, If-Range, If-None-Match and If-Modified-Since so large files can be resumed
+    @GetMapping("/download/{jobId}")
+    public void downloadFile(@PathVariable String jobId,
+                             HttpServletRequest request,
+                             HttpServletResponse response) throws IOException {
+        JobService.JobInfo jobInfo = jobService.getJob(jobId);
+        if (jobInfo == null || jobInfo.getResult() == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+        Path filePath = Paths.get(jobInfo.getResult());
+        if (!Files.isRegularFile(filePath)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
+
+        fileDownloadService.serve(filePath, request, response);
     }
 
     // A) Generate Excel (Async)
+    // Jobs go through JobDispatcher: 429 with Retry-After when the type's queue is full, 507 when
+    // the job's estimated memory or disk is more than ResourceGovernor could ever give it
     @PostMapping("/generate")
-    public ResponseEntity<ApiResponse<Map<String, String>>> generateExcel(@RequestParam int count) throws IOException {
+    public ResponseEntity<ApiResponse<Map<String, String>>> generateExcel(@RequestParam int count) {
+        Optional<String> tooLarge = resourceGovernor.checkFits(resourceGovernor.estimate(JobSpec.generate(count)));
+        if (tooLarge.isPresent()) {
+            return insufficientResources(tooLarge.get());
+        }
         String jobId = jobService.createJob();
-        excelGeneratorService.generateStudentsExcel(jobId, count);
-        return ResponseEntity.ok(ApiResponse.success("Excel generation started", Map.of("jobId", jobId)));
+        return startJob(jobId, JobSpec.generate(count), "Excel generation started");
     }
 
 
     // B) Process Excel to CSV (Async)
     @PostMapping("/process")
     public ResponseEntity<ApiResponse<Map<String, String>>> processToCsv(@RequestParam("file") MultipartFile file) {
+        // Checked before the upload is copied to disk
+        Optional<JobScheduler.Admission> full = jobDispatcher.checkCapacity(JobType.PROCESS);
+        if (full.isPresent()) {
+            return tooManyRequests(JobType.PROCESS, full.get());
+        }
+        Optional<String> tooLarge = resourceGovernor.checkFits(resourceGovernor.estimate(JobType.PROCESS, file.getSize()));
+        if (tooLarge.isPresent()) {
+            return insufficientResources(tooLarge.get());
+        }
+        File tempFile = null;
         try {
-            File tempFile = File.createTempFile("upload_raw_", ".xlsx");
+            // In app.storage.temp-path, so in a cluster any node can run the job
+            tempFile = fileStorageService.createTempInput("upload_raw_", ".xlsx");
             file.transferTo(tempFile);
 
             String jobId = jobService.createJob();
-            excelToCsvService.convertExceltoCsv(tempFile, jobId);
-            return ResponseEntity.ok(ApiResponse.success("CSV processing started", Map.of("jobId", jobId)));
+            // The job deletes it when it finishes
+            return startJob(jobId, JobSpec.process(tempFile.getAbsolutePath()), "CSV processing started");
 
         } catch (Exception e) {
+            deleteQuietly(tempFile);
             return ResponseEntity.internalServerError()
                     .body(ApiResponse.error("File upload failed: " + e.getMessage()));
         }
@@ -109,34 +195,123 @@ public class StudentController {
     // C) Upload CSV to DB (Async)
     @PostMapping("/upload")
     public ResponseEntity<ApiResponse<Map<String, String>>> uploadToDb(@RequestParam("file") MultipartFile file) {
+        Optional<JobScheduler.Admission> full = jobDispatcher.checkCapacity(JobType.UPLOAD);
+        if (full.isPresent()) {
+            return tooManyRequests(JobType.UPLOAD, full.get());
+        }
+        Optional<String> tooLarge = resourceGovernor.checkFits(resourceGovernor.estimate(JobType.UPLOAD, file.getSize()));
+        if (tooLarge.isPresent()) {
+            return insufficientResources(tooLarge.get());
+        }
+        File tempFile = null;
         try {
-            File tempFile = File.createTempFile("upload_csv_", ".csv");
+            tempFile = fileStorageService.createTempInput("upload_csv_", ".csv");
             file.transferTo(tempFile);
 
             String jobId = jobService.createJob();
-            csvToDatabaseService.uploadCsvToDatabase(jobId, tempFile.getAbsolutePath());
-            return ResponseEntity.ok(ApiResponse.success("Database upload started", Map.of("jobId", jobId)));
+            return startJob(jobId, JobSpec.upload(tempFile.getAbsolutePath()), "Database upload started");
 
         } catch (Exception e) {
+            deleteQuietly(tempFile);
             return ResponseEntity.internalServerError()
                     .body(ApiResponse.error("File upload failed: " + e.getMessage()));
         }
     }
+
+    // C2) Pipeline (Async): generate -> process -> upload as one job, rows streamed between stages.
+    // Body: {"count": 100000, "stages": ["GENERATE", "PROCESS", "UPLOAD"], "keep": ["PROCESS"]}
+    // Per-stage progress is in /status/{jobId} under "stages"
+    @PostMapping("/pipeline")
+    public ResponseEntity<ApiResponse<Map<String, String>>> runPipeline(@RequestBody PipelineRequest request) {
+        try {
+            pipelineService.validate(request);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+        JobSpec spec = JobSpec.pipeline(request);
+        Optional<String> tooLarge = resourceGovernor.checkFits(resourceGovernor.estimate(spec));
+        if (tooLarge.isPresent()) {
+            return insufficientResources(tooLarge.get());
+        }
+        String jobId = jobService.createJob();
+        return startJob(jobId, spec, "Pipeline started");
+    }
+
+    // A queue that filled up since the pre-check still rejects; the job is then recorded as
+    // FAILED, which also deletes its temp input
+    private ResponseEntity<ApiResponse<Map<String, String>>> startJob(String jobId, JobSpec spec, String message) {
+        JobScheduler.Admission admission = jobDispatcher.submit(jobId, spec);
+        if (!admission.accepted()) {
+            jobService.updateStatus(jobId, JobStatus.FAILED, "Rejected: " + spec.type() + " queue is full");
+            return tooManyRequests(spec.type(), admission);
+        }
+        return ResponseEntity.ok(ApiResponse.success(message, Map.of("jobId", jobId)));
+    }
+
+    private <T> ResponseEntity<ApiResponse<T>> tooManyRequests(JobType type, JobScheduler.Admission admission) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds()))
+                .body(ApiResponse.error(type + " queue is full, retry in " + admission.retryAfterSeconds() + "s"));
+    }
+
+    private <T> ResponseEntity<ApiResponse<T>> insufficientResources(String reason) {
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(ApiResponse.error(reason));
+    }
+
+    // The job never started, so nothing else will clean up its temp input
+    private void deleteQuietly(File tempFile) {
+        if (tempFile != null) {
+            try {
+                Files.deleteIfExists(tempFile.toPath());
+            } catch (IOException ignored) {
+                // Left for the artifact sweeper
+            }
+        }
+    }
     // D) REPORT ENDPOINTS
 
-    // D0) Get total count of students
+    // D0) Get total and per-class count of students (served from the replica or the count summary)
     @GetMapping("/count")
     public ResponseEntity<ApiResponse<Map<String, Long>>> getCount() {
-        Page<Student> page = reportService.getStudents(null, null, PageRequest.of(0, 1));
-        return ResponseEntity.ok(ApiResponse.success("Count retrieved",
-            Map.of("total", page.getTotalElements())));
+        Map<StudentClass, Long> counts = studentColumnStore.getCounts()
+            .orElseGet(studentCountService::getCounts);
+        return ResponseEntity.ok(ApiResponse.success("Count retrieved", countsWithTotal(counts)));
+    }
+
+    // D0b) Rebuild the count summary with an exact count(*) per class
+    @PostMapping("/count/recount")
+    public ResponseEntity<ApiResponse<Map<String, Long>>> recount() {
+        Map<StudentClass, Long> counts = studentCountService.recount();
+        // After the recount transaction commits, so cached /count responses revalidate
+        dataVersionService.bump();
+        return ResponseEntity.ok(ApiResponse.success("Count summary rebuilt", countsWithTotal(counts)));
+    }
+
+    // D0c) In-memory replica status: enabled, available (loaded and not mid-refresh), rows, size
+    @GetMapping("/replica")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getReplicaStatus() {
+        return ResponseEntity.ok(ApiResponse.success("Replica status retrieved", studentColumnStore.getStatus()));
     }
 
-    // D1) Get paginated students with search and filter
+    // D0d) Reload the replica from the database, e.g. after writes that bypass ingest
+    @PostMapping("/replica/reload")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> reloadReplica() {
+        studentColumnStore.reload();
+        return ResponseEntity.ok(ApiResponse.success("Replica reloaded", studentColumnStore.getStatus()));
+    }
+
+    private Map<String, Long> countsWithTotal(Map<StudentClass, Long> counts) {
+        Map<String, Long> body = new LinkedHashMap<>();
+        body.put("total", counts.values().stream().mapToLong(Long::longValue).sum());
+        counts.forEach((studentClass, count) -> body.put(studentClass.name(), count));
+        return body;
+    }
+
+    // D1) Get paginated students with search and filter.
+    // Filters bind from query params: studentId, studentClass, name (first/last name prefix)
     @GetMapping("/report")
-    public ResponseEntity<ApiResponse<PageResponse<Student>>> getReport(
-            @RequestParam(required = false) Long studentId,
-            @RequestParam(required = false) StudentClass studentClass,
+    public ResponseEntity<ApiResponse<PageResponse<StudentView>>> getReport(
+            StudentFilter filter,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size,
             @RequestParam(defaultValue = "studentId") String sortBy,
@@ -147,38 +322,207 @@ public class StudentController {
                 : Sort.by(sortBy).ascending();
 
         Pageable pageable = PageRequest.of(page, size, sort);
-        Page<Student> students = reportService.getStudents(studentId, studentClass, pageable);
+        Page<StudentView> students = reportService.getStudents(filter, pageable);
 
         return ResponseEntity.ok(ApiResponse.success("Report data retrieved", PageResponse.from(students)));
     }
 
+    // D1a) Same as /report but without totalElements/totalPages, so no count query runs
+    @GetMapping("/report/slice")
+    public ResponseEntity<ApiResponse<SliceResponse<StudentView>>> getReportSlice(
+            StudentFilter filter,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "studentId") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDir) {
+
+        Sort sort = sortDir.equalsIgnoreCase("desc")
+                ? Sort.by(sortBy).descending()
+                : Sort.by(sortBy).ascending();
+
+        Slice<StudentView> students = reportService.getStudentSlice(filter, PageRequest.of(page, size, sort));
+
+        return ResponseEntity.ok(ApiResponse.success("Report data retrieved", SliceResponse.from(students)));
+    }
+
+    // D1b) Keyset pagination: pass back nextCursor/previousCursor from the previous response.
+    // Cost per page stays flat no matter how deep the client scrolls.
+    @GetMapping("/report/cursor")
+    public ResponseEntity<ApiResponse<CursorPageResponse<StudentView>>> getReportByCursor(
+            StudentFilter filter,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "studentId") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortDir) {
+        try {
+            CursorPageResponse<StudentView> students = reportService.getStudentsByCursor(
+                    filter, cursor, size, sortBy, sortDir);
+            return ResponseEntity.ok(ApiResponse.success("Report data retrieved", students));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    // D1c) Bulk lookup: POST a JSON array of ids. Students stream back in request order,
+    // followed by missingIds, so one call replaces hundreds of /report?studentId= polls.
+    @PostMapping("/lookup")
+    public void lookupStudents(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long[] ids;
+        try {
+            ids = studentLookupService.readIds(request.getInputStream());
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), ApiResponse.error(e.getMessage()));
+            return;
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        studentLookupService.writeLookup(ids, response.getOutputStream());
+    }
+
     // D2) Export to CSV
+    // Exports are built in memory, so each reserves its estimated size with ResourceGovernor first:
+    // 507 if it could never fit, 503 with Retry-After if there's no room within app.governor.export-wait
     @GetMapping("/report/export/csv")
     public ResponseEntity<ApiResponse<ExportResponse>> exportToCsv(
-            @RequestParam(required = false) Long studentId,
-            @RequestParam(required = false) StudentClass studentClass) throws IOException {
+            StudentFilter filter,
+            @RequestParam(defaultValue = "false") boolean parallel) throws IOException {
 
-        ExportResponse export = reportService.exportToCsv(studentId, studentClass);
-        return ResponseEntity.ok(ApiResponse.success("CSV export generated", export));
+        return governedExport(ResourceGovernor.Export.CSV, filter, "CSV export generated",
+                () -> reportService.exportToCsv(filter, parallel));
     }
 
     // D3) Export to Excel
     @GetMapping("/report/export/excel")
     public ResponseEntity<ApiResponse<ExportResponse>> exportToExcel(
-            @RequestParam(required = false) Long studentId,
-            @RequestParam(required = false) StudentClass studentClass) throws IOException {
+            StudentFilter filter,
+            @RequestParam(defaultValue = "false") boolean parallel) throws IOException {
 
-        ExportResponse export = reportService.exportToExcel(studentId, studentClass);
-        return ResponseEntity.ok(ApiResponse.success("Excel export generated", export));
+        return governedExport(ResourceGovernor.Export.EXCEL, filter, "Excel export generated",
+                () -> reportService.exportToExcel(filter, parallel));
     }
 
     // D4) Export to PDF
     @GetMapping("/report/export/pdf")
     public ResponseEntity<ApiResponse<ExportResponse>> exportToPdf(
-            @RequestParam(required = false) Long studentId,
-            @RequestParam(required = false) StudentClass studentClass) {
+            StudentFilter filter,
+            @RequestParam(defaultValue = "false") boolean parallel) throws IOException {
+
+        return governedExport(ResourceGovernor.Export.PDF, filter, "PDF export generated",
+                () -> reportService.exportToPdf(filter, parallel));
+    }
+
+    @FunctionalInterface
+    private interface ExportCall {
+        ExportResponse run() throws IOException;
+    }
+
+    // The reservation ends when the response body is built; Jackson writes it out afterwards
+    private ResponseEntity<ApiResponse<ExportResponse>> governedExport(ResourceGovernor.Export format,
+            StudentFilter filter, String message, ExportCall export) throws IOException {
+        ResourceGovernor.Footprint footprint = resourceGovernor.estimateExport(format, reportService.estimateRows(filter));
+        Optional<String> tooLarge = resourceGovernor.checkFits(footprint);
+        if (tooLarge.isPresent()) {
+            return insufficientResources(tooLarge.get() + "; narrow the filter");
+        }
+        String owner = "export-" + UUID.randomUUID();
+        if (!resourceGovernor.awaitReservation(owner, format + " export", footprint)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(resourceGovernor.retryAfterSeconds()))
+                    .body(ApiResponse.error("Not enough free memory or disk for this export right now"));
+        }
+        try {
+            return ResponseEntity.ok(ApiResponse.success(message, export.run()));
+        } finally {
+            resourceGovernor.release(owner);
+        }
+    }
+
+    // E) STATISTICS ENDPOINTS (served from the score_buckets summary, never scan students)
+
+    // E1) Score count, mean, min, max and percentiles: "total" plus one entry per class
+    @GetMapping("/stats/score")
+    public ResponseEntity<ApiResponse<Map<String, ScoreStats>>> getScoreStats() {
+        return ResponseEntity.ok(ApiResponse.success("Score statistics retrieved", scoreStatsService.getStatsByClass()));
+    }
+
+    // E2) Score histogram, optionally for one class, grouped into ranges of bucketWidth
+    @GetMapping("/stats/score/histogram")
+    public ResponseEntity<ApiResponse<Map<String, Long>>> getScoreHistogram(
+            @RequestParam(required = false) StudentClass studentClass,
+            @RequestParam(defaultValue = "5") int bucketWidth) {
+
+        if (bucketWidth < 1) {
+            return ResponseEntity.badRequest().body(ApiResponse.error("bucketWidth must be at least 1"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("Score histogram retrieved",
+            scoreStatsService.getHistogram(studentClass, bucketWidth)));
+    }
+
+    // E3) Rebuild the score summary, e.g. after writes that bypass ingest
+    @PostMapping("/stats/score/refresh")
+    public ResponseEntity<ApiResponse<Map<String, ScoreStats>>> refreshScoreStats() {
+        scoreStatsService.refresh();
+        return ResponseEntity.ok(ApiResponse.success("Score summary rebuilt", scoreStatsService.getStatsByClass()));
+    }
+
+    // F) CACHE ENDPOINTS
+
+    // F1) Single-student lookup cache: size, hits, misses, hit rate, evictions, invalidations
+    @GetMapping("/cache/students")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getStudentCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success("Cache stats retrieved", studentCache.getStats()));
+    }
+
+    // F2) Empty the cache, e.g. after writes that bypass ingest
+    @DeleteMapping("/cache/students")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> clearStudentCache() {
+        studentCache.clear();
+        dataVersionService.bump();
+        return ResponseEntity.ok(ApiResponse.success("Cache cleared", studentCache.getStats()));
+    }
+
+    // G) ARTIFACT ENDPOINTS
+
+    // G1) Output disk usage against the quota, files and bytes reclaimed so far, last sweep
+    @GetMapping("/artifacts")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getArtifactStatus() {
+        return ResponseEntity.ok(ApiResponse.success("Artifact status retrieved", artifactService.getStatus()));
+    }
+
+    // G2) Run the sweeper now instead of waiting for app.artifacts.sweep-interval
+    @PostMapping("/artifacts/sweep")
+    public ResponseEntity<ApiResponse<ArtifactService.SweepResult>> sweepArtifacts() {
+        return ResponseEntity.ok(ApiResponse.success("Artifact sweep completed", artifactService.sweep()));
+    }
+
+    // H) SCHEDULER ENDPOINTS
+
+    // H1) Running and queued jobs per type, with caps, weights and average durations
+    @GetMapping("/scheduler")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getSchedulerStatus() {
+        return ResponseEntity.ok(ApiResponse.success("Scheduler status retrieved", jobScheduler.getStatus()));
+    }
+
+    // H2) Executor saturation: active and waiting tasks, capacity, peak, rejections, average wait
+    @GetMapping("/executors")
+    public ResponseEntity<ApiResponse<Map<String, Map<String, Object>>>> getExecutorStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        workloadExecutors.forEach(executor -> stats.put(executor.getName(), executor.getStats()));
+        return ResponseEntity.ok(ApiResponse.success("Executor stats retrieved", stats));
+    }
+
+    // H3) Cluster: this node's id, every node's last heartbeat and claimed jobs, and jobs waiting
+    // in the shared queue per type. Only enabled and nodeId on a single node
+    @GetMapping("/cluster")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getClusterStatus() {
+        return ResponseEntity.ok(ApiResponse.success("Cluster status retrieved", jobDispatcher.getStatus()));
+    }
 
-        ExportResponse export = reportService.exportToPdf(studentId, studentClass);
-        return ResponseEntity.ok(ApiResponse.success("PDF export generated", export));
+    // H4) Resources: memory and disk budgets, what running jobs and exports have reserved, and
+    // how many were turned away
+    @GetMapping("/resources")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getResourceStatus() {
+        return ResponseEntity.ok(ApiResponse.success("Resource status retrieved", resourceGovernor.getStatus()));
     }
 }
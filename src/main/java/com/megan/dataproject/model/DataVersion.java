@@ -0,0 +1,23 @@
+package com.megan.dataproject.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Version of the students data shared by the nodes of a cluster, bumped by every committed ingest batch
+@Entity
+@Table(name = "data_version")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DataVersion {
+    @Id
+    @Column(name = "name")
+    private String name;
+
+    private long version;
+}
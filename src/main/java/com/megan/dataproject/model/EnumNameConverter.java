@@ -0,0 +1,40 @@
+package com.megan.dataproject.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Stores an enum by name, as @Enumerated(STRING) does, but without the CHECK listing the constants
+// that Hibernate adds for @Enumerated columns. ddl-auto update never widens that CHECK, so a new
+// JobStatus or JobType would be rejected; columns written through a converter get none.
+public abstract class EnumNameConverter<E extends Enum<E>> implements AttributeConverter<E, String> {
+
+    private final Class<E> type;
+
+    protected EnumNameConverter(Class<E> type) {
+        this.type = type;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(E value) {
+        return value == null ? null : value.name();
+    }
+
+    @Override
+    public E convertToEntityAttribute(String name) {
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+
+    @Converter
+    public static class JobStatusConverter extends EnumNameConverter<JobStatus> {
+        public JobStatusConverter() {
+            super(JobStatus.class);
+        }
+    }
+
+    @Converter
+    public static class JobTypeConverter extends EnumNameConverter<JobType> {
+        public JobTypeConverter() {
+            super(JobType.class);
+        }
+    }
+}
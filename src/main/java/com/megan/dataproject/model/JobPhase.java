@@ -0,0 +1,6 @@
+package com.megan.dataproject.model;
+
+// Where a job's time goes; JobTelemetry keeps one duration per phase
+public enum JobPhase {
+    READ, PARSE, TRANSFORM, WRITE, COMMIT
+}
@@ -0,0 +1,73 @@
+package com.megan.dataproject.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// A job waiting for, or held by, a node in a cluster. ClusterJobQueue reads and writes the
+// table with plain SQL (SELECT ... FOR UPDATE SKIP LOCKED); the entity only defines it.
+@Entity
+@Table(name = "job_queue", indexes = {
+    @Index(name = "idx_job_queue_claim", columnList = "state, job_type, id"),
+    @Index(name = "idx_job_queue_owner", columnList = "owner_node")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobQueueEntry {
+
+    public enum State { QUEUED, CLAIMED }
+
+    // Claim order within a type
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false, unique = true)
+    private String jobId;
+
+    @Convert(converter = EnumNameConverter.JobTypeConverter.class)
+    @Column(name = "job_type", nullable = false)
+    private JobType jobType;
+
+    // JobSpec as JSON
+    @Column(length = 4096, nullable = false)
+    private String spec;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private State state;
+
+    // Node holding the job while CLAIMED; it loses it if the lease runs out
+    @Column(name = "owner_node")
+    private String ownerNode;
+
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+
+    // When the current claim started running; cleared if the job goes back to the queue
+    @Column(name = "started_at")
+    private Instant startedAt;
+
+    // Claims so far, including ones whose node died
+    private int attempts;
+
+    // Set by a node that can't stop the job itself; the owner stops it at its next heartbeat
+    @Column(name = "cancel_requested")
+    private boolean cancelRequested;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+}
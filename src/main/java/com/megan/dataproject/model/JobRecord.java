@@ -0,0 +1,42 @@
+package com.megan.dataproject.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Durable copy of a job's status, so /status/{jobId} survives restarts and hot-tier eviction
+@Entity
+@Table(name = "jobs", indexes = {
+    @Index(name = "idx_job_updated_at", columnList = "updated_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobRecord {
+    @Id
+    @Column(name = "job_id")
+    private String jobId;
+
+    @Convert(converter = EnumNameConverter.JobStatusConverter.class)
+    private JobStatus status;
+
+    @Column(length = 2048)
+    private String result;
+
+    private int progress;
+
+    private long processedCount;
+
+    private long totalCount;
+
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+}
@@ -1,5 +1,10 @@
 package com.megan.dataproject.model;
 
 public enum JobStatus {
-    SUBMITTED, PROCESSING, COMPLETED, FAILED
+    SUBMITTED, PROCESSING, COMPLETED, FAILED, CANCELLED;
+
+    // No further updates follow a terminal status
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
 }
@@ -0,0 +1,7 @@
+package com.megan.dataproject.model;
+
+// Kinds of background job; each has its own queue and concurrency cap in JobScheduler.
+// GENERATE, PROCESS and UPLOAD are also the stages a PIPELINE job chains together.
+public enum JobType {
+    GENERATE, PROCESS, UPLOAD, PIPELINE
+}
@@ -0,0 +1,38 @@
+package com.megan.dataproject.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+// Number of students per (StudentClass, score), rebuilt from students after each ingest job
+@Entity
+@Table(name = "score_buckets")
+@IdClass(ScoreBucket.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoreBucket {
+    @Id
+    @Column(name = "class_key")
+    private String classKey;
+
+    @Id
+    private int score;
+
+    private long rowCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String classKey;
+        private int score;
+    }
+}
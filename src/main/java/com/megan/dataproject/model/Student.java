@@ -8,7 +8,13 @@ import java.time.LocalDate;
 @Table(name = "students", indexes = {
     @Index(name = "idx_student_class", columnList = "class"),
     @Index(name = "idx_student_score", columnList = "score"),
-    @Index(name = "idx_student_class_score", columnList = "class, score")
+    @Index(name = "idx_student_class_score", columnList = "class, score"),
+    // (sort column, student_id) pairs back keyset pagination on /report/cursor
+    @Index(name = "idx_student_first_name_id", columnList = "first_name, student_id"),
+    @Index(name = "idx_student_last_name_id", columnList = "last_name, student_id"),
+    @Index(name = "idx_student_dob_id", columnList = "dob, student_id"),
+    @Index(name = "idx_student_class_id", columnList = "class, student_id"),
+    @Index(name = "idx_student_score_id", columnList = "score, student_id")
 })
 @Data
 @NoArgsConstructor
@@ -0,0 +1,23 @@
+package com.megan.dataproject.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Row counts per StudentClass, kept in step with students by the ingest jobs
+@Entity
+@Table(name = "student_counts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentCount {
+    @Id
+    @Column(name = "class_key")
+    private String classKey;
+
+    private long rowCount;
+}
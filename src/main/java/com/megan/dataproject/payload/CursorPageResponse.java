@@ -0,0 +1,19 @@
+package com.megan.dataproject.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CursorPageResponse<T> {
+    private List<T> content;
+    private int size;
+    private String nextCursor;     // null on the last page
+    private String previousCursor; // null on the first page
+    private boolean hasNext;
+    private boolean hasPrevious;
+}
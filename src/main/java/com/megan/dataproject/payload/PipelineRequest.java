@@ -0,0 +1,19 @@
+package com.megan.dataproject.payload;
+
+import com.megan.dataproject.model.JobType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+
+// Body of POST /pipeline: stages run in order, each fed the rows of the one before it
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PipelineRequest {
+    private int count;                          // rows to generate
+    private List<JobType> stages = List.of(JobType.GENERATE, JobType.PROCESS, JobType.UPLOAD);
+    private Set<JobType> keep = Set.of();       // stages whose file (workbook, CSV) is kept besides the last one's
+}
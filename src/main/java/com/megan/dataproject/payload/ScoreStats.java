@@ -0,0 +1,19 @@
+package com.megan.dataproject.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// Score summary for one class or for all students; min/max/mean are null when count is 0
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoreStats {
+    private long count;
+    private Double mean;
+    private Integer min;
+    private Integer max;
+    private Map<String, Integer> percentiles; // p25, p50, p75, p90, p99
+}
@@ -0,0 +1,26 @@
+package com.megan.dataproject.payload;
+
+import lombok.Data;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+// PageResponse without totals, for clients that only need "is there more"
+@Data
+public class SliceResponse<T> {
+    private List<T> content;
+    private int number;
+    private int size;
+    private boolean first;
+    private boolean last;
+
+    public static <T> SliceResponse<T> from(Slice<T> slice) {
+        SliceResponse<T> response = new SliceResponse<>();
+        response.setContent(slice.getContent());
+        response.setNumber(slice.getNumber());
+        response.setSize(slice.getSize());
+        response.setFirst(slice.isFirst());
+        response.setLast(slice.isLast());
+        return response;
+    }
+}
@@ -0,0 +1,20 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.JobRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface JobRecordRepository extends JpaRepository<JobRecord, String> {
+
+    // Retention cleanup for the durable tier
+    @Modifying
+    @Transactional
+    @Query("delete from JobRecord j where j.updatedAt < :cutoff")
+    int deleteUpdatedBefore(Instant cutoff);
+}
@@ -0,0 +1,13 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.ScoreBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ScoreBucketRepository extends JpaRepository<ScoreBucket, ScoreBucket.Key> {
+
+    List<ScoreBucket> findByClassKey(String classKey);
+}
@@ -0,0 +1,512 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.StudentClass;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable column-oriented copy of the students table: one primitive array per column,
+ * rows ordered by studentId, names dictionary-encoded. Readers share a snapshot without
+ * locking; {@link #merge} builds a new snapshot rather than mutating this one.
+ * Sorted pages walk a per-column row order built once per snapshot, and score-range counts
+ * binary-search per-class sorted scores, so neither copies or sorts the matching rows.
+ * The order is the one the database path pins (see StudentRepositoryCustomImpl): names by code
+ * point, as Postgres' "C" collation compares them, and nulls after every value.
+ */
+public final class StudentColumns {
+
+    private static final StudentClass[] CLASSES = StudentClass.values();
+    private static final int NULL_CODE = -1;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final List<String> SORT_PROPERTIES = List.of("firstName", "lastName", "DOB", "studentClass", "score");
+    // Rows without a class get their own score bucket after the real classes
+    private static final int NO_CLASS = CLASSES.length;
+
+    private final int size;
+    private final long[] ids;
+    private final int[] firstNames;
+    private final int[] lastNames;
+    private final int[] dobDays;
+    private final byte[] classes;
+    private final int[] scores;
+
+    // Name dictionary. lowerRank[code] is the position of the lower-cased name in sortedLower,
+    // so a prefix search is a binary search plus one int comparison per row. nameRank[code] is
+    // the name's position in code point order, which sorts rows.
+    private final String[] dictionary;
+    private final String[] sortedLower;
+    private final int[] lowerRank;
+    private final int[] nameRank;
+
+    private final long[] classCounts;
+
+    // Built on first use; the snapshot is immutable, so a racing build yields the same arrays
+    private final AtomicReferenceArray<int[]> sortOrders = new AtomicReferenceArray<>(SORT_PROPERTIES.size());
+    private volatile int[][] classScores;
+
+    private StudentColumns(int size, long[] ids, int[] firstNames, int[] lastNames, int[] dobDays,
+                           byte[] classes, int[] scores, String[] dictionary) {
+        this.size = size;
+        this.ids = ids;
+        this.firstNames = firstNames;
+        this.lastNames = lastNames;
+        this.dobDays = dobDays;
+        this.classes = classes;
+        this.scores = scores;
+        this.dictionary = dictionary;
+
+        Integer[] order = new Integer[dictionary.length];
+        String[] lower = new String[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++) {
+            order[i] = i;
+            lower[i] = dictionary[i].toLowerCase(Locale.ROOT);
+        }
+        Arrays.sort(order, (a, b) -> lower[a].compareTo(lower[b]));
+        this.sortedLower = new String[dictionary.length];
+        this.lowerRank = new int[dictionary.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            sortedLower[rank] = lower[order[rank]];
+            lowerRank[order[rank]] = rank;
+        }
+        Arrays.sort(order, (a, b) -> compareCodePoints(dictionary[a], dictionary[b]));
+        this.nameRank = new int[dictionary.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            nameRank[order[rank]] = rank;
+        }
+
+        this.classCounts = new long[CLASSES.length];
+        for (int row = 0; row < size; row++) {
+            if (classes[row] >= 0) {
+                classCounts[classes[row]]++;
+            }
+        }
+    }
+
+    public static StudentColumns empty() {
+        return of(List.of());
+    }
+
+    // rows must be sorted by studentId without duplicates
+    public static StudentColumns of(List<StudentView> rows) {
+        return new Builder(rows.size(), new String[0]).addAll(rows).build();
+    }
+
+    // For rows streamed in studentId order without duplicates; grows past expectedRows if needed
+    public static Builder builder(int expectedRows) {
+        return new Builder(expectedRows, new String[0]);
+    }
+
+    /**
+     * New snapshot with the given rows inserted, replacing rows with the same studentId.
+     * The dictionary only grows: codes of existing names stay valid.
+     */
+    public StudentColumns merge(List<StudentView> rows) {
+        Builder builder = new Builder(size + rows.size(), dictionary);
+        int existing = 0;
+        int incoming = 0;
+        while (existing < size || incoming < rows.size()) {
+            if (incoming == rows.size()
+                    || (existing < size && ids[existing] < rows.get(incoming).studentId())) {
+                builder.copyRow(this, existing++);
+            } else {
+                StudentView row = rows.get(incoming++);
+                if (existing < size && ids[existing] == row.studentId()) {
+                    existing++; // replaced by the incoming row
+                }
+                builder.add(row);
+            }
+        }
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long count(StudentClass studentClass) {
+        return classCounts[studentClass.ordinal()];
+    }
+
+    public long count(StudentFilter filter) {
+        if (!filter.hasRowFilters()) {
+            List<StudentClass> allowed = filter.resolvedStudentClasses();
+            if (allowed.isEmpty()) {
+                return size;
+            }
+            return allowed.stream().mapToLong(this::count).sum();
+        }
+        if (filter.resolvedStudentIds().isEmpty() && !filter.hasDobRange() && !filter.hasName()) {
+            return countScoreRange(filter);
+        }
+        RowMatcher matcher = new RowMatcher(filter);
+        int[] candidates = candidateRows(filter.resolvedStudentIds());
+        long count = 0;
+        int total = candidates == null ? size : candidates.length;
+        for (int i = 0; i < total; i++) {
+            if (matcher.test(candidates == null ? i : candidates[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Matching rows ordered by the first Sort order (ties keep studentId order), skipping
+     * offset rows and returning at most limit. Sort properties are the entity property names.
+     */
+    public List<StudentView> find(StudentFilter filter, Sort sort, long offset, int limit) {
+        Sort.Order order = sort.stream().findFirst().orElse(null);
+        boolean byId = order == null || order.getProperty().equals("studentId");
+        boolean descending = order != null && order.isDescending();
+
+        // Rows in the requested order, filtered on the way: null walks the id order itself.
+        // An id list is short, so only its rows are sorted.
+        int[] rows = candidateRows(filter.resolvedStudentIds());
+        if (rows != null && !byId) {
+            rows = sortRows(rows, order.getProperty());
+        } else if (rows == null && !byId) {
+            rows = sortOrder(order.getProperty());
+        }
+
+        RowMatcher matcher = new RowMatcher(filter);
+        List<StudentView> result = new ArrayList<>();
+        int total = rows == null ? size : rows.length;
+        long skipped = 0;
+        for (int i = 0; i < total && result.size() < limit; i++) {
+            int position = descending ? total - 1 - i : i;
+            int row = rows == null ? position : rows[position];
+            if (!matcher.test(row)) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(view(row));
+            }
+        }
+        return result;
+    }
+
+    // Rough heap footprint of the column arrays and the dictionary
+    public long memoryBytes() {
+        long bytes = (long) ids.length * 8 + (long) firstNames.length * 4 * 4 + classes.length;
+        for (String name : dictionary) {
+            bytes += 40L + name.length() * 2L;
+        }
+        return bytes;
+    }
+
+    // Every non-null score of the allowed classes in [minScore, maxScore], by binary search
+    private long countScoreRange(StudentFilter filter) {
+        int minScore = filter.getMinScore() != null ? filter.getMinScore() : StudentFilter.MIN_SCORE;
+        int maxScore = filter.getMaxScore() != null ? filter.getMaxScore() : StudentFilter.MAX_SCORE;
+        List<StudentClass> allowed = filter.resolvedStudentClasses();
+        int[][] sorted = classScores();
+        long count = 0;
+        for (int bucket = 0; bucket < sorted.length; bucket++) {
+            if (allowed.isEmpty() || (bucket < NO_CLASS && allowed.contains(CLASSES[bucket]))) {
+                count += lowerBound(sorted[bucket], maxScore + 1L) - lowerBound(sorted[bucket], minScore);
+            }
+        }
+        return count;
+    }
+
+    private int[][] classScores() {
+        int[][] sorted = classScores;
+        if (sorted != null) {
+            return sorted;
+        }
+        int[] counts = new int[NO_CLASS + 1];
+        for (int row = 0; row < size; row++) {
+            if (scores[row] != NULL_INT) {
+                counts[scoreBucket(row)]++;
+            }
+        }
+        sorted = new int[counts.length][];
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            sorted[bucket] = new int[counts[bucket]];
+            counts[bucket] = 0;
+        }
+        for (int row = 0; row < size; row++) {
+            if (scores[row] != NULL_INT) {
+                int bucket = scoreBucket(row);
+                sorted[bucket][counts[bucket]++] = scores[row];
+            }
+        }
+        for (int[] bucketScores : sorted) {
+            Arrays.sort(bucketScores);
+        }
+        classScores = sorted;
+        return sorted;
+    }
+
+    private int scoreBucket(int row) {
+        return classes[row] < 0 ? NO_CLASS : classes[row];
+    }
+
+    // Every row ordered by the property, ties by studentId
+    private int[] sortOrder(String property) {
+        int index = SORT_PROPERTIES.indexOf(property);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unsupported sort column: " + property);
+        }
+        int[] order = sortOrders.get(index);
+        if (order == null) {
+            int[] rows = new int[size];
+            Arrays.setAll(rows, row -> row);
+            order = sortRows(rows, property);
+            sortOrders.compareAndSet(index, null, order);
+        }
+        return order;
+    }
+
+    // Rows for an id list via binary search on the sorted id column; null means scan everything
+    private int[] candidateRows(List<Long> studentIds) {
+        if (studentIds.isEmpty()) {
+            return null;
+        }
+        int[] rows = new int[studentIds.size()];
+        int count = 0;
+        for (long id : studentIds) {
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            if (row >= 0) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private boolean nameInRange(int code, int rankFrom, int rankTo) {
+        return code != NULL_CODE && lowerRank[code] >= rankFrom && lowerRank[code] < rankTo;
+    }
+
+    // First position in the ascending values that is not below key
+    private static int lowerBound(int[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = sortedLower.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedLower[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // UTF-8 byte order, which is what the "C" collation compares; String.compareTo compares UTF-16
+    // units, which differs for characters outside the BMP
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    // Packs (sort key, row) into one long so a primitive sort orders by key, then by id.
+    // A null gets the largest key: last ascending and, walked backwards, first descending.
+    private int[] sortRows(int[] rows, String property) {
+        long[] packed = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            int key = switch (property) {
+                case "firstName" -> firstNames[row] == NULL_CODE ? Integer.MAX_VALUE : nameRank[firstNames[row]];
+                case "lastName" -> lastNames[row] == NULL_CODE ? Integer.MAX_VALUE : nameRank[lastNames[row]];
+                case "DOB" -> dobDays[row] == NULL_INT ? Integer.MAX_VALUE : dobDays[row];
+                case "studentClass" -> classes[row] < 0 ? Integer.MAX_VALUE : classes[row];
+                case "score" -> scores[row] == NULL_INT ? Integer.MAX_VALUE : scores[row];
+                default -> throw new IllegalArgumentException("Unsupported sort column: " + property);
+            };
+            packed[i] = ((long) key << 32) | (row & 0xFFFFFFFFL);
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < packed.length; i++) {
+            sorted[i] = (int) packed[i];
+        }
+        return sorted;
+    }
+
+    private StudentView view(int row) {
+        return new StudentView(
+                ids[row],
+                firstNames[row] == NULL_CODE ? null : dictionary[firstNames[row]],
+                lastNames[row] == NULL_CODE ? null : dictionary[lastNames[row]],
+                dobDays[row] == NULL_INT ? null : LocalDate.ofEpochDay(dobDays[row]),
+                classes[row] < 0 ? null : CLASSES[classes[row]],
+                scores[row] == NULL_INT ? null : scores[row]);
+    }
+
+    // The filter's row conditions, resolved once and tested against the columns of one row
+    private final class RowMatcher {
+        private final boolean[] classAllowed;
+        private final boolean scoreRange;
+        private final int minScore;
+        private final int maxScore;
+        private final boolean dobRange;
+        private final int dobFrom;
+        private final int dobTo;
+        private final boolean name;
+        private final int rankFrom;
+        private final int rankTo;
+
+        RowMatcher(StudentFilter filter) {
+            List<StudentClass> allowed = filter.resolvedStudentClasses();
+            if (allowed.isEmpty()) {
+                classAllowed = null;
+            } else {
+                classAllowed = new boolean[CLASSES.length];
+                for (StudentClass studentClass : allowed) {
+                    classAllowed[studentClass.ordinal()] = true;
+                }
+            }
+            scoreRange = filter.hasScoreRange();
+            minScore = filter.getMinScore() != null ? filter.getMinScore() : StudentFilter.MIN_SCORE;
+            maxScore = filter.getMaxScore() != null ? filter.getMaxScore() : StudentFilter.MAX_SCORE;
+            dobRange = filter.hasDobRange();
+            dobFrom = (int) (filter.getDobFrom() != null ? filter.getDobFrom() : StudentFilter.MIN_DOB).toEpochDay();
+            dobTo = (int) (filter.getDobTo() != null ? filter.getDobTo() : StudentFilter.MAX_DOB).toEpochDay();
+            name = filter.hasName();
+            if (name) {
+                String prefix = filter.getName().trim().toLowerCase(Locale.ROOT);
+                rankFrom = lowerBound(prefix);
+                rankTo = lowerBound(prefix + Character.MAX_VALUE);
+            } else {
+                rankFrom = 0;
+                rankTo = 0;
+            }
+        }
+
+        boolean test(int row) {
+            if (classAllowed != null && (classes[row] < 0 || !classAllowed[classes[row]])) {
+                return false;
+            }
+            if (scoreRange && (scores[row] == NULL_INT || scores[row] < minScore || scores[row] > maxScore)) {
+                return false;
+            }
+            if (dobRange && (dobDays[row] == NULL_INT || dobDays[row] < dobFrom || dobDays[row] > dobTo)) {
+                return false;
+            }
+            return !name || nameInRange(firstNames[row], rankFrom, rankTo) || nameInRange(lastNames[row], rankFrom, rankTo);
+        }
+    }
+
+    public static final class Builder {
+        private int size;
+        private long[] ids;
+        private int[] firstNames;
+        private int[] lastNames;
+        private int[] dobDays;
+        private byte[] classes;
+        private int[] scores;
+        private final List<String> dictionary;
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        private Builder(int capacity, String[] existingDictionary) {
+            capacity = Math.max(capacity, 16);
+            ids = new long[capacity];
+            firstNames = new int[capacity];
+            lastNames = new int[capacity];
+            dobDays = new int[capacity];
+            classes = new byte[capacity];
+            scores = new int[capacity];
+            dictionary = new ArrayList<>(Arrays.asList(existingDictionary));
+            for (int code = 0; code < existingDictionary.length; code++) {
+                codes.put(existingDictionary[code], code);
+            }
+        }
+
+        Builder addAll(List<StudentView> rows) {
+            rows.forEach(this::add);
+            return this;
+        }
+
+        public void add(StudentView row) {
+            if (size == ids.length) {
+                grow();
+            }
+            ids[size] = row.studentId();
+            firstNames[size] = encode(row.firstName());
+            lastNames[size] = encode(row.lastName());
+            dobDays[size] = row.dob() == null ? NULL_INT : (int) row.dob().toEpochDay();
+            classes[size] = row.studentClass() == null ? -1 : (byte) row.studentClass().ordinal();
+            scores[size] = row.score() == null ? NULL_INT : row.score();
+            size++;
+        }
+
+        void copyRow(StudentColumns source, int row) {
+            if (size == ids.length) {
+                grow();
+            }
+            ids[size] = source.ids[row];
+            firstNames[size] = source.firstNames[row];
+            lastNames[size] = source.lastNames[row];
+            dobDays[size] = source.dobDays[row];
+            classes[size] = source.classes[row];
+            scores[size] = source.scores[row];
+            size++;
+        }
+
+        private void grow() {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            firstNames = Arrays.copyOf(firstNames, capacity);
+            lastNames = Arrays.copyOf(lastNames, capacity);
+            dobDays = Arrays.copyOf(dobDays, capacity);
+            classes = Arrays.copyOf(classes, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+
+        private int encode(String name) {
+            if (name == null) {
+                return NULL_CODE;
+            }
+            return codes.computeIfAbsent(name, key -> {
+                dictionary.add(key);
+                return dictionary.size() - 1;
+            });
+        }
+
+        public StudentColumns build() {
+            return new StudentColumns(size,
+                    Arrays.copyOf(ids, size),
+                    Arrays.copyOf(firstNames, size),
+                    Arrays.copyOf(lastNames, size),
+                    Arrays.copyOf(dobDays, size),
+                    Arrays.copyOf(classes, size),
+                    Arrays.copyOf(scores, size),
+                    dictionary.toArray(new String[0]));
+        }
+    }
+}
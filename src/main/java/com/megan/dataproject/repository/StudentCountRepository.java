@@ -0,0 +1,9 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.StudentCount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface StudentCountRepository extends JpaRepository<StudentCount, String> {
+}
@@ -0,0 +1,104 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.StudentClass;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Report/export filters, bound straight from query parameters. The single-value
+ * params (studentId, studentClass) are merged into their IN-lists, and the resolved
+ * accessors return canonical values so that equivalent filters compile to the same
+ * query shape (see StudentSpecification.buildSpecification).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StudentFilter {
+
+    // Open range ends are filled with these so a range is always "between ? and ?"
+    public static final int MIN_SCORE = 0;
+    public static final int MAX_SCORE = Integer.MAX_VALUE;
+    public static final LocalDate MIN_DOB = LocalDate.of(1, 1, 1);
+    public static final LocalDate MAX_DOB = LocalDate.of(9999, 12, 31);
+
+    private Long studentId;
+
+    private List<Long> studentIds;
+
+    private StudentClass studentClass;
+
+    private List<StudentClass> studentClasses;
+
+    // Case-insensitive prefix of firstName or lastName
+    private String name;
+
+    private Integer minScore;
+
+    private Integer maxScore;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate dobFrom;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate dobTo;
+
+    public static StudentFilter of(Long studentId, StudentClass studentClass) {
+        return StudentFilter.builder().studentId(studentId).studentClass(studentClass).build();
+    }
+
+    // Distinct ids in ascending order
+    public List<Long> resolvedStudentIds() {
+        TreeSet<Long> ids = new TreeSet<>();
+        if (studentId != null) {
+            ids.add(studentId);
+        }
+        if (studentIds != null) {
+            studentIds.stream().filter(id -> id != null).forEach(ids::add);
+        }
+        return new ArrayList<>(ids);
+    }
+
+    // Distinct classes in ordinal order; empty when every class is allowed
+    public List<StudentClass> resolvedStudentClasses() {
+        EnumSet<StudentClass> classes = EnumSet.noneOf(StudentClass.class);
+        if (studentClass != null) {
+            classes.add(studentClass);
+        }
+        if (studentClasses != null) {
+            studentClasses.stream().filter(c -> c != null).forEach(classes::add);
+        }
+        return classes.size() == StudentClass.values().length ? List.of() : new ArrayList<>(classes);
+    }
+
+    public boolean hasScoreRange() {
+        return minScore != null || maxScore != null;
+    }
+
+    public boolean hasDobRange() {
+        return dobFrom != null || dobTo != null;
+    }
+
+    public boolean hasName() {
+        return name != null && !name.isBlank();
+    }
+
+    // True when anything beyond the class filter narrows the rows, i.e. the count summary can't answer it
+    public boolean hasRowFilters() {
+        return !resolvedStudentIds().isEmpty() || hasScoreRange() || hasDobRange() || hasName();
+    }
+
+    // Exactly one id and nothing but class filters: answerable from a single-row lookup
+    public boolean isSingleIdLookup() {
+        return resolvedStudentIds().size() == 1 && !hasScoreRange() && !hasDobRange() && !hasName();
+    }
+}
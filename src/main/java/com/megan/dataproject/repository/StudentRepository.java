@@ -6,12 +6,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
-public interface StudentRepository extends JpaRepository<Student, Long>, JpaSpecificationExecutor<Student> {
+public interface StudentRepository extends JpaRepository<Student, Long>, JpaSpecificationExecutor<Student>,
+        StudentRepositoryCustom {
 
     // Search by studentId
     Optional<Student> findByStudentId(Long studentId);
@@ -24,4 +26,11 @@ public interface StudentRepository extends JpaRepository<Student, Long>, JpaSpec
 
     // Filter by class
     Page<Student> findByStudentClassAndStudentId(StudentClass studentClass, Long studentId, Pageable pageable);
+
+    // Id bounds for splitting exports into student_id ranges
+    @Query("select min(s.studentId) from Student s")
+    Long findMinStudentId();
+
+    @Query("select max(s.studentId) from Student s")
+    Long findMaxStudentId();
 }
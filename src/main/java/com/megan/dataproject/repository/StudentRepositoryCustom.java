@@ -0,0 +1,25 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.Student;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+
+// Projection queries for report reads. None of these issue a count query.
+public interface StudentRepositoryCustom {
+
+    // Page content only - unlike findAll(spec, pageable) this never issues a count query
+    List<StudentView> findContent(Specification<Student> spec, Pageable pageable);
+
+    // Fetches size + 1 rows to work out hasNext, again without counting
+    Slice<StudentView> findSlice(Specification<Student> spec, Pageable pageable);
+
+    // All matching rows, for exports
+    List<StudentView> findViews(Specification<Student> spec, Sort sort);
+
+    // First `limit` matching rows, for keyset pages
+    List<StudentView> findViews(Specification<Student> spec, Sort sort, int limit);
+}
@@ -0,0 +1,128 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.Student;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.NullPrecedence;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaOrder;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Read-only transaction: Spring switches the session to FlushMode.MANUAL, so nothing is dirty-checked
+@Transactional(readOnly = true)
+public class StudentRepositoryCustomImpl implements StudentRepositoryCustom {
+
+    // Name columns whose offset-page order is pinned to code points, see createQuery
+    private static final List<String> NAME_PROPERTIES = List.of("firstName", "lastName");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile Boolean postgres;
+
+    @Override
+    public List<StudentView> findContent(Specification<Student> spec, Pageable pageable) {
+        TypedQuery<StudentView> query = createQuery(spec, pageable.getSort(), true);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    public Slice<StudentView> findSlice(Specification<Student> spec, Pageable pageable) {
+        TypedQuery<StudentView> query = createQuery(spec, pageable.getSort(), true);
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+
+        List<StudentView> rows = query.getResultList();
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        List<StudentView> content = hasNext ? new ArrayList<>(rows.subList(0, pageable.getPageSize())) : rows;
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    @Override
+    public List<StudentView> findViews(Specification<Student> spec, Sort sort) {
+        return createQuery(spec, sort, false).getResultList();
+    }
+
+    @Override
+    public List<StudentView> findViews(Specification<Student> spec, Sort sort, int limit) {
+        return createQuery(spec, sort, false).setMaxResults(limit).getResultList();
+    }
+
+    // Offset pages compare names by code point (Postgres' "C" collation, H2's default), the order the
+    // replica serves the same pages in; the (name COLLATE "C", student_id) indexes back it. Keyset
+    // pages keep the column's collation, which their seek predicate compares with.
+    private TypedQuery<StudentView> createQuery(Specification<Student> spec, Sort sort, boolean bytewiseNames) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<StudentView> query = cb.createQuery(StudentView.class);
+        Root<Student> root = query.from(Student.class);
+
+        query.select(cb.construct(StudentView.class,
+                root.get("studentId"),
+                root.get("firstName"),
+                root.get("lastName"),
+                root.get("DOB"),
+                root.get("studentClass"),
+                root.get("score")));
+
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(toOrders(sort, root, cb, bytewiseNames && isPostgres()));
+
+        return entityManager.createQuery(query).setHint(HibernateHints.HINT_READ_ONLY, true);
+    }
+
+    // QueryUtils rejects null handling on criteria queries, so it is applied here through Hibernate's order
+    private static List<Order> toOrders(Sort sort, Root<Student> root, CriteriaBuilder cb, boolean collateNames) {
+        List<Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            Order jpaOrder;
+            if (collateNames && NAME_PROPERTIES.contains(order.getProperty())) {
+                Expression<String> name = ((HibernateCriteriaBuilder) cb).collate(root.get(order.getProperty()), "\"C\"");
+                jpaOrder = order.isAscending() ? cb.asc(name) : cb.desc(name);
+            } else {
+                jpaOrder = QueryUtils.toOrders(Sort.by(order.with(Sort.NullHandling.NATIVE)), root, cb).get(0);
+            }
+            orders.add(switch (order.getNullHandling()) {
+                case NULLS_FIRST -> ((JpaOrder) jpaOrder).nullPrecedence(NullPrecedence.FIRST);
+                case NULLS_LAST -> ((JpaOrder) jpaOrder).nullPrecedence(NullPrecedence.LAST);
+                case NATIVE -> jpaOrder;
+            });
+        }
+        return orders;
+    }
+
+    private boolean isPostgres() {
+        Boolean result = postgres;
+        if (result == null) {
+            result = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+            postgres = result;
+        }
+        return result;
+    }
+}
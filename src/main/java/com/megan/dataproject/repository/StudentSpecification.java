@@ -2,10 +2,21 @@ package com.megan.dataproject.repository;
 
 import com.megan.dataproject.model.Student;
 import com.megan.dataproject.model.StudentClass;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 public class StudentSpecification {
 
+    // Declared on every LIKE: without it Hibernate renders escape '' and the backslashes match literally
+    private static final char LIKE_ESCAPE = '\\';
+
     public static Specification<Student> hasStudentId(Long studentId) {
         return (root, query, cb) -> {
             if (studentId == null) {
@@ -24,9 +35,126 @@ public class StudentSpecification {
         };
     }
 
+    public static Specification<Student> hasStudentIdBetween(Long fromId, Long toId) {
+        return (root, query, cb) -> {
+            if (fromId == null || toId == null) {
+                return cb.conjunction();
+            }
+            return cb.between(root.get("studentId"), fromId, toId);
+        };
+    }
+
+    // Prefix match on lower(first_name) / lower(last_name). On Postgres each side is
+    // served by a text_pattern_ops expression index (see SchemaInitializer).
+    public static Specification<Student> hasNamePrefix(String name) {
+        return (root, query, cb) -> {
+            if (name == null || name.isBlank()) {
+                return cb.conjunction();
+            }
+            String pattern = escapeLike(name.trim().toLowerCase(Locale.ROOT)) + "%";
+            return cb.or(
+                    cb.like(cb.lower(root.get("firstName")), pattern, LIKE_ESCAPE),
+                    cb.like(cb.lower(root.get("lastName")), pattern, LIKE_ESCAPE));
+        };
+    }
+
     public static Specification<Student> buildSpecification(Long studentId, StudentClass studentClass) {
         return Specification
                 .where(hasStudentId(studentId))
                 .and(hasStudentClass(studentClass));
     }
+
+    /**
+     * Compiles a filter into one of a small, fixed set of query shapes: predicates always
+     * appear in the same order (id, class, score, DOB, name), single-element lists become
+     * equality, ranges are always two-sided, and values are bound as parameters. With
+     * IN-clause padding enabled this keeps Hibernate's plan cache and the driver's
+     * prepared statements warm across filter combinations.
+     */
+    public static Specification<Student> buildSpecification(StudentFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            List<Long> ids = filter.resolvedStudentIds();
+            if (ids.size() == 1) {
+                predicates.add(cb.equal(root.get("studentId"), ids.get(0)));
+            } else if (!ids.isEmpty()) {
+                predicates.add(root.get("studentId").in(ids));
+            }
+
+            List<StudentClass> classes = filter.resolvedStudentClasses();
+            if (classes.size() == 1) {
+                predicates.add(cb.equal(root.get("studentClass"), classes.get(0)));
+            } else if (!classes.isEmpty()) {
+                predicates.add(root.get("studentClass").in(classes));
+            }
+
+            // (class, score) and score indexes serve these ranges
+            if (filter.hasScoreRange()) {
+                predicates.add(cb.between(root.get("score"),
+                        filter.getMinScore() != null ? filter.getMinScore() : StudentFilter.MIN_SCORE,
+                        filter.getMaxScore() != null ? filter.getMaxScore() : StudentFilter.MAX_SCORE));
+            }
+
+            if (filter.hasDobRange()) {
+                predicates.add(cb.between(root.get("DOB"),
+                        filter.getDobFrom() != null ? filter.getDobFrom() : StudentFilter.MIN_DOB,
+                        filter.getDobTo() != null ? filter.getDobTo() : StudentFilter.MAX_DOB));
+            }
+
+            if (filter.hasName()) {
+                predicates.add(hasNamePrefix(filter.getName()).toPredicate(root, query, cb));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Keyset seek: rows strictly after the cursor in (sortBy, studentId) order, where a null sorts
+    // after every value (see KeysetCursor.nullHandling). The redundant "col >= value" lets the
+    // (col, student_id) index start its range scan there.
+    public static Specification<Student> seek(KeysetCursor cursor) {
+        return (root, query, cb) -> {
+            if (cursor == null) {
+                return cb.conjunction();
+            }
+            // Walking backward means seeking against the sort direction
+            boolean greater = cursor.isDescending() == cursor.isBackward();
+            Path<Long> id = root.get("studentId");
+            Predicate idPastCursor = greater
+                    ? cb.greaterThan(id, cursor.getStudentId())
+                    : cb.lessThan(id, cursor.getStudentId());
+
+            if (cursor.getSortBy().equals("studentId")) {
+                return idPastCursor;
+            }
+
+            Path<Object> column = root.get(cursor.getSortBy());
+            Object value = cursor.getValue();
+            if (value == null) {
+                // Toward larger values only later nulls are left; toward smaller ones every value comes first
+                Predicate nullPastCursor = cb.and(cb.isNull(column), idPastCursor);
+                return greater ? nullPastCursor : cb.or(cb.isNotNull(column), nullPastCursor);
+            }
+            Predicate valuePastCursor = cb.and(
+                    compare(cb, column, value, greater, true),
+                    cb.or(compare(cb, column, value, greater, false),
+                            cb.and(cb.equal(column, value), idPastCursor)));
+            return greater ? cb.or(valuePastCursor, cb.isNull(column)) : valuePastCursor;
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate compare(CriteriaBuilder cb, Expression column, Object value,
+                                     boolean greater, boolean inclusive) {
+        Comparable bound = (Comparable) value;
+        if (greater) {
+            return inclusive ? cb.greaterThanOrEqualTo(column, bound) : cb.greaterThan(column, bound);
+        }
+        return inclusive ? cb.lessThanOrEqualTo(column, bound) : cb.lessThan(column, bound);
+    }
 }
@@ -0,0 +1,24 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.Student;
+import com.megan.dataproject.model.StudentClass;
+
+import java.time.LocalDate;
+
+/**
+ * Read-only row for reports and exports. Built straight from the select list, so
+ * Hibernate never creates managed entities or dirty-checking snapshots for it.
+ * Serializes to the same JSON as {@link Student}.
+ */
+public record StudentView(Long studentId,
+                          String firstName,
+                          String lastName,
+                          LocalDate dob,
+                          StudentClass studentClass,
+                          Integer score) {
+
+    public static StudentView from(Student student) {
+        return new StudentView(student.getStudentId(), student.getFirstName(), student.getLastName(),
+                student.getDOB(), student.getStudentClass(), student.getScore());
+    }
+}
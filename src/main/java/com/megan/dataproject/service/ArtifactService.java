@@ -0,0 +1,223 @@
+package com.megan.dataproject.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the files each job creates and reclaims them. Temp inputs (upload_raw_*.xlsx,
+ * upload_csv_*.csv) are deleted as soon as their job reaches COMPLETED or FAILED.
+ * Outputs in the storage directory are kept for app.artifacts.output-retention, and the
+ * sweeper deletes the oldest ones first whenever their total size exceeds
+ * app.artifacts.output-quota. Files of running jobs are never touched. With shared storage
+ * (app.cluster.enabled) this node only tracks its own jobs, so inputs named by any job in
+ * job_queue are kept too, and outputs written to within app.artifacts.active-grace are
+ * left alone in case another node's job is still writing them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ArtifactService {
+
+    private static final List<String> TEMP_INPUT_GLOBS = List.of("upload_raw_*.xlsx", "upload_csv_*.csv");
+    // Only files this application writes; anything else in the directory is left alone
+    private static final List<String> OUTPUT_GLOBS = List.of("StudentData_*.xlsx", "ProcessedData_*.csv");
+
+    private final FileStorageService storageService;
+    private final ClusterJobQueue clusterJobQueue;
+
+    // Same directory FileStorageService.createTempInput writes to
+    @Value("${app.storage.temp-path:${java.io.tmpdir}}")
+    private Path tempDirectory;
+
+    @Value("${app.artifacts.output-retention:P3D}")
+    private Duration outputRetention;
+
+    @Value("${app.artifacts.output-quota:10GB}")
+    private DataSize outputQuota;
+
+    // Inputs left behind by a crash or restart are only removed once they are this old
+    @Value("${app.artifacts.temp-max-age:PT6H}")
+    private Duration tempMaxAge;
+
+    // Outputs modified more recently than this may belong to a job still running on any node
+    @Value("${app.artifacts.active-grace:PT15M}")
+    private Duration activeGrace;
+
+    // Files of running jobs, by jobId
+    private final Map<String, List<Path>> inputs = new ConcurrentHashMap<>();
+    private final Map<String, List<Path>> outputs = new ConcurrentHashMap<>();
+
+    private final LongAdder filesReclaimed = new LongAdder();
+    private final LongAdder bytesReclaimed = new LongAdder();
+    private volatile SweepResult lastSweep;
+
+    public record SweepResult(Instant sweptAt, int files, long bytes, long outputBytes) {
+    }
+
+    // A temp copy of an upload, deleted when the job finishes
+    public void registerInput(String jobId, Path path) {
+        inputs.computeIfAbsent(jobId, key -> new CopyOnWriteArrayList<>()).add(path.toAbsolutePath().normalize());
+    }
+
+    // A file the job is still writing; protected from the sweeper until the job finishes
+    public void registerOutput(String jobId, Path path) {
+        outputs.computeIfAbsent(jobId, key -> new CopyOnWriteArrayList<>()).add(path.toAbsolutePath().normalize());
+    }
+
+    // Called once the job reached a final status
+    public void release(String jobId) {
+        outputs.remove(jobId);
+        List<Path> jobInputs = inputs.remove(jobId);
+        if (jobInputs == null) {
+            return;
+        }
+        for (Path path : jobInputs) {
+            long bytes = delete(path);
+            if (bytes >= 0) {
+                log.debug("Job {} - deleted temp input {} ({} bytes)", jobId, path, bytes);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.artifacts.sweep-interval:PT10M}")
+    public SweepResult sweep() {
+        Set<Path> active = activePaths();
+        long now = System.currentTimeMillis();
+        int files = 0;
+        long bytes = 0;
+
+        // 1. Temp inputs no running job owns, e.g. left behind by a restart. Skipped this round
+        // when the shared queue can't be read, since any of them could be another node's.
+        List<FileEntry> tempInputs = list(tempDirectory, TEMP_INPUT_GLOBS);
+        try {
+            active.addAll(clusterJobQueue.inputPaths());
+        } catch (DataAccessException e) {
+            log.warn("Artifact sweep: job_queue unreadable, keeping temp inputs: {}", e.getMessage());
+            tempInputs = List.of();
+        }
+        for (FileEntry entry : tempInputs) {
+            if (!active.contains(entry.path()) && now - entry.modifiedAt() > tempMaxAge.toMillis()) {
+                long deleted = delete(entry.path());
+                if (deleted >= 0) {
+                    files++;
+                    bytes += deleted;
+                }
+            }
+        }
+
+        // 2. Outputs past retention, then the oldest until the rest fit the quota
+        List<FileEntry> outputFiles = list(storageService.getBaseDirectory(), OUTPUT_GLOBS);
+        outputFiles.sort(Comparator.comparingLong(FileEntry::modifiedAt));
+        long outputBytes = outputFiles.stream().mapToLong(FileEntry::size).sum();
+        for (FileEntry entry : outputFiles) {
+            boolean expired = now - entry.modifiedAt() > outputRetention.toMillis();
+            boolean overQuota = outputBytes > outputQuota.toBytes();
+            if (!expired && !overQuota) {
+                break; // sorted oldest first, so nothing newer qualifies
+            }
+            if (active.contains(entry.path()) || now - entry.modifiedAt() < activeGrace.toMillis()) {
+                continue;
+            }
+            long deleted = delete(entry.path());
+            if (deleted >= 0) {
+                files++;
+                bytes += deleted;
+                outputBytes -= deleted;
+            }
+        }
+
+        SweepResult result = new SweepResult(Instant.now(), files, bytes, outputBytes);
+        lastSweep = result;
+        if (files > 0) {
+            log.info("Artifact sweep: {} files deleted, {} bytes reclaimed, {} bytes of outputs kept",
+                    files, bytes, outputBytes);
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("outputBytes", list(storageService.getBaseDirectory(), OUTPUT_GLOBS).stream()
+                .mapToLong(FileEntry::size).sum());
+        status.put("outputQuotaBytes", outputQuota.toBytes());
+        status.put("outputRetention", outputRetention.toString());
+        status.put("trackedFiles", activePaths().size());
+        status.put("filesReclaimed", filesReclaimed.sum());
+        status.put("bytesReclaimed", bytesReclaimed.sum());
+        status.put("lastSweep", lastSweep);
+        return status;
+    }
+
+    private Set<Path> activePaths() {
+        Set<Path> active = new HashSet<>();
+        inputs.values().forEach(active::addAll);
+        outputs.values().forEach(active::addAll);
+        return active;
+    }
+
+    private record FileEntry(Path path, long size, long modifiedAt) {
+    }
+
+    private List<FileEntry> list(Path directory, List<String> globs) {
+        List<FileEntry> entries = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return entries;
+        }
+        for (String glob : globs) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+                for (Path path : stream) {
+                    try {
+                        if (Files.isRegularFile(path)) {
+                            entries.add(new FileEntry(path.toAbsolutePath().normalize(),
+                                    Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+                        }
+                    } catch (IOException e) {
+                        // Deleted while listing
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Could not list {}: {}", directory, e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    // Size of the deleted file, or -1 when nothing was deleted
+    private long delete(Path path) {
+        try {
+            long size = Files.size(path);
+            Files.delete(path);
+            filesReclaimed.increment();
+            bytesReclaimed.add(size);
+            return size;
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+            return -1;
+        }
+    }
+}
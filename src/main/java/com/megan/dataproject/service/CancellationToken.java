@@ -0,0 +1,24 @@
+package com.megan.dataproject.service;
+
+/**
+ * Cooperative cancellation flag for one job. The cancel endpoint sets it; the job checks
+ * it at batch boundaries, where it can stop without leaving a half-written batch behind.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new JobCancelledException();
+        }
+    }
+}
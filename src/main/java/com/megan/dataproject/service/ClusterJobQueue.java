@@ -0,0 +1,287 @@
+package com.megan.dataproject.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megan.dataproject.model.JobType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The job_queue and cluster_nodes tables, shared by every node of a cluster
+ * (app.cluster.enabled). Queued jobs wait in job_queue until a node claims them with
+ * SELECT ... FOR UPDATE SKIP LOCKED, so concurrent claimers never block on, or both get,
+ * the same row. A claim holds a lease that its node's heartbeats extend; a job whose lease
+ * ran out is requeued by whichever node notices first. Timestamps come from the nodes'
+ * clocks, which are assumed to agree to well within a lease.
+ * With clustering off nothing here touches the database.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ClusterJobQueue {
+
+    private static final String QUEUED = "QUEUED";
+    private static final String CLAIMED = "CLAIMED";
+
+    // Their rows commit batch by batch, so a second run from the start would hit the rows of the first
+    private static final Set<JobType> NOT_RESTARTABLE = EnumSet.of(JobType.UPLOAD, JobType.PIPELINE);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean enabled;
+
+    public record ClaimedJob(String jobId, JobSpec spec) {
+    }
+
+    // A claimed job as its owner sees it at a heartbeat
+    public record OwnedJob(String jobId, boolean cancelRequested) {
+    }
+
+    // Expired leases, by what became of the job; interrupted ones had started and can't be rerun
+    public record Reaped(List<String> requeued, List<String> cancelled, List<String> interrupted,
+                         List<String> abandoned) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void enqueue(String jobId, JobSpec spec) {
+        jdbcTemplate.update("INSERT INTO job_queue (job_id, job_type, spec, state, attempts, cancel_requested, created_at) "
+                        + "VALUES (?, ?, ?, ?, 0, FALSE, ?)",
+                jobId, spec.type().name(), toJson(spec), QUEUED, Timestamp.from(Instant.now()));
+    }
+
+    // Jobs of the type no node has claimed yet
+    public long queued(JobType type) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM job_queue WHERE state = ? AND job_type = ?", Long.class, QUEUED, type.name());
+        return count == null ? 0 : count;
+    }
+
+    // 1-based place among its type's unclaimed jobs; empty once a node has claimed it
+    public Optional<Integer> queuePosition(String jobId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<Integer> position = jdbcTemplate.queryForList(
+                "SELECT count(*) FROM job_queue q JOIN job_queue j ON q.job_type = j.job_type "
+                        + "WHERE j.job_id = ? AND j.state = ? AND q.state = ? AND q.id <= j.id",
+                Integer.class, jobId, QUEUED, QUEUED);
+        return position.stream().filter(count -> count > 0).findFirst();
+    }
+
+    // Input files of every job still in the table, queued or claimed by any node
+    public Set<Path> inputPaths() {
+        if (!enabled) {
+            return Set.of();
+        }
+        Set<Path> paths = new HashSet<>();
+        jdbcTemplate.query("SELECT spec FROM job_queue", rs -> {
+            String inputPath = fromJson(rs.getString("spec")).inputPath();
+            if (inputPath != null) {
+                paths.add(Path.of(inputPath).toAbsolutePath().normalize());
+            }
+        });
+        return paths;
+    }
+
+    /**
+     * Up to limit of the oldest queued jobs of the type, now held by nodeId until
+     * leaseExpiresAt. Rows another node is claiming at the same moment are skipped, not waited for.
+     */
+    public List<ClaimedJob> claim(JobType type, int limit, String nodeId, Instant leaseExpiresAt) {
+        return transactionTemplate.execute(status -> {
+            List<Object[]> rows = jdbcTemplate.query(
+                    "SELECT id, job_id, spec FROM job_queue WHERE state = ? AND job_type = ? "
+                            + "ORDER BY id FETCH FIRST ? ROWS ONLY FOR UPDATE SKIP LOCKED",
+                    (rs, rowNum) -> new Object[]{rs.getLong("id"), rs.getString("job_id"), rs.getString("spec")},
+                    QUEUED, type.name(), limit);
+            List<ClaimedJob> claimed = new ArrayList<>();
+            for (Object[] row : rows) {
+                jdbcTemplate.update("UPDATE job_queue SET state = ?, owner_node = ?, lease_expires_at = ?, "
+                                + "attempts = attempts + 1 WHERE id = ?",
+                        CLAIMED, nodeId, Timestamp.from(leaseExpiresAt), row[0]);
+                claimed.add(new ClaimedJob((String) row[1], fromJson((String) row[2])));
+            }
+            return claimed;
+        });
+    }
+
+    // The claimed job is starting to run on nodeId; from here on an expired lease may not simply requeue it
+    public void markStarted(String jobId, String nodeId) {
+        jdbcTemplate.update("UPDATE job_queue SET started_at = ? WHERE job_id = ? AND owner_node = ? AND state = ?",
+                Timestamp.from(Instant.now()), jobId, nodeId, CLAIMED);
+    }
+
+    // The job has finished on its owner; a node that lost the lease leaves the new owner's row alone
+    public void complete(String jobId, String nodeId) {
+        jdbcTemplate.update("DELETE FROM job_queue WHERE job_id = ? AND owner_node = ?", jobId, nodeId);
+    }
+
+    // Hand back a claimed job that never started, e.g. on shutdown; the claim doesn't count as an attempt
+    public void release(String jobId, String nodeId) {
+        jdbcTemplate.update("UPDATE job_queue SET state = ?, owner_node = NULL, lease_expires_at = NULL, "
+                        + "attempts = attempts - 1 WHERE job_id = ? AND owner_node = ? AND state = ?",
+                QUEUED, jobId, nodeId, CLAIMED);
+    }
+
+    /**
+     * Takes a job nobody has claimed off the queue and returns its spec. A claimed job is
+     * flagged instead, and its owner stops it at its next heartbeat. Empty when clustering
+     * is off, the job was claimed, or it isn't queued at all.
+     */
+    public Optional<JobSpec> cancel(String jobId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return transactionTemplate.execute(status -> {
+            // Waits for a claim in progress; the row then no longer matches and is flagged below
+            List<String> specs = jdbcTemplate.queryForList(
+                    "SELECT spec FROM job_queue WHERE job_id = ? AND state = ? FOR UPDATE", String.class, jobId, QUEUED);
+            if (!specs.isEmpty()) {
+                jdbcTemplate.update("DELETE FROM job_queue WHERE job_id = ?", jobId);
+                return Optional.of(fromJson(specs.get(0)));
+            }
+            jdbcTemplate.update("UPDATE job_queue SET cancel_requested = TRUE WHERE job_id = ?", jobId);
+            return Optional.empty();
+        });
+    }
+
+    /**
+     * Records that nodeId is alive and extends the leases of every job it holds. Returns
+     * those jobs, so the node can notice cancel requests and leases it has lost.
+     */
+    public List<OwnedJob> heartbeat(String nodeId, Instant startedAt, Instant leaseExpiresAt) {
+        Timestamp now = Timestamp.from(Instant.now());
+        int updated = jdbcTemplate.update("UPDATE cluster_nodes SET heartbeat_at = ? WHERE node_id = ?", now, nodeId);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO cluster_nodes (node_id, started_at, heartbeat_at) VALUES (?, ?, ?)",
+                    nodeId, Timestamp.from(startedAt), now);
+        }
+        jdbcTemplate.update("UPDATE job_queue SET lease_expires_at = ? WHERE owner_node = ? AND state = ?",
+                Timestamp.from(leaseExpiresAt), nodeId, CLAIMED);
+        return jdbcTemplate.query("SELECT job_id, cancel_requested FROM job_queue WHERE owner_node = ? AND state = ?",
+                (rs, rowNum) -> new OwnedJob(rs.getString("job_id"), rs.getBoolean("cancel_requested")),
+                nodeId, CLAIMED);
+    }
+
+    /**
+     * Claims whose lease ran out before now: their node died or lost the database. Jobs
+     * with attempts left go back to the queue, ones asked to stop are dropped, and the rest
+     * are given up. Uploads and pipelines that had started are given up at once: the rows
+     * they committed stay, and a rerun would fail on them. Several nodes may reap at once; SKIP LOCKED gives each row to one of them.
+     */
+    public Reaped reapExpired(Instant now, int maxAttempts) {
+        return transactionTemplate.execute(status -> {
+            List<Object[]> rows = jdbcTemplate.query(
+                    "SELECT id, job_id, job_type, attempts, cancel_requested, started_at FROM job_queue "
+                            + "WHERE state = ? AND lease_expires_at < ? FOR UPDATE SKIP LOCKED",
+                    (rs, rowNum) -> new Object[]{rs.getLong("id"), rs.getString("job_id"),
+                            JobType.valueOf(rs.getString("job_type")), rs.getInt("attempts"),
+                            rs.getBoolean("cancel_requested"), rs.getTimestamp("started_at") != null},
+                    CLAIMED, Timestamp.from(now));
+            Reaped reaped = new Reaped(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            for (Object[] row : rows) {
+                String jobId = (String) row[1];
+                boolean cancelRequested = (Boolean) row[4];
+                boolean interrupted = (Boolean) row[5] && NOT_RESTARTABLE.contains((JobType) row[2]);
+                if (!cancelRequested && !interrupted && (Integer) row[3] < maxAttempts) {
+                    jdbcTemplate.update("UPDATE job_queue SET state = ?, owner_node = NULL, lease_expires_at = NULL, "
+                            + "started_at = NULL WHERE id = ?", QUEUED, row[0]);
+                    reaped.requeued().add(jobId);
+                } else {
+                    jdbcTemplate.update("DELETE FROM job_queue WHERE id = ?", row[0]);
+                    (cancelRequested ? reaped.cancelled() : interrupted ? reaped.interrupted() : reaped.abandoned())
+                            .add(jobId);
+                }
+            }
+            return reaped;
+        });
+    }
+
+    // Nodes that heartbeat since aliveSince, this one included once it has
+    public int liveNodes(Instant aliveSince) {
+        Integer count = jdbcTemplate.queryForObject("SELECT count(*) FROM cluster_nodes WHERE heartbeat_at >= ?",
+                Integer.class, Timestamp.from(aliveSince));
+        return count == null ? 0 : count;
+    }
+
+    // Nodes silent since before cutoff; their jobs were reaped long ago
+    public int forgetNodes(Instant cutoff) {
+        return jdbcTemplate.update("DELETE FROM cluster_nodes WHERE heartbeat_at < ?", Timestamp.from(cutoff));
+    }
+
+    public void leave(String nodeId) {
+        jdbcTemplate.update("DELETE FROM cluster_nodes WHERE node_id = ?", nodeId);
+    }
+
+    // Nodes with their last heartbeat and claimed jobs, and unclaimed jobs per type
+    public Map<String, Object> getStatus(Instant aliveSince) {
+        Map<String, Long> claimedByNode = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT owner_node, count(*) AS claimed FROM job_queue WHERE state = ? GROUP BY owner_node",
+                rs -> {
+                    claimedByNode.put(rs.getString("owner_node"), rs.getLong("claimed"));
+                }, CLAIMED);
+
+        List<Map<String, Object>> nodes = jdbcTemplate.query(
+                "SELECT node_id, started_at, heartbeat_at FROM cluster_nodes ORDER BY node_id",
+                (rs, rowNum) -> {
+                    Map<String, Object> node = new LinkedHashMap<>();
+                    Instant heartbeatAt = rs.getTimestamp("heartbeat_at").toInstant();
+                    node.put("nodeId", rs.getString("node_id"));
+                    node.put("startedAt", rs.getTimestamp("started_at").toInstant());
+                    node.put("heartbeatAt", heartbeatAt);
+                    node.put("alive", heartbeatAt.isAfter(aliveSince));
+                    node.put("claimed", claimedByNode.getOrDefault(rs.getString("node_id"), 0L));
+                    return node;
+                });
+
+        Map<JobType, Long> queued = new EnumMap<>(JobType.class);
+        jdbcTemplate.query("SELECT job_type, count(*) AS queued FROM job_queue WHERE state = ? GROUP BY job_type",
+                rs -> {
+                    queued.put(JobType.valueOf(rs.getString("job_type")), rs.getLong("queued"));
+                }, QUEUED);
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("nodes", nodes);
+        status.put("queued", queued);
+        return status;
+    }
+
+    private String toJson(JobSpec spec) {
+        try {
+            return objectMapper.writeValueAsString(spec);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Job spec can't be stored: " + e.getMessage(), e);
+        }
+    }
+
+    private JobSpec fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, JobSpec.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unreadable job spec in job_queue: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,89 +1,264 @@
 package com.megan.dataproject.service;
 
+import com.megan.dataproject.model.JobPhase;
 import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.sketch.DataProfile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CsvToDatabaseService {
 
+    // Added to the CSV score on the way into the database
+    static final int SCORE_BONUS = 5;
+    static final int BATCH_SIZE = 10000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO students(student_id, first_name, last_name, dob, class, score) VALUES (?,?,?,?,?,?)";
+    // Partitioned only: the partitions' keys include class, so this table keeps ids unique
+    static final String STUDENT_IDS_SQL = "INSERT INTO student_ids(student_id) VALUES (?)";
+
     private final JdbcTemplate jdbcTemplate;
     private final JobService jobService;
+    private final TransactionTemplate transactionTemplate;
+    private final StudentCountService studentCountService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DataVersionService dataVersionService;
+    private final StudentCache studentCache;
 
-    @Async
-    public void uploadCsvToDatabase(String jobId, String csvPath) throws IOException {
-
+    @Value("${app.schema.partitioned:false}")
+    private boolean partitioned;
 
-        String sql = "INSERT INTO students(student_id, first_name, last_name, dob, class, score) VALUES (?,?,?,?,?,?)";
+    // Runs on a JobScheduler worker, which has already admitted the job
+    public void uploadCsvToDatabase(String jobId, String csvPath) throws IOException {
 
         long startTime = System.currentTimeMillis();
         log.info("Job {} - Starting CSV to database upload: {}", jobId, csvPath);
 
-        try (BufferedReader br = Files.newBufferedReader(Paths.get(csvPath))) {
+        CancellationToken cancellation = jobService.cancellationToken(jobId);
+        JobTelemetry telemetry = jobService.telemetry(jobId);
+        BatchLoader loader = loader(jobId, cancellation, telemetry);
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                telemetry.countReads(Files.newInputStream(Paths.get(csvPath))), StandardCharsets.UTF_8))) {
+
+            cancellation.throwIfCancelled();
+            // Rows aren't counted up front, so the ETA comes from how much of the file is read
+            telemetry.expectBytes(Files.size(Paths.get(csvPath)));
 
             jobService.updateStatus(jobId, JobStatus.PROCESSING, csvPath);
 
             String line;
-            List<Object[]> batch = new ArrayList<>();
             boolean isHeader = true;
-            long rowCount = 0;
+            // Read, parse and transform are lapped per row; insertBatch times the write and commit
+            JobTelemetry.PhaseTimer timer = telemetry.timer();
 
             while ((line = br.readLine()) != null) {
+                timer.lap(JobPhase.READ);
                 if (isHeader) { isHeader = false; continue;}
 
                 String[] data = line.split(",");
-
-                // Student database score = student CSV score + 5
                 int csvScore = Integer.parseInt(data[5].trim());
-                int finalScore = csvScore + 5;
+                long studentId = Long.parseLong(data[0].trim());
+                LocalDate dob = LocalDate.parse(data[3].trim());
+                timer.lap(JobPhase.PARSE);
 
-                Object[] values = new Object[] {
-                        Long.parseLong(data[0].trim()), // studentId
-                        data[1].trim(), //firstName
-                        data[2].trim(), //lastName
-                        LocalDate.parse(data[3].trim()), // DOB
-                        data[4].trim(), //studentClass
-                        finalScore
-                };
-
-                batch.add(values);
-                rowCount++;
+                // Student database score = student CSV score + 5
+                loader.add(studentId, data[1].trim(), data[2].trim(), dob, data[4].trim(), csvScore + SCORE_BONUS);
+                timer.lap(JobPhase.TRANSFORM);
 
                 // Push to DB every 10000 records for better performance
-                if (batch.size() >= 10000) {
-                    jdbcTemplate.batchUpdate(sql, batch);
-                    batch.clear();
-                    log.info("Job {} - CSV to DB: {} rows inserted", jobId, rowCount);
-                    jobService.updateProgress(jobId, rowCount, 0);
+                if (loader.isFull()) {
+                    timer.flush();
+                    loader.flush();
+                    log.info("Job {} - CSV to DB: {} rows inserted", jobId, loader.rowCount());
+                    jobService.updateProgress(jobId, loader.rowCount(), 0);
+                    timer.skip();
                 }
             }
+            timer.lap(JobPhase.READ);
+            timer.flush();
 
             // Flush remaining records that didn't reach batch size
-            if (!batch.isEmpty()) {
-                jdbcTemplate.batchUpdate(sql, batch);
-            }
+            loader.flush();
 
+            loader.publish();
+            jobService.attachProfile(jobId, loader.profile());
             jobService.updateStatus(jobId, JobStatus.COMPLETED, null);
             long duration = System.currentTimeMillis() - startTime;
-            log.info("Job {} - CSV to DB COMPLETED in {}ms: {} rows inserted", jobId, duration, rowCount);
+            log.info("Job {} - CSV to DB COMPLETED in {}ms: {} rows inserted", jobId, duration, loader.rowCount());
+        }
+        catch (JobCancelledException e) {
+            long duration = System.currentTimeMillis() - startTime;
+            log.info("Job {} - CSV to DB CANCELLED after {}ms: {} rows committed", jobId, duration, loader.committedRows());
+            // Batches committed before the cancel stay, like with a failure
+            loader.publish();
+            jobService.updateStatus(jobId, JobStatus.CANCELLED, e.getMessage());
         }
         catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("Job {} - CSV to DB FAILED in {}ms: {}", jobId, duration, e.getMessage());
+            loader.publish();
             jobService.updateStatus(jobId, JobStatus.FAILED, e.getMessage());
         }
     }
+
+    public BatchLoader loader(String jobId, CancellationToken cancellation, JobTelemetry telemetry) {
+        return new BatchLoader(jobId, cancellation, telemetry);
+    }
+
+    /**
+     * Collects rows into batches of {@link #BATCH_SIZE} and commits each one, keeping the
+     * per-class counts, the profile and the id range of committed rows. The upload job
+     * and the upload stage of a pipeline both load through it.
+     */
+    public final class BatchLoader {
+
+        private final String jobId;
+        private final CancellationToken cancellation;
+        private final JobTelemetry telemetry;
+        // Replaced rather than cleared after each flush: the flushed ones were handed to the insert and the summary
+        private List<Object[]> batch = new ArrayList<>();
+        private Map<StudentClass, Long> classCounts = new EnumMap<>(StudentClass.class);
+        private final DataProfile profile = new DataProfile();
+        private long rowCount;
+        private long committedRows;
+        // Id range of committed batches, published at the end so read models can refresh
+        private long minId = Long.MAX_VALUE;
+        private long maxId = Long.MIN_VALUE;
+        private long batchMinId = Long.MAX_VALUE;
+        private long batchMaxId = Long.MIN_VALUE;
+
+        private BatchLoader(String jobId, CancellationToken cancellation, JobTelemetry telemetry) {
+            this.jobId = jobId;
+            this.cancellation = cancellation;
+            this.telemetry = telemetry;
+        }
+
+        // score is the final database score
+        public void add(long studentId, String firstName, String lastName, LocalDate dob, String studentClass, int score) {
+            batch.add(new Object[]{studentId, firstName, lastName, dob, studentClass, score});
+            StudentClass parsedClass = StudentClass.valueOf(studentClass);
+            classCounts.merge(parsedClass, 1L, Long::sum);
+            profile.add(firstName, lastName, parsedClass, score);
+            batchMinId = Math.min(batchMinId, studentId);
+            batchMaxId = Math.max(batchMaxId, studentId);
+            rowCount++;
+        }
+
+        public boolean isFull() {
+            return batch.size() >= BATCH_SIZE;
+        }
+
+        // Checked before the insert: a cancelled job drops its pending batch uncommitted
+        public void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            cancellation.throwIfCancelled();
+            if (minId > maxId) {
+                // Paired with the StudentsIngestedEvent from publish(): the range below is never empty again
+                eventPublisher.publishEvent(new StudentsIngestStartedEvent(jobId));
+            }
+            // Widened first, so the range published after a failure covers every batch attempted
+            minId = Math.min(minId, batchMinId);
+            maxId = Math.max(maxId, batchMaxId);
+            insertBatch(batch, classCounts, batchMinId, batchMaxId, telemetry);
+            committedRows += batch.size();
+            batchMinId = Long.MAX_VALUE;
+            batchMaxId = Long.MIN_VALUE;
+            batch = new ArrayList<>(BATCH_SIZE);
+            classCounts = new EnumMap<>(StudentClass.class);
+        }
+
+        public void publish() {
+            publishIngested(jobId, minId, maxId, committedRows);
+        }
+
+        public long rowCount() {
+            return rowCount;
+        }
+
+        public long committedRows() {
+            return committedRows;
+        }
+
+        public DataProfile profile() {
+            return profile;
+        }
+    }
+
+    // Published before the final status so a client that sees COMPLETED never reads a stale replica.
+    // Earlier batches stay committed when a later one fails, so failed jobs publish too.
+    private void publishIngested(String jobId, long minId, long maxId, long committedRows) {
+        if (minId <= maxId) {
+            eventPublisher.publishEvent(new StudentsIngestedEvent(jobId, minId, maxId, committedRows));
+        }
+    }
+
+    static String partitionSql(StudentClass studentClass) {
+        return "INSERT INTO students_" + studentClass.name().toLowerCase(Locale.ROOT)
+                + "(student_id, first_name, last_name, dob, class, score) VALUES (?,?,?,?,?,?)";
+    }
+
+    // Rows and the per-class count summary commit together, so counts never drift from a failed batch.
+    // After the commit, cached lookups in the batch's id range are dropped and the data version
+    // moves, in that order, so report ETags issued earlier stop matching. In a cluster the shared
+    // version moves in the transaction, so the other nodes do the same at their next heartbeat.
+    // The insert counts as the write; the summary update, commit and invalidation as the commit.
+    private void insertBatch(List<Object[]> batch, Map<StudentClass, Long> classCounts,
+                             long minId, long maxId, JobTelemetry telemetry) {
+        long start = System.nanoTime();
+        long[] insertedAt = new long[1];
+        transactionTemplate.executeWithoutResult(status -> {
+            insertRows(batch);
+            insertedAt[0] = System.nanoTime();
+            studentCountService.applyDelta(classCounts);
+            dataVersionService.bumpShared();
+        });
+        studentCache.invalidateRange(minId, maxId);
+        dataVersionService.bump();
+        telemetry.addPhase(JobPhase.WRITE, insertedAt[0] - start);
+        telemetry.addPhase(JobPhase.COMMIT, System.nanoTime() - insertedAt[0]);
+    }
+
+    // With a partitioned schema each class slice goes straight into its own partition table,
+    // skipping tuple routing. The slices run one after another on the batch's connection,
+    // so the batch stays one transaction: it commits or rolls back whole, as unpartitioned.
+    // The ids go into student_ids first, so a duplicate fails the batch before any row is written.
+    private void insertRows(List<Object[]> batch) {
+        if (!partitioned) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+            return;
+        }
+        List<Object[]> ids = new ArrayList<>(batch.size());
+        Map<StudentClass, List<Object[]>> byClass = new EnumMap<>(StudentClass.class);
+        for (Object[] values : batch) {
+            ids.add(new Object[]{values[0]});
+            byClass.computeIfAbsent(StudentClass.valueOf((String) values[4]), c -> new ArrayList<>()).add(values);
+        }
+        jdbcTemplate.batchUpdate(STUDENT_IDS_SQL, ids);
+        byClass.forEach((studentClass, rows) -> jdbcTemplate.batchUpdate(partitionSql(studentClass), rows));
+    }
 }
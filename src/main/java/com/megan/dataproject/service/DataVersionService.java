@@ -0,0 +1,106 @@
+package com.megan.dataproject.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global version of the students data, used to build report ETags. Bumped after every
+ * committed ingest batch, replica refresh and count rebuild, so a response tagged with the
+ * current version reflects everything committed up to then. Seeded from the clock so tags
+ * issued before a restart never match afterwards.
+ * With app.cluster.enabled each ingest batch also bumps the shared data_version row in its
+ * own transaction. JobDispatcher polls that row at every heartbeat, and a bump from another
+ * node makes this node drop its cached students and move its own version.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DataVersionService {
+
+    private static final String STUDENTS = "students";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean clustered;
+
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    // Shared versions this node's own batches committed, so the poll can tell them from other nodes'.
+    // Each bump adds exactly 1 under the row lock, so a committed version belongs to one batch.
+    private final NavigableSet<Long> ownShared = new ConcurrentSkipListSet<>();
+    // Shared version at the last poll; -1 before the first, which only takes a baseline
+    private volatile long lastShared = -1;
+
+    public long current() {
+        return version.get();
+    }
+
+    public long bump() {
+        return version.incrementAndGet();
+    }
+
+    // Must run inside the caller's insert transaction; the row lock is held until it commits
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void bumpShared() {
+        if (!clustered) {
+            return;
+        }
+        if (jdbcTemplate.update("UPDATE data_version SET version = version + 1 WHERE name = ?", STUDENTS) == 0) {
+            // Normally seeded by the first heartbeat, so this only runs for a batch committing before it
+            jdbcTemplate.update("INSERT INTO data_version (name, version) VALUES (?, 1)", STUDENTS);
+        }
+        Long shared = jdbcTemplate.queryForObject("SELECT version FROM data_version WHERE name = ?", Long.class, STUDENTS);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ownShared.add(shared);
+            }
+        });
+    }
+
+    /**
+     * Reads the shared version; true if another node committed a bump since the last poll.
+     * A batch of this node's that committed but isn't recorded yet reads as another node's,
+     * which only costs an extra invalidation. Called by one heartbeat at a time.
+     */
+    public boolean pollShared() {
+        List<Long> rows = jdbcTemplate.queryForList("SELECT version FROM data_version WHERE name = ?", Long.class, STUDENTS);
+        if (rows.isEmpty()) {
+            seedShared();
+            rows = List.of(0L);
+        }
+        long shared = rows.get(0);
+        long previous = lastShared;
+        lastShared = shared;
+        if (previous < 0 || shared < previous) {
+            // First poll, or the row was re-created (e.g. a restored database): take a new baseline
+            ownShared.clear();
+            return previous >= 0;
+        }
+        int own = ownShared.subSet(previous, false, shared, true).size();
+        ownShared.headSet(shared, true).clear();
+        return shared - previous > own;
+    }
+
+    private void seedShared() {
+        try {
+            jdbcTemplate.update("INSERT INTO data_version (name, version) VALUES (?, 0)", STUDENTS);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Shared data version seeded by another node");
+        }
+    }
+}
@@ -1,17 +1,20 @@
 package com.megan.dataproject.service;
 
+import com.megan.dataproject.model.JobPhase;
 import com.megan.dataproject.model.JobStatus;
 import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.repository.StudentView;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
@@ -23,65 +26,108 @@ public class ExcelGeneratorService {
 
     private final FileStorageService storageService;
     private final JobService jobService;
+    private final ArtifactService artifactService;
 
-    @Async
+    // Runs on a JobScheduler worker, which has already admitted the job
     public CompletableFuture<String> generateStudentsExcel(String jobId, int count) throws IOException {
         String fileName = "StudentData_" + System.currentTimeMillis() + ".xlsx";
         String fullPath = storageService.getPath(fileName);
+        artifactService.registerOutput(jobId, Paths.get(fullPath));
 
         //Keep only 100 rows in memory
         long startTime = System.currentTimeMillis();
         log.info("Job {} - Starting Excel generation: {} records", jobId, count);
 
-        try(SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+        CancellationToken cancellation = jobService.cancellationToken(jobId);
+        JobTelemetry telemetry = jobService.telemetry(jobId);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        try {
+            cancellation.throwIfCancelled();
             jobService.updateStatus(jobId, JobStatus.PROCESSING, null);
             Sheet sheet = workbook.createSheet("Students");
 
-            // Header
-            Row header = sheet.createRow(0);
-            String[] cols = {"studentId", "firstName", "lastName", "DOB", "class", "score"};
-            for (int i =0; i < cols.length; i++) {
-                header.createCell(i).setCellValue(cols[i]);
-            }
+            writeHeader(sheet);
 
             Random random = new Random();
+            // Building rows is the transform; SXSSF spills them to its temp files as it goes
+            JobTelemetry.PhaseTimer timer = telemetry.timer();
 
             for (int i = 1; i <= count; i++) {
-               Row row = sheet.createRow(i);
-               row.createCell(0).setCellValue(i);
-               row.createCell(1).setCellValue(randomAlpha(random,3,8));
-               row.createCell(2).setCellValue(randomAlpha(random,3,8));
-               row.createCell(3).setCellValue(randomDate(random).toString());
-               row.createCell(4).setCellValue(StudentClass.getRandom().name());
-               row.createCell(5).setCellValue(55 + random.nextInt(21)); // 55 to 75
+               writeRow(sheet, i, randomStudent(i, random));
 
                // Update progress every 10000 records
                if (i % 10000 == 0) {
+                   timer.lap(JobPhase.TRANSFORM);
+                   timer.flush();
+                   cancellation.throwIfCancelled();
                    int percent = (int) ((i * 100L) / count);
                    log.info("Job {} - Excel generation: {}/{} ({}%)", jobId, i, count, percent);
                    jobService.updateProgress(jobId, i, count);
+                   timer.skip();
                }
             }
+            timer.lap(JobPhase.TRANSFORM);
+            timer.flush();
 
-            try (FileOutputStream out = new FileOutputStream(fullPath)) {
+            cancellation.throwIfCancelled();
+            long writeStart = System.nanoTime();
+            try (OutputStream out = telemetry.countWrites(new FileOutputStream(fullPath))) {
                 workbook.write(out);
             }
+            telemetry.addPhase(JobPhase.WRITE, System.nanoTime() - writeStart);
 
-            workbook.dispose();
             jobService.updateStatus(jobId, JobStatus.COMPLETED, fullPath);
             long duration = System.currentTimeMillis() - startTime;
             log.info("Job {} - Excel generation COMPLETED in {}ms: {}", jobId, duration, fullPath);
         }
+        catch (JobCancelledException e) {
+            long duration = System.currentTimeMillis() - startTime;
+            log.info("Job {} - Excel generation CANCELLED after {}ms", jobId, duration);
+            jobService.updateStatus(jobId, JobStatus.CANCELLED, e.getMessage());
+        }
         catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("Job {} - Excel generation FAILED in {}ms: {}", jobId, duration, e.getMessage());
             jobService.updateStatus(jobId, JobStatus.FAILED, e.getMessage());
         }
+        finally {
+            // Deletes the temp files the streaming workbook flushed rows to
+            workbook.dispose();
+            workbook.close();
+        }
 
         return CompletableFuture.completedFuture(fullPath);
 
     }
 
+    // Pipelines generate through this too, so both produce the same rows
+    StudentView randomStudent(long studentId, Random random) {
+        return new StudentView(studentId,
+                randomAlpha(random, 3, 8),
+                randomAlpha(random, 3, 8),
+                randomDate(random),
+                StudentClass.getRandom(),
+                55 + random.nextInt(21)); // 55 to 75
+    }
+
+    static void writeHeader(Sheet sheet) {
+        Row header = sheet.createRow(0);
+        String[] cols = {"studentId", "firstName", "lastName", "DOB", "class", "score"};
+        for (int i =0; i < cols.length; i++) {
+            header.createCell(i).setCellValue(cols[i]);
+        }
+    }
+
+    static void writeRow(Sheet sheet, int rowIndex, StudentView student) {
+        Row row = sheet.createRow(rowIndex);
+        row.createCell(0).setCellValue(student.studentId());
+        row.createCell(1).setCellValue(student.firstName());
+        row.createCell(2).setCellValue(student.lastName());
+        row.createCell(3).setCellValue(student.dob().toString());
+        row.createCell(4).setCellValue(student.studentClass().name());
+        row.createCell(5).setCellValue(student.score());
+    }
+
     private String randomAlpha(Random r, int min, int max) {
         int length = r.nextInt(max - min + 1) + min;
         return r.ints(97, 123) // 'a' to 'z'
@@ -1,19 +1,22 @@
 package com.megan.dataproject.service;
 
 import com.github.pjfanning.xlsx.StreamingReader;
+import com.megan.dataproject.model.JobPhase;
 import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.sketch.DataProfile;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Iterator;
 
 
 @Slf4j
@@ -21,37 +24,56 @@ import java.nio.file.Paths;
 @RequiredArgsConstructor
 public class ExcelToCsvService {
 
+    static final String CSV_HEADER = "studentId,firstName,lastName,DOB,class,score";
+    // Added to the Excel score in the CSV
+    static final int SCORE_BONUS = 10;
+
     private final FileStorageService storageService;
     private final JobService jobService;
+    private final ArtifactService artifactService;
 
-    @Async
+    // Runs on a JobScheduler worker, which has already admitted the job
     public void convertExceltoCsv(File inputFile, String jobId) {
         String outputFileName = "ProcessedData_" + System.currentTimeMillis() + ".csv";
         String outputPath = storageService.getPath(outputFileName);
+        artifactService.registerOutput(jobId, Paths.get(outputPath));
 
         long startTime = System.currentTimeMillis();
         log.info("Job {} - Starting Excel to CSV conversion", jobId);
 
+        DataProfile profile = new DataProfile();
+        CancellationToken cancellation = jobService.cancellationToken(jobId);
+        JobTelemetry telemetry = jobService.telemetry(jobId);
+
         try {
+            cancellation.throwIfCancelled();
             jobService.updateStatus(jobId, JobStatus.PROCESSING, null);
 
+            // Opening the workbook counts as reading; laps run through the read, parse, transform and write of each row
+            JobTelemetry.PhaseTimer timer = telemetry.timer();
+
             // 1.  Open Excel as a Stream (Low Memory)
-            try (InputStream is = new FileInputStream(inputFile);
+            try (InputStream is = telemetry.countReads(new FileInputStream(inputFile));
                  Workbook workbook = StreamingReader.builder()
                          .rowCacheSize(100) // number of rows to keep in memory
                          .bufferSize(4096) //buffer size to use when reading InputStream
                          .open(is);
 
-                 BufferedWriter writer = Files.newBufferedWriter(Paths.get(outputPath))) {
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                         telemetry.countWrites(Files.newOutputStream(Paths.get(outputPath))), StandardCharsets.UTF_8))) {
 
                 Sheet sheet = workbook.getSheetAt(0);
                 boolean isHeader = true;
                 long rowCount = 0;
 
-                for (Row row : sheet) {
+                Iterator<Row> rows = sheet.iterator();
+                while (rows.hasNext()) {
+                    // The streaming reader parses the sheet XML as it hands out each row
+                    Row row = rows.next();
+                    timer.lap(JobPhase.READ);
                     if (isHeader) {
                         //Write CSV Header
-                        writer.write("studentId,firstName,lastName,DOB,class,score");
+                        writer.write(CSV_HEADER);
                         writer.newLine();
                         isHeader = false;
                         continue;
@@ -66,28 +88,44 @@ public class ExcelToCsvService {
 
                     // 3. APPLY LOGIC: score + 10
                     int originalScore = (int) Double.parseDouble(getCellValue(row, 5));
-                    int updatedScore = originalScore + 10;
+                    timer.lap(JobPhase.PARSE);
+                    int updatedScore = originalScore + SCORE_BONUS;
 
-                    // 4. Write to CSV
-                    String csvRow = String.format("%s,%s,%s,%s,%s,%d",
-                            id, fName, lName, dob, studentClass, updatedScore);
+                    String csvRow = csvRow(id, fName, lName, dob, studentClass, updatedScore);
+                    profile.add(fName, lName, studentClass, updatedScore);
+                    timer.lap(JobPhase.TRANSFORM);
 
+                    // 4. Write to CSV
                     writer.write(csvRow);
                     writer.newLine();
+                    timer.lap(JobPhase.WRITE);
 
                     rowCount++;
                     // Update progress every 10000 records (total unknown for streaming)
                     if (rowCount % 10000 == 0) {
+                        timer.flush();
+                        cancellation.throwIfCancelled();
                         log.info("Job {} - Excel to CSV: {} rows processed", jobId, rowCount);
                         jobService.updateProgress(jobId, rowCount, 0);
+                        timer.skip();
                     }
                 }
             }
+            // Closing the writer flushed its last buffer
+            timer.lap(JobPhase.WRITE);
+            timer.flush();
 
+            jobService.attachProfile(jobId, profile);
             jobService.updateStatus(jobId, JobStatus.COMPLETED, outputPath);
             long duration = System.currentTimeMillis() - startTime;
             log.info("Job {} - Excel to CSV COMPLETED in {}ms: {}", jobId, duration, outputPath);
 
+        } catch (JobCancelledException e) {
+            long duration = System.currentTimeMillis() - startTime;
+            log.info("Job {} - Excel to CSV CANCELLED after {}ms", jobId, duration);
+            // The writer is closed by now; a partial CSV is no use to anyone
+            deletePartialOutput(jobId, outputPath);
+            jobService.updateStatus(jobId, JobStatus.CANCELLED, e.getMessage());
         } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
             log.error("Job {} - Excel to CSV FAILED in {}ms: {}", jobId, duration, e.getMessage());
@@ -95,6 +133,18 @@ public class ExcelToCsvService {
         }
     }
 
+    static String csvRow(String id, String firstName, String lastName, String dob, String studentClass, int score) {
+        return String.format("%s,%s,%s,%s,%s,%d", id, firstName, lastName, dob, studentClass, score);
+    }
+
+    private void deletePartialOutput(String jobId, String outputPath) {
+        try {
+            Files.deleteIfExists(Paths.get(outputPath));
+        } catch (IOException e) {
+            log.warn("Job {} - could not delete partial output {}: {}", jobId, outputPath, e.getMessage());
+        }
+    }
+
     private String getCellValue(Row row, int index) {
         Cell cell = row.getCell(index);
         return (cell == null) ? "" : cell.getStringCellValue();
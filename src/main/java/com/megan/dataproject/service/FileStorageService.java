@@ -1,8 +1,11 @@
 package com.megan.dataproject.service;
 import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -10,7 +13,16 @@ import java.nio.file.Paths;
 public class FileStorageService {
     private final String BASE_PATH;
 
-    public FileStorageService() {
+    // Where uploads are copied before their job runs; in a cluster it must be shared like BASE_PATH
+    @Value("${app.storage.temp-path:${java.io.tmpdir}}")
+    private Path tempDirectory;
+
+    // app.storage.path (STORAGE_PATH); in a cluster every node must see the same directory there
+    public FileStorageService(@Value("${app.storage.path:}") String storagePath) {
+        if (!storagePath.isBlank()) {
+            BASE_PATH = storagePath;
+            return;
+        }
         // Use platform-appropriate path
         String os = System.getProperty("os.name").toLowerCase();
         if (os.contains("win")) {
@@ -33,4 +45,14 @@ public class FileStorageService {
     public String getPath(String fileName) {
         return Paths.get(BASE_PATH, fileName).toString();
     }
+
+    public Path getBaseDirectory() {
+        return Paths.get(BASE_PATH);
+    }
+
+    // An empty file for an upload's copy, e.g. createTempInput("upload_csv_", ".csv")
+    public File createTempInput(String prefix, String suffix) throws IOException {
+        Files.createDirectories(tempDirectory);
+        return Files.createTempFile(tempDirectory, prefix, suffix).toFile();
+    }
 }
@@ -0,0 +1,9 @@
+package com.megan.dataproject.service;
+
+// Thrown at a batch boundary of a job whose CancellationToken was set
+public class JobCancelledException extends RuntimeException {
+
+    public JobCancelledException() {
+        super("Job cancelled");
+    }
+}
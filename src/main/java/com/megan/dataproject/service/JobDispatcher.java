@@ -0,0 +1,336 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.JobType;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Where new jobs go. On a single node they are handed straight to JobScheduler. With
+ * app.cluster.enabled they are written to the shared job_queue table instead, and every
+ * node claims from it only as many jobs as its scheduler can start at once, so queued work
+ * goes to whichever node frees up first and more nodes mean more jobs running. Each node
+ * heartbeats to keep the leases of its jobs, and requeues the jobs of nodes that stopped.
+ * The heartbeat also polls the shared data version, so rows another node ingested don't
+ * stay hidden behind this node's cache, replica or ETags.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobDispatcher {
+
+    // Silent nodes are dropped from cluster_nodes after this; their jobs were requeued long before
+    private static final Duration NODE_RETENTION = Duration.ofHours(1);
+
+    private final JobScheduler jobScheduler;
+    private final ClusterJobQueue clusterJobQueue;
+    private final JobRunner jobRunner;
+    private final JobService jobService;
+    private final ArtifactService artifactService;
+    private final ResourceGovernor resourceGovernor;
+    private final DataVersionService dataVersionService;
+    private final StudentCache studentCache;
+    private final StudentColumnStore studentColumnStore;
+
+    // Defaults to the host name; a random suffix keeps a restarted node from inheriting the old one's leases
+    @Value("${app.cluster.node-id:${HOSTNAME:node}}")
+    private String nodeName;
+
+    // A claim lapses this long after its node's last heartbeat
+    @Value("${app.cluster.lease:PT30S}")
+    private Duration lease;
+
+    // Claims per job before it is given up as FAILED; each lapsed lease counts as one
+    @Value("${app.cluster.max-attempts:3}")
+    private int maxAttempts;
+
+    private final Instant startedAt = Instant.now();
+    private final String nodeSuffix = UUID.randomUUID().toString().substring(0, 8);
+
+    // Jobs this node claimed and hasn't finished; true once the job has started
+    private final Map<String, Boolean> claimed = new ConcurrentHashMap<>();
+    // Claimed jobs already asked to stop, so a cancel request is acted on once
+    private final Set<String> stopping = ConcurrentHashMap.newKeySet();
+    private volatile Instant lastHeartbeat = Instant.now();
+
+    public String nodeId() {
+        return nodeName + "-" + nodeSuffix;
+    }
+
+    // Cheap pre-check so a request can be turned away before its upload is copied to disk
+    public Optional<JobScheduler.Admission> checkCapacity(JobType type) {
+        if (!clusterJobQueue.isEnabled()) {
+            return jobScheduler.checkCapacity(type);
+        }
+        JobScheduler.Admission admission = jobScheduler.admit(type, clusterJobQueue.queued(type));
+        return admission.accepted() ? Optional.empty() : Optional.of(admission);
+    }
+
+    /**
+     * Queues a job created with JobService.createJob. Its input, if any, belongs to the job
+     * from here on: it is deleted when the job finishes, or right away if it is rejected.
+     * In a cluster the queue limit is checked against the shared table without a lock, so
+     * simultaneous submits can overshoot it by a few jobs.
+     */
+    public JobScheduler.Admission submit(String jobId, JobSpec spec) {
+        if (!clusterJobQueue.isEnabled()) {
+            registerInput(jobId, spec);
+            return jobScheduler.submit(spec.type(), jobId, resourceGovernor.estimate(spec), jobRunner.task(jobId, spec));
+        }
+        JobScheduler.Admission admission = jobScheduler.admit(spec.type(), clusterJobQueue.queued(spec.type()));
+        if (admission.accepted()) {
+            clusterJobQueue.enqueue(jobId, spec);
+        } else {
+            // The caller records the rejection as FAILED, which deletes what is registered here
+            registerInput(jobId, spec);
+        }
+        return admission;
+    }
+
+    // Claims what this node can start now, type by type in the scheduler's fair order
+    @Scheduled(fixedDelayString = "${app.cluster.poll-interval:PT1S}")
+    public void poll() {
+        if (!clusterJobQueue.isEnabled()) {
+            return;
+        }
+        int budget = jobScheduler.freeSlots();
+        try {
+            for (Map.Entry<JobType, Integer> open : jobScheduler.openSlots().entrySet()) {
+                if (budget <= 0) {
+                    return;
+                }
+                List<ClusterJobQueue.ClaimedJob> jobs = clusterJobQueue.claim(open.getKey(),
+                        Math.min(open.getValue(), budget), nodeId(), Instant.now().plus(lease));
+                for (ClusterJobQueue.ClaimedJob job : jobs) {
+                    start(job);
+                }
+                budget -= jobs.size();
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not claim jobs from the cluster queue: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps this node's leases, acts on cancel requests for its jobs, and requeues the jobs
+     * of nodes whose leases ran out. If the node can't reach the table for longer than a
+     * lease, its jobs are being requeued elsewhere, so it stops running them itself.
+     */
+    @Scheduled(fixedDelayString = "${app.cluster.heartbeat-interval:PT5S}")
+    public void heartbeat() {
+        if (!clusterJobQueue.isEnabled()) {
+            return;
+        }
+        Instant now = Instant.now();
+        // Taken first: a job claimed while the heartbeat runs isn't in its result yet
+        Set<String> held = Set.copyOf(claimed.keySet());
+        List<ClusterJobQueue.OwnedJob> owned;
+        try {
+            owned = clusterJobQueue.heartbeat(nodeId(), startedAt, now.plus(lease));
+            lastHeartbeat = now;
+        } catch (DataAccessException e) {
+            log.warn("Cluster heartbeat failed: {}", e.getMessage());
+            if (Duration.between(lastHeartbeat, now).compareTo(lease) > 0) {
+                held.forEach(jobId -> abandon(jobId, "no heartbeat for longer than the lease"));
+            }
+            return;
+        }
+
+        Set<String> ownedIds = owned.stream().map(ClusterJobQueue.OwnedJob::jobId).collect(Collectors.toSet());
+        for (String jobId : held) {
+            // Not in claimed any more: it finished and removed its own row
+            if (!ownedIds.contains(jobId) && claimed.containsKey(jobId)) {
+                abandon(jobId, "its lease was taken over");
+            }
+        }
+        for (ClusterJobQueue.OwnedJob job : owned) {
+            String jobId = job.jobId();
+            if (!job.cancelRequested() || !claimed.containsKey(jobId) || !stopping.add(jobId)) {
+                continue;
+            }
+            if (!claimed.getOrDefault(jobId, true) && jobScheduler.remove(jobId)) {
+                // Never started, so no job thread will complete the row
+                jobService.updateStatus(jobId, JobStatus.CANCELLED, "Cancelled before it started");
+                finish(jobId);
+            } else {
+                jobService.cancel(jobId);
+            }
+        }
+
+        try {
+            reap(now);
+        } catch (DataAccessException e) {
+            log.warn("Could not reap expired cluster leases: {}", e.getMessage());
+        }
+        try {
+            // The storage disk is shared, so each node budgets only its part of it
+            resourceGovernor.setDiskShares(clusterJobQueue.liveNodes(now.minus(lease)));
+        } catch (DataAccessException e) {
+            log.warn("Could not count live cluster nodes: {}", e.getMessage());
+        }
+        try {
+            syncDataVersion();
+        } catch (DataAccessException e) {
+            log.warn("Could not read the shared data version: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", clusterJobQueue.isEnabled());
+        status.put("nodeId", nodeId());
+        status.put("claimed", claimed.size());
+        if (clusterJobQueue.isEnabled()) {
+            status.putAll(clusterJobQueue.getStatus(Instant.now().minus(lease)));
+        }
+        return status;
+    }
+
+    // Jobs still waiting in the local scheduler go back to the queue; running ones are
+    // requeued by another node once their lease runs out
+    @PreDestroy
+    public void shutdown() {
+        if (!clusterJobQueue.isEnabled()) {
+            return;
+        }
+        try {
+            claimed.forEach((jobId, started) -> {
+                if (!started && jobScheduler.remove(jobId)) {
+                    clusterJobQueue.release(jobId, nodeId());
+                }
+            });
+            clusterJobQueue.leave(nodeId());
+        } catch (DataAccessException e) {
+            log.warn("Could not leave the cluster cleanly: {}", e.getMessage());
+        }
+    }
+
+    private void start(ClusterJobQueue.ClaimedJob job) {
+        String jobId = job.jobId();
+        if (hasEnded(jobId)) {
+            // Its last node died after the final status but before removing the row, or it was cancelled meanwhile
+            clusterJobQueue.complete(jobId, nodeId());
+            return;
+        }
+        claimed.put(jobId, false);
+        registerInput(jobId, job.spec());
+        Runnable task = jobRunner.task(jobId, job.spec());
+        ResourceGovernor.Footprint footprint = resourceGovernor.estimate(job.spec());
+        JobScheduler.Admission admission = jobScheduler.submit(job.spec().type(), jobId, footprint, () -> {
+            claimed.replace(jobId, true);
+            try {
+                // Recorded before any work, so a lapsed lease never reruns an upload that may have committed rows
+                clusterJobQueue.markStarted(jobId, nodeId());
+            } catch (DataAccessException e) {
+                log.error("Job {} - could not record its start in the cluster queue: {}", jobId, e.getMessage());
+                jobService.updateStatus(jobId, JobStatus.FAILED, "Could not record the start in the cluster queue");
+                finish(jobId);
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                finish(jobId);
+            }
+        });
+        if (!admission.accepted()) {
+            // Only claimed what had room, so this is a race with a local submit; let another node have it
+            claimed.remove(jobId);
+            clusterJobQueue.release(jobId, nodeId());
+        } else {
+            log.info("Job {} - claimed {} job from the cluster queue", jobId, job.spec().type());
+        }
+    }
+
+    private void finish(String jobId) {
+        claimed.remove(jobId);
+        stopping.remove(jobId);
+        try {
+            clusterJobQueue.complete(jobId, nodeId());
+        } catch (DataAccessException e) {
+            // The lease runs out and the row is reaped; the job's status is already final
+            log.warn("Job {} - could not remove it from the cluster queue: {}", jobId, e.getMessage());
+        }
+    }
+
+    // Another node has the job now (or soon will); stop this copy without touching the queue row
+    private void abandon(String jobId, String reason) {
+        log.warn("Job {} - stopping on this node: {}", jobId, reason);
+        claimed.remove(jobId);
+        stopping.remove(jobId);
+        jobScheduler.remove(jobId);
+        jobService.stopLocally(jobId);
+    }
+
+    private void reap(Instant now) {
+        ClusterJobQueue.Reaped reaped = clusterJobQueue.reapExpired(now, maxAttempts);
+        for (String jobId : reaped.requeued()) {
+            // An ended job is dropped by whichever node claims it next (see start)
+            if (!hasEnded(jobId)) {
+                log.warn("Job {} - lease expired, requeued", jobId);
+                jobService.updateStatus(jobId, JobStatus.SUBMITTED, "Requeued: the node running it stopped responding");
+            }
+        }
+        for (String jobId : reaped.cancelled()) {
+            if (!hasEnded(jobId)) {
+                jobService.updateStatus(jobId, JobStatus.CANCELLED, "Cancelled; the node running it stopped responding");
+            }
+        }
+        for (String jobId : reaped.interrupted()) {
+            if (!hasEnded(jobId)) {
+                log.error("Job {} - lease expired while it was running, not restarting it", jobId);
+                jobService.updateStatus(jobId, JobStatus.FAILED, "Interrupted: the node running it stopped responding. "
+                        + "Rows it committed stay; rerunning it would duplicate them");
+            }
+        }
+        for (String jobId : reaped.abandoned()) {
+            if (!hasEnded(jobId)) {
+                log.error("Job {} - lease expired {} times, giving up", jobId, maxAttempts);
+                jobService.updateStatus(jobId, JobStatus.FAILED,
+                        "Gave up after " + maxAttempts + " attempts: the nodes running it stopped responding");
+            }
+        }
+        int forgotten = clusterJobQueue.forgetNodes(now.minus(NODE_RETENTION));
+        if (forgotten > 0) {
+            log.info("Removed {} cluster nodes silent for over {}", forgotten, NODE_RETENTION);
+        }
+    }
+
+    // Another node committed students rows: drop what this node holds of them, as an ingest here does
+    private void syncDataVersion() {
+        if (dataVersionService.pollShared()) {
+            log.debug("Students changed on another node - invalidating the cache and replica");
+            studentColumnStore.invalidate();
+            studentCache.clear();
+            dataVersionService.bump();
+        }
+    }
+
+    private boolean hasEnded(String jobId) {
+        JobService.JobInfo jobInfo = jobService.getJob(jobId);
+        return jobInfo != null && jobInfo.getStatus().isTerminal();
+    }
+
+    private void registerInput(String jobId, JobSpec spec) {
+        if (spec.inputPath() != null) {
+            artifactService.registerInput(jobId, Path.of(spec.inputPath()));
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.megan.dataproject.service;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Pushes job updates to Server-Sent Events subscribers. A subscriber is an SseEmitter on an
+ * async request, so an idle one holds no thread. Updates are coalesced per subscriber: only
+ * the latest state of each job is kept, and at most every app.jobs.events.interval one
+ * virtual thread writes whatever is pending. A slow client therefore gets fewer, newer
+ * events rather than a growing backlog. A stream completes once all its jobs are terminal.
+ * In a cluster, jobs running on other nodes are followed by polling the jobs table.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobEventService {
+
+    public static final int MAX_JOBS_PER_STREAM = 100;
+
+    private final JobStore jobStore;
+
+    // How a job's current state is read; JobService swaps in a lookup that adds the queue position
+    private volatile Function<String, Optional<JobService.JobInfo>> lookup;
+
+    @Value("${app.jobs.events.timeout:PT30M}")
+    private Duration timeout;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    private final Map<String, Set<Subscriber>> subscribersByJob = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Queue<Subscriber> ready = new ConcurrentLinkedQueue<>();
+    // In a cluster: last state queued per subscribed job, so polling only sends what changed
+    private final Map<String, JobService.JobInfo> latest = new ConcurrentHashMap<>();
+
+    // Blocking socket writes park a virtual thread, not a platform thread
+    private final Executor sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    // One event: the job id plus the JobInfo fields, flattened
+    public record JobUpdate(String jobId, @JsonUnwrapped JobService.JobInfo job) {
+    }
+
+    public void lookupWith(Function<String, Optional<JobService.JobInfo>> lookup) {
+        this.lookup = lookup;
+    }
+
+    private Optional<JobService.JobInfo> find(String jobId) {
+        Function<String, Optional<JobService.JobInfo>> current = lookup;
+        return current != null ? current.apply(jobId) : jobStore.find(jobId);
+    }
+
+    /**
+     * Stream for the given jobs, starting with their current state. Empty when none of
+     * them exist; unknown ids among known ones are ignored.
+     */
+    public Optional<SseEmitter> subscribe(List<String> jobIds) {
+        return subscribe(jobIds, new SseEmitter(timeout.toMillis()));
+    }
+
+    Optional<SseEmitter> subscribe(List<String> jobIds, SseEmitter emitter) {
+        Map<String, JobService.JobInfo> current = new LinkedHashMap<>();
+        for (String jobId : jobIds) {
+            find(jobId).ifPresent(jobInfo -> current.put(jobId, jobInfo));
+        }
+        if (current.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Subscriber subscriber = new Subscriber(emitter, current.keySet());
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        // Register before offering the current state, so no update can fall in between
+        subscribers.add(subscriber);
+        for (String jobId : current.keySet()) {
+            subscribersByJob.computeIfAbsent(jobId, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        // putIfAbsent: an update published since the read above is newer and wins
+        current.forEach(subscriber.pending::putIfAbsent);
+        if (clusterEnabled) {
+            current.forEach(latest::putIfAbsent);
+        }
+        send(subscriber);
+        return Optional.of(emitter);
+    }
+
+    // Called by JobService after every change
+    public void publish(String jobId, JobService.JobInfo jobInfo) {
+        Set<Subscriber> jobSubscribers = subscribersByJob.get(jobId);
+        if (jobSubscribers == null) {
+            return;
+        }
+        if (clusterEnabled) {
+            latest.put(jobId, jobInfo);
+        }
+        // JobInfo is immutable, so the update can be queued as is
+        for (Subscriber subscriber : jobSubscribers) {
+            subscriber.pending.put(jobId, jobInfo);
+            if (subscriber.queued.compareAndSet(false, true)) {
+                ready.add(subscriber);
+            }
+        }
+    }
+
+    // Coalescing window: every update published since the last tick goes out as one write
+    @Scheduled(fixedDelayString = "${app.jobs.events.interval:PT0.25S}")
+    public void flush() {
+        Subscriber subscriber;
+        while ((subscriber = ready.poll()) != null) {
+            subscriber.queued.set(false);
+            send(subscriber);
+        }
+    }
+
+    // A job running on another node changes only in the jobs table, where its node flushes progress
+    // every app.jobs.flush-interval. Jobs running here come from the hot tier and match latest.
+    // A job queued in the shared job_queue moves as any node claims, so its position is re-read too.
+    @Scheduled(fixedDelayString = "${app.cluster.poll-interval:PT1S}")
+    public void pollShared() {
+        if (!clusterEnabled) {
+            return;
+        }
+        for (String jobId : subscribersByJob.keySet()) {
+            find(jobId).ifPresent(jobInfo -> {
+                if (!jobInfo.equals(latest.get(jobId))) {
+                    publish(jobId, jobInfo);
+                }
+            });
+        }
+    }
+
+    // Comment lines keep proxies from closing idle streams and reveal clients that went away
+    @Scheduled(fixedDelayString = "${app.jobs.events.heartbeat:PT15S}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            sender.execute(() -> {
+                // Same lock as send(): an emitter must never see two writes at once
+                subscriber.lock.lock();
+                try {
+                    if (!subscriber.closed) {
+                        write(subscriber, SseEmitter.event().comment("keepalive"));
+                    }
+                } finally {
+                    subscriber.lock.unlock();
+                }
+            });
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    // Writes already handed to sender finish (or fail on the completed emitter) before it stops
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        if (sender instanceof ExecutorService executorService) {
+            executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                    executorService.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber) {
+        sender.execute(() -> {
+            // The lock keeps one write per subscriber in flight, in publish order
+            subscriber.lock.lock();
+            try {
+                if (subscriber.closed) {
+                    return;
+                }
+                List<JobUpdate> updates = new ArrayList<>();
+                synchronized (subscriber.pending) {
+                    subscriber.pending.forEach((jobId, jobInfo) -> updates.add(new JobUpdate(jobId, jobInfo)));
+                    subscriber.pending.clear();
+                }
+                for (JobUpdate update : updates) {
+                    if (!write(subscriber, SseEmitter.event().name("job").data(update))) {
+                        return;
+                    }
+                    if (update.job().getStatus().isTerminal()) {
+                        subscriber.remaining.remove(update.jobId());
+                    }
+                }
+                if (subscriber.remaining.isEmpty()) {
+                    subscriber.emitter.complete();
+                    remove(subscriber);
+                }
+            } finally {
+                subscriber.lock.unlock();
+            }
+        });
+    }
+
+    private boolean write(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        try {
+            subscriber.emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // Client disconnected, or the emitter already completed
+            log.debug("Dropping job event subscriber: {}", e.getMessage());
+            remove(subscriber);
+            return false;
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.closed = true;
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        for (String jobId : subscriber.jobIds) {
+            subscribersByJob.computeIfPresent(jobId, (key, jobSubscribers) -> {
+                jobSubscribers.remove(subscriber);
+                return jobSubscribers.isEmpty() ? null : jobSubscribers;
+            });
+            if (!subscribersByJob.containsKey(jobId)) {
+                latest.remove(jobId);
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<String> jobIds;
+        private final Set<String> remaining = ConcurrentHashMap.newKeySet();
+        // Latest unsent state per job; a newer update replaces an unsent older one
+        private final Map<String, JobService.JobInfo> pending = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, Set<String> jobIds) {
+            this.emitter = emitter;
+            this.jobIds = Set.copyOf(jobIds);
+            this.remaining.addAll(jobIds);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.megan.dataproject.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Turns a JobSpec into the task JobScheduler runs, on whichever node picked the job up
+@Service
+@RequiredArgsConstructor
+public class JobRunner {
+
+    private final ExcelGeneratorService excelGeneratorService;
+    private final ExcelToCsvService excelToCsvService;
+    private final CsvToDatabaseService csvToDatabaseService;
+    private final PipelineService pipelineService;
+
+    public Runnable task(String jobId, JobSpec spec) {
+        return switch (spec.type()) {
+            case GENERATE -> () -> {
+                try {
+                    excelGeneratorService.generateStudentsExcel(jobId, spec.count());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            case PROCESS -> () -> excelToCsvService.convertExceltoCsv(new File(spec.inputPath()), jobId);
+            case UPLOAD -> () -> {
+                try {
+                    csvToDatabaseService.uploadCsvToDatabase(jobId, spec.inputPath());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            case PIPELINE -> () -> pipelineService.run(jobId, spec.pipeline());
+        };
+    }
+}
@@ -0,0 +1,330 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.config.JobSchedulerProperties;
+import com.megan.dataproject.model.JobType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Admits background jobs into per-type queues and starts them on the executor that fits
+ * their workload (see {@link #executorFor}).
+ * Each type has its own concurrency cap and queue length, and all types share
+ * app.scheduler.max-concurrency running slots. Free slots go to queued types in
+ * proportion to their weight (stride scheduling), so a burst of uploads can't starve
+ * generation. A full queue rejects the job with a Retry-After estimate instead of
+ * letting the executor throw. A job also needs its footprint reserved with
+ * {@link ResourceGovernor} to start; until it fits, it waits at the head of its queue and
+ * other types may go first.
+ */
+@Slf4j
+@Service
+public class JobScheduler {
+
+    private static final long STRIDE = 1_000_000L;
+    private static final double DEFAULT_JOB_SECONDS = 5.0;
+
+    private final Executor cpuExecutor;
+    private final Executor ioExecutor;
+    private final int maxConcurrency;
+    private final ResourceGovernor resourceGovernor;
+    private final Map<JobType, TypeQueue> queues = new EnumMap<>(JobType.class);
+
+    // Pass of the last job started; a type that was idle restarts from here, not from its old pass
+    private long globalPass;
+    private int running;
+    // Set while dispatch runs, so a release it triggers itself doesn't dispatch again inside it
+    private boolean dispatching;
+    // An executor turned a job away; with nothing running, no finish would ever dispatch it again
+    private boolean retryPending;
+    // Told each waiting job's new position when a queue moves up; runs under this scheduler's lock
+    private BiConsumer<String, Integer> queueMovedListener = (jobId, position) -> { };
+
+    public JobScheduler(@Qualifier("cpuExecutor") Executor cpuExecutor,
+                        @Qualifier("ioExecutor") Executor ioExecutor,
+                        JobSchedulerProperties properties,
+                        ResourceGovernor resourceGovernor) {
+        this.cpuExecutor = cpuExecutor;
+        this.ioExecutor = ioExecutor;
+        this.maxConcurrency = properties.maxConcurrency();
+        this.resourceGovernor = resourceGovernor;
+        for (JobType type : JobType.values()) {
+            queues.put(type, new TypeQueue(type, properties.limits(type)));
+        }
+        // An export or another job freeing memory or disk may let a waiting job start
+        resourceGovernor.onRelease(this::resourcesReleased);
+    }
+
+    // accepted, or rejected with how long the caller should wait before retrying
+    public record Admission(boolean accepted, long retryAfterSeconds) {
+    }
+
+    private record QueuedJob(String jobId, ResourceGovernor.Footprint footprint, Runnable task) {
+    }
+
+    private static final class TypeQueue {
+        private final JobType type;
+        private final JobSchedulerProperties.Limits limits;
+        private final ArrayDeque<QueuedJob> waiting = new ArrayDeque<>();
+        private int running;
+        private long pass;
+        // The job at the head is waiting for its footprint to fit
+        private boolean waitingForResources;
+        // Moving average of job duration, for Retry-After
+        private double averageSeconds = DEFAULT_JOB_SECONDS;
+
+        private TypeQueue(JobType type, JobSchedulerProperties.Limits limits) {
+            this.type = type;
+            this.limits = limits;
+        }
+
+        private boolean canStart() {
+            return !waiting.isEmpty() && running < limits.concurrency();
+        }
+    }
+
+    // Cheap pre-check so a request can be turned away before its upload is copied to disk
+    public synchronized Optional<Admission> checkCapacity(JobType type) {
+        TypeQueue queue = queues.get(type);
+        if (queue.waiting.size() >= queue.limits.queueCapacity()) {
+            return Optional.of(new Admission(false, retryAfterSeconds(queue)));
+        }
+        return Optional.empty();
+    }
+
+    public Admission submit(JobType type, String jobId, Runnable task) {
+        return submit(type, jobId, ResourceGovernor.Footprint.NONE, task);
+    }
+
+    // footprint is reserved with ResourceGovernor when the job starts and released when it ends
+    public synchronized Admission submit(JobType type, String jobId, ResourceGovernor.Footprint footprint,
+                                         Runnable task) {
+        TypeQueue queue = queues.get(type);
+        if (queue.waiting.size() >= queue.limits.queueCapacity()) {
+            return new Admission(false, retryAfterSeconds(queue));
+        }
+        if (queue.waiting.isEmpty() && queue.running == 0) {
+            queue.pass = Math.max(queue.pass, globalPass);
+        }
+        queue.waiting.add(new QueuedJob(jobId, footprint, task));
+        dispatch();
+        return new Admission(true, 0);
+    }
+
+    // Same limit for a queue kept outside this scheduler: the cluster's job_queue table, holding queued jobs
+    public synchronized Admission admit(JobType type, long queued) {
+        TypeQueue queue = queues.get(type);
+        if (queued >= queue.limits.queueCapacity()) {
+            return new Admission(false, retryAfterSeconds(queue));
+        }
+        return new Admission(true, 0);
+    }
+
+    // Running slots nobody holds or waits for; a node claims no more cluster jobs than this
+    public synchronized int freeSlots() {
+        int waiting = queues.values().stream().mapToInt(queue -> queue.waiting.size()).sum();
+        return Math.max(0, maxConcurrency - running - waiting);
+    }
+
+    // Jobs of each type that could start at once under the type's cap, lowest pass (most owed) first
+    public synchronized Map<JobType, Integer> openSlots() {
+        Map<JobType, Integer> open = new LinkedHashMap<>();
+        queues.values().stream()
+                .sorted(Comparator.comparingLong(queue -> Math.max(queue.pass, globalPass)))
+                .forEach(queue -> {
+                    int slots = queue.limits.concurrency() - queue.running - queue.waiting.size();
+                    if (slots > 0) {
+                        open.put(queue.type, slots);
+                    }
+                });
+        return open;
+    }
+
+    // 1-based position in its type's queue; empty once the job has started or was never queued
+    public synchronized Optional<Integer> queuePosition(String jobId) {
+        for (TypeQueue queue : queues.values()) {
+            int position = 1;
+            for (QueuedJob job : queue.waiting) {
+                if (job.jobId().equals(jobId)) {
+                    return Optional.of(position);
+                }
+                position++;
+            }
+        }
+        return Optional.empty();
+    }
+
+    public synchronized void onQueueMoved(BiConsumer<String, Integer> listener) {
+        this.queueMovedListener = listener;
+    }
+
+    // Drops a job that hasn't started yet, e.g. when it is cancelled
+    public synchronized boolean remove(String jobId) {
+        for (TypeQueue queue : queues.values()) {
+            Iterator<QueuedJob> jobs = queue.waiting.iterator();
+            while (jobs.hasNext()) {
+                if (jobs.next().jobId().equals(jobId)) {
+                    jobs.remove();
+                    // It may have been waiting for room the governor holds back for it
+                    resourceGovernor.release(jobId);
+                    queueMoved(queue);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running);
+        status.put("maxConcurrency", maxConcurrency);
+        queues.forEach((type, queue) -> {
+            Map<String, Object> typeStatus = new LinkedHashMap<>();
+            typeStatus.put("running", queue.running);
+            typeStatus.put("queued", queue.waiting.size());
+            typeStatus.put("waitingForResources", queue.waitingForResources && !queue.waiting.isEmpty());
+            typeStatus.put("concurrency", queue.limits.concurrency());
+            typeStatus.put("queueCapacity", queue.limits.queueCapacity());
+            typeStatus.put("weight", queue.limits.weight());
+            typeStatus.put("averageSeconds", Math.round(queue.averageSeconds * 10) / 10.0);
+            status.put(type.name(), typeStatus);
+        });
+        return status;
+    }
+
+    // Tries the jobs an executor rejected again, whether or not anything finished since
+    @Scheduled(fixedDelayString = "${app.scheduler.retry-interval:PT1S}")
+    public synchronized void retryRejected() {
+        if (retryPending && !dispatching) {
+            retryPending = false;
+            dispatch();
+        }
+    }
+
+    private synchronized void resourcesReleased() {
+        if (!dispatching) {
+            dispatch();
+        }
+    }
+
+    // Starts queued jobs while slots are free, always picking the eligible type with the lowest pass.
+    // A type whose next job doesn't fit the resource budget is passed over until something is released.
+    private void dispatch() {
+        dispatching = true;
+        try {
+            Set<TypeQueue> blocked = new HashSet<>();
+            while (running < maxConcurrency) {
+                TypeQueue next = null;
+                for (TypeQueue queue : queues.values()) {
+                    if (queue.canStart() && !blocked.contains(queue) && (next == null || queue.pass < next.pass)) {
+                        next = queue;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                QueuedJob head = next.waiting.peek();
+                next.waitingForResources = !resourceGovernor.tryReserve(head.jobId(), next.type + " job", head.footprint());
+                if (next.waitingForResources) {
+                    blocked.add(next);
+                    continue;
+                }
+                if (!start(next)) {
+                    return;
+                }
+            }
+        } finally {
+            dispatching = false;
+        }
+    }
+
+    // Starts the head of the queue, whose footprint is already reserved; false if the executor is full
+    private boolean start(TypeQueue queue) {
+        QueuedJob job = queue.waiting.poll();
+        long previousGlobalPass = globalPass;
+        long previousPass = queue.pass;
+        globalPass = queue.pass;
+        queue.pass += STRIDE / Math.max(1, queue.limits.weight());
+        queue.running++;
+        running++;
+        try {
+            executorFor(queue.type).execute(() -> run(queue, job));
+            queueMoved(queue);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // The executor's own queue is full; put the job back as it was and let retryRejected try again
+            log.warn("Executor rejected job {} - leaving it queued for a retry: {}", job.jobId(), e.getMessage());
+            queue.running--;
+            running--;
+            queue.pass = previousPass;
+            globalPass = previousGlobalPass;
+            queue.waiting.addFirst(job);
+            resourceGovernor.release(job.jobId());
+            retryPending = true;
+            return false;
+        }
+    }
+
+    private void queueMoved(TypeQueue queue) {
+        int position = 1;
+        for (QueuedJob job : queue.waiting) {
+            try {
+                queueMovedListener.accept(job.jobId(), position++);
+            } catch (RuntimeException e) {
+                // A listener failure must not leave the scheduler's accounting half done
+                log.warn("Queue position update for job {} failed: {}", job.jobId(), e.getMessage());
+            }
+        }
+    }
+
+    // Generation and xlsx parsing keep a core busy; the upload job mostly waits on its file
+    // and on inserts. A pipeline only waits for its stages, which hand their CPU-bound
+    // batches to cpuExecutor themselves (see PipelineService).
+    private Executor executorFor(JobType type) {
+        return switch (type) {
+            case GENERATE, PROCESS -> cpuExecutor;
+            case UPLOAD, PIPELINE -> ioExecutor;
+        };
+    }
+
+    private void run(TypeQueue queue, QueuedJob job) {
+        long startTime = System.nanoTime();
+        try {
+            job.task().run();
+        } catch (RuntimeException e) {
+            // Job services record their own failures; this only keeps the slot accounting right
+            log.error("Job {} - unhandled error: {}", job.jobId(), e.getMessage(), e);
+        } finally {
+            finished(queue, job, (System.nanoTime() - startTime) / 1e9);
+        }
+    }
+
+    private synchronized void finished(TypeQueue queue, QueuedJob job, double seconds) {
+        queue.running--;
+        running--;
+        queue.averageSeconds = 0.8 * queue.averageSeconds + 0.2 * seconds;
+        resourceGovernor.release(job.jobId());
+        dispatch();
+    }
+
+    // A queue slot opens when one of the type's running jobs ends: about average / concurrency
+    private long retryAfterSeconds(TypeQueue queue) {
+        double seconds = queue.averageSeconds / Math.max(1, queue.limits.concurrency());
+        return Math.min(300, Math.max(1, (long) Math.ceil(seconds)));
+    }
+}
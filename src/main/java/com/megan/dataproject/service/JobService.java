@@ -1,61 +1,317 @@
 package com.megan.dataproject.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.megan.dataproject.model.JobStatus;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.sketch.DataProfile;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.With;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
 
+@Slf4j
 @Service
+@RequiredArgsConstructor
 public class JobService {
 
-    private final ConcurrentHashMap<String, JobInfo> jobs = new ConcurrentHashMap<>();
+    private static final int LOCK_STRIPES = 64;
 
-    @Data
-    @AllArgsConstructor
-    @NoArgsConstructor
+    // Hot jobs in memory, everything in the jobs table (see TieredJobStore)
+    private final JobStore jobStore;
+    private final ArtifactService artifactService;
+    private final JobEventService jobEventService;
+    private final JobScheduler jobScheduler;
+    // Jobs queued in, or running elsewhere in, a cluster; inert on a single node
+    private final ClusterJobQueue clusterJobQueue;
+
+    // Tokens of jobs that are running or were asked to stop; removed at the terminal status
+    private final Map<String, CancellationToken> cancellationTokens = new ConcurrentHashMap<>();
+
+    // Telemetry of jobs that have started; frozen into the final JobInfo at the terminal status
+    private final Map<String, JobTelemetry> telemetry = new ConcurrentHashMap<>();
+
+    // Jobs another node took over while they ran here; what their thread still reports is dropped
+    private final Set<String> abandoned = ConcurrentHashMap.newKeySet();
+
+    // Writers of one job (its worker, a cancel request) take turns; readers never lock.
+    // ReentrantLock rather than synchronized, which would pin a virtual thread during saveNow's write.
+    private final Lock[] writeLocks = IntStream.range(0, LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(Lock[]::new);
+
+    /**
+     * Immutable snapshot of a job. Every change builds a new one and swaps it into the store,
+     * so a reader sees a status, progress and metrics that were current together.
+     */
+    @Value
+    @With
     public static class JobInfo {
-        private JobStatus status;
-        private String result;
-        private int progress;        // 0-100 percentage
-        private long processedCount; // Records processed so far
-        private long totalCount;     // Total records to process
+        JobStatus status;
+        String result;
+        int progress;        // 0-100 percentage
+        long processedCount; // Records processed so far
+        long totalCount;     // Total records to process
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Integer queuePosition; // 1-based place in its type's queue while SUBMITTED
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        JobTelemetry.Metrics metrics; // Throughput, ETA, bytes and phase times; live while PROCESSING
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Map<JobType, StageInfo> stages; // Per-stage state of a PIPELINE job, in stage order
+        @JsonIgnore
+        DataProfile profile; // Sketches of the rows the job wrote, served by /status/{jobId}/profile
+    }
+
+    // One stage of a pipeline: rows it has passed on, and the file it kept, if any
+    public record StageInfo(JobStatus status, long processedCount, String output) {
+    }
+
+    // Subscribers see queue positions, and hear when a local queue moves
+    @PostConstruct
+    void registerListeners() {
+        jobEventService.lookupWith(this::findForEvents);
+        jobScheduler.onQueueMoved(this::publishQueuePosition);
     }
 
     public String createJob() {
         String jobId = UUID.randomUUID().toString();
-        jobs.put(jobId, new JobInfo(JobStatus.SUBMITTED, null, 0, 0, 0));
+        jobStore.save(jobId, new JobInfo(JobStatus.SUBMITTED, null, 0, 0, 0, null, null, null, null));
         return jobId;
     }
 
+    // Jobs call this as they start, then count rows, bytes and phase time on it
+    public JobTelemetry telemetry(String jobId) {
+        return telemetry.computeIfAbsent(jobId, key -> new JobTelemetry());
+    }
+
     public void updateStatus(String jobId, JobStatus status, String result) {
-        JobInfo existing = jobs.get(jobId);
-        if (existing != null) {
-            existing.setStatus(status);
-            existing.setResult(result);
-            if (status == JobStatus.COMPLETED) {
-                existing.setProgress(100);
+        if (abandoned.contains(jobId)) {
+            if (status.isTerminal()) {
+                abandoned.remove(jobId);
+                cancellationTokens.remove(jobId);
+                telemetry.remove(jobId);
+            }
+            return;
+        }
+        JobInfo updated;
+        JobTelemetry finished = null;
+        Lock lock = writeLock(jobId);
+        lock.lock();
+        try {
+            JobInfo existing = jobStore.find(jobId).orElse(null);
+            if (existing != null && existing.getStatus() == JobStatus.CANCELLED) {
+                // Cancelled is final, even if the job thread reports progress or success afterwards
+                cancellationTokens.remove(jobId);
+                telemetry.remove(jobId);
+                return;
             }
-        } else {
-            jobs.put(jobId, new JobInfo(status, result, status == JobStatus.COMPLETED ? 100 : 0, 0, 0));
+            JobTelemetry jobTelemetry = status.isTerminal() ? telemetry.remove(jobId) : telemetry.get(jobId);
+            if (existing == null) {
+                existing = new JobInfo(status, result, 0, 0, 0, null, null, null, null);
+            }
+            updated = existing.withStatus(status)
+                    .withResult(result)
+                    .withProgress(status == JobStatus.COMPLETED ? 100 : existing.getProgress())
+                    .withMetrics(jobTelemetry != null ? jobTelemetry.snapshot() : existing.getMetrics());
+            // Final states are persisted at once; a client may poll for them after a restart
+            if (status.isTerminal()) {
+                finished = jobTelemetry;
+                cancellationTokens.remove(jobId);
+                jobStore.saveNow(jobId, updated);
+                // The job is done with its temp inputs, and its output is now subject to retention
+                artifactService.release(jobId);
+            } else {
+                jobStore.save(jobId, updated);
+            }
+            // Under the lock, so subscribers get one job's updates in the order they were made
+            jobEventService.publish(jobId, withQueuePosition(jobId, updated));
+        } finally {
+            lock.unlock();
+        }
+        if (finished != null) {
+            JobTelemetry.Metrics metrics = updated.getMetrics();
+            log.info("Job {} - {} after {}ms: {} rows/s, {} bytes read, {} bytes written, phases {}",
+                    jobId, status, metrics.elapsedMillis(), metrics.rowsPerSecond(),
+                    metrics.bytesRead(), metrics.bytesWritten(), metrics.phaseMillis());
         }
     }
 
     public void updateProgress(String jobId, long processedCount, long totalCount) {
-        JobInfo jobInfo = jobs.get(jobId);
-        if (jobInfo != null) {
-            jobInfo.setProcessedCount(processedCount);
-            jobInfo.setTotalCount(totalCount);
-            if (totalCount > 0) {
-                jobInfo.setProgress((int) ((processedCount * 100) / totalCount));
+        if (abandoned.contains(jobId)) {
+            return;
+        }
+        JobTelemetry jobTelemetry = telemetry.get(jobId);
+        if (jobTelemetry != null) {
+            jobTelemetry.progress(processedCount, totalCount);
+        }
+        Lock lock = writeLock(jobId);
+        lock.lock();
+        try {
+            JobInfo existing = jobStore.find(jobId).orElse(null);
+            if (existing == null || existing.getStatus().isTerminal()) {
+                return;
             }
+            JobInfo updated = existing.withProcessedCount(processedCount)
+                    .withTotalCount(totalCount)
+                    .withProgress(totalCount > 0 ? (int) ((processedCount * 100) / totalCount) : existing.getProgress())
+                    .withMetrics(jobTelemetry != null ? jobTelemetry.snapshot() : existing.getMetrics());
+            jobStore.save(jobId, updated);
+            jobEventService.publish(jobId, withQueuePosition(jobId, updated));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stages finish before their pipeline, so a terminal pipeline takes no more stage updates
+    public void updateStage(String jobId, JobType stage, StageInfo stageInfo) {
+        if (abandoned.contains(jobId)) {
+            return;
+        }
+        Lock lock = writeLock(jobId);
+        lock.lock();
+        try {
+            JobInfo existing = jobStore.find(jobId).orElse(null);
+            if (existing == null || existing.getStatus().isTerminal()) {
+                return;
+            }
+            Map<JobType, StageInfo> stages = new EnumMap<>(JobType.class);
+            if (existing.getStages() != null) {
+                stages.putAll(existing.getStages());
+            }
+            stages.put(stage, stageInfo);
+            JobInfo updated = existing.withStages(Collections.unmodifiableMap(stages));
+            jobStore.save(jobId, updated);
+            jobEventService.publish(jobId, withQueuePosition(jobId, updated));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Jobs call this when they start and check the token at every batch boundary
+    public CancellationToken cancellationToken(String jobId) {
+        // From here to its terminal status this node writes the job
+        jobStore.own(jobId);
+        CancellationToken token = cancellationTokens.computeIfAbsent(jobId, key -> new CancellationToken());
+        // Cancelled while still queued: the status is already CANCELLED and the old token is gone
+        JobInfo jobInfo = getJob(jobId);
+        if (jobInfo != null && jobInfo.getStatus() == JobStatus.CANCELLED) {
+            token.cancel();
+        }
+        return token;
+    }
+
+    /**
+     * Asks a job to stop. A job that hasn't started is CANCELLED at once; a running one
+     * stays PROCESSING until its next batch boundary. Returns the status after the request,
+     * or empty when the job doesn't exist. Terminal jobs are left alone.
+     */
+    public Optional<JobStatus> cancel(String jobId) {
+        JobInfo jobInfo = getJob(jobId);
+        if (jobInfo == null) {
+            return Optional.empty();
+        }
+        if (jobInfo.getStatus().isTerminal()) {
+            return Optional.of(jobInfo.getStatus());
+        }
+        // Only for a job this node holds: running here, or waiting in the local scheduler. A job on
+        // another node gets no token here, since no terminal status on this node would remove it.
+        if (cancellationTokens.containsKey(jobId) || jobScheduler.queuePosition(jobId).isPresent()) {
+            cancellationTokens.computeIfAbsent(jobId, key -> new CancellationToken()).cancel();
+        }
+        // In a cluster the job may still be in the shared queue, or run on another node, which
+        // then stops it at its next heartbeat. A dequeued input is released with the status below.
+        clusterJobQueue.cancel(jobId)
+                .map(JobSpec::inputPath)
+                .ifPresent(input -> artifactService.registerInput(jobId, Path.of(input)));
+        if (jobInfo.getStatus() == JobStatus.SUBMITTED) {
+            // Frees its queue slot; if it already started, the token stops it instead
+            jobScheduler.remove(jobId);
+            updateStatus(jobId, JobStatus.CANCELLED, "Cancelled before it started");
+        }
+        return Optional.of(getJob(jobId).getStatus());
+    }
+
+    // Stops this node's copy of a job another node has taken over; its status is the new owner's to write
+    public void stopLocally(String jobId) {
+        CancellationToken token = cancellationTokens.get(jobId);
+        if (token == null) {
+            return; // never started here
+        }
+        abandoned.add(jobId);
+        jobStore.disown(jobId);
+        token.cancel();
+    }
+
+    // Attach once the job has stopped writing to the profile
+    public void attachProfile(String jobId, DataProfile profile) {
+        if (abandoned.contains(jobId)) {
+            return;
+        }
+        Lock lock = writeLock(jobId);
+        lock.lock();
+        try {
+            jobStore.find(jobId).ifPresent(jobInfo -> jobStore.save(jobId, jobInfo.withProfile(profile)));
+        } finally {
+            lock.unlock();
         }
     }
 
     public JobInfo getJob(String jobId) {
-        return jobs.get(jobId);
+        JobInfo jobInfo = jobStore.find(jobId).orElse(null);
+        if (jobInfo == null) {
+            return null;
+        }
+        if (jobInfo.getStatus() == JobStatus.SUBMITTED) {
+            return withQueuePosition(jobId, jobInfo);
+        }
+        JobTelemetry jobTelemetry = telemetry.get(jobId);
+        if (jobTelemetry != null && !jobInfo.getStatus().isTerminal()) {
+            // Rate and ETA between progress updates; the stored snapshot is left as it was
+            return jobInfo.withMetrics(jobTelemetry.snapshot());
+        }
+        return jobInfo;
+    }
+
+    // What subscribers are sent: the stored snapshot plus its queue position. Live metrics are left
+    // out, so a cluster poll only pushes a job whose stored state or position changed.
+    private Optional<JobInfo> findForEvents(String jobId) {
+        return jobStore.find(jobId).map(jobInfo -> withQueuePosition(jobId, jobInfo));
+    }
+
+    // Positions move as other jobs start, so they are looked up on read rather than stored
+    private JobInfo withQueuePosition(String jobId, JobInfo jobInfo) {
+        if (jobInfo.getStatus() != JobStatus.SUBMITTED) {
+            return jobInfo;
+        }
+        return jobInfo.withQueuePosition(jobScheduler.queuePosition(jobId)
+                .or(() -> clusterJobQueue.queuePosition(jobId))
+                .orElse(null));
+    }
+
+    // Called by the scheduler, under its lock, for each job still waiting when its queue moves up.
+    // Takes no write lock: a waiting job only changes status after it leaves the queue, which
+    // needs the scheduler lock held here.
+    private void publishQueuePosition(String jobId, int position) {
+        jobStore.find(jobId)
+                .filter(jobInfo -> jobInfo.getStatus() == JobStatus.SUBMITTED)
+                .ifPresent(jobInfo -> jobEventService.publish(jobId, jobInfo.withQueuePosition(position)));
+    }
+
+    private Lock writeLock(String jobId) {
+        return writeLocks[Math.floorMod(jobId.hashCode(), LOCK_STRIPES)];
     }
 }
@@ -0,0 +1,30 @@
+package com.megan.dataproject.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.payload.PipelineRequest;
+
+/**
+ * Everything needed to run a job, as data rather than a closure, so a job submitted on one
+ * node can be stored in the job_queue table and run by another. {@link JobRunner} turns it
+ * back into the task. inputPath must be on storage every node can read.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record JobSpec(JobType type, Integer count, String inputPath, PipelineRequest pipeline) {
+
+    public static JobSpec generate(int count) {
+        return new JobSpec(JobType.GENERATE, count, null, null);
+    }
+
+    public static JobSpec process(String xlsxPath) {
+        return new JobSpec(JobType.PROCESS, null, xlsxPath, null);
+    }
+
+    public static JobSpec upload(String csvPath) {
+        return new JobSpec(JobType.UPLOAD, null, csvPath, null);
+    }
+
+    public static JobSpec pipeline(PipelineRequest request) {
+        return new JobSpec(JobType.PIPELINE, null, null, request);
+    }
+}
@@ -0,0 +1,26 @@
+package com.megan.dataproject.service;
+
+import java.util.Optional;
+
+/**
+ * Where JobService keeps job state. Implementations decide how much stays in memory and
+ * when it reaches durable storage; JobService only finds and saves.
+ */
+public interface JobStore {
+
+    Optional<JobService.JobInfo> find(String jobId);
+
+    // Record a change; may be coalesced with later changes before it is persisted
+    void save(String jobId, JobService.JobInfo jobInfo);
+
+    // Record a change that must survive a crash right away, e.g. a terminal status
+    void saveNow(String jobId, JobService.JobInfo jobInfo);
+
+    // The job runs on this node until its terminal status, or until disown. Stores shared
+    // by several nodes may cache only such jobs; a single-node store can ignore both.
+    default void own(String jobId) {
+    }
+
+    default void disown(String jobId) {
+    }
+}
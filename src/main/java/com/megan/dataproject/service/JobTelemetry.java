@@ -0,0 +1,177 @@
+package com.megan.dataproject.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.megan.dataproject.model.JobPhase;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for one running job: rows, bytes in and out, and time per {@link JobPhase}.
+ * The job thread (and, for pipelines, each stage's thread) adds to them without locking;
+ * {@link #snapshot} turns them into an immutable {@link Metrics} for JobInfo. Phase times
+ * are summed over threads, so parallel phases can add up to more than the elapsed time.
+ */
+public class JobTelemetry {
+
+    private static final JobPhase[] PHASES = JobPhase.values();
+
+    private final long startedAt = System.nanoTime();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong expectedBytes = new AtomicLong();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+
+    /**
+     * What a job has done so far. etaSeconds is absent until the job knows how much is
+     * left: from its row total, or for streaming jobs from how far it has read its input.
+     */
+    public record Metrics(long elapsedMillis,
+                          double rowsPerSecond,
+                          @JsonInclude(JsonInclude.Include.NON_NULL) Long etaSeconds,
+                          long bytesRead,
+                          long bytesWritten,
+                          Map<JobPhase, Long> phaseMillis) {
+    }
+
+    // Set by JobService.updateProgress, so the rate always matches the reported counts
+    void progress(long processed, long total) {
+        processedCount.set(processed);
+        totalCount.set(total);
+    }
+
+    // Input size for jobs that can't count their rows up front; bytesRead / expectedBytes is then the progress
+    public void expectBytes(long bytes) {
+        expectedBytes.set(bytes);
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void addPhase(JobPhase phase, long nanos) {
+        phaseNanos.addAndGet(phase.ordinal(), nanos);
+    }
+
+    public InputStream countReads(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    bytesRead.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    public OutputStream countWrites(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesWritten.increment();
+            }
+
+            // FilterOutputStream would otherwise write the array one byte at a time
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                out.write(buffer, offset, length);
+                bytesWritten.add(length);
+            }
+        };
+    }
+
+    public PhaseTimer timer() {
+        return new PhaseTimer();
+    }
+
+    public Metrics snapshot() {
+        long elapsedNanos = Math.max(System.nanoTime() - startedAt, 1);
+        double seconds = elapsedNanos / 1e9;
+        long processed = processedCount.get();
+        long total = totalCount.get();
+        long read = bytesRead.sum();
+        long expected = expectedBytes.get();
+
+        double rowsPerSecond = processed / seconds;
+        Long etaSeconds = null;
+        if (total > 0 && processed > 0) {
+            etaSeconds = Math.round(Math.max(total - processed, 0) / rowsPerSecond);
+        } else if (expected > 0 && read > 0) {
+            etaSeconds = Math.round(Math.max(expected - read, 0) / (read / seconds));
+        }
+
+        Map<JobPhase, Long> phaseMillis = new EnumMap<>(JobPhase.class);
+        for (JobPhase phase : PHASES) {
+            long nanos = phaseNanos.get(phase.ordinal());
+            if (nanos > 0) {
+                phaseMillis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos));
+            }
+        }
+        return new Metrics(TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                Math.round(rowsPerSecond * 10) / 10.0,
+                etaSeconds,
+                read,
+                bytesWritten.sum(),
+                Collections.unmodifiableMap(phaseMillis));
+    }
+
+    /**
+     * Single-threaded lap timer for a row loop. Each {@link #lap} charges the time since the
+     * previous one to a phase, in a plain array; {@link #flush} adds it to the shared counters,
+     * so the per-row cost is one nanoTime call per phase and no atomics.
+     */
+    public class PhaseTimer {
+
+        private final long[] nanos = new long[PHASES.length];
+        private long last = System.nanoTime();
+
+        public void lap(JobPhase phase) {
+            long now = System.nanoTime();
+            nanos[phase.ordinal()] += now - last;
+            last = now;
+        }
+
+        // Restart the clock without charging anyone, e.g. after logging progress
+        public void skip() {
+            last = System.nanoTime();
+        }
+
+        // Call at batch boundaries and before the final status, which takes the last snapshot
+        public void flush() {
+            for (int i = 0; i < nanos.length; i++) {
+                if (nanos[i] != 0) {
+                    phaseNanos.addAndGet(i, nanos[i]);
+                    nanos[i] = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobPhase;
+import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.payload.PipelineRequest;
+import com.megan.dataproject.repository.StudentView;
+import com.megan.dataproject.sketch.DataProfile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a chain of the existing stages (generate, process, upload) as one job. The stages
+ * run at the same time and pass rows through bounded {@link RowChannel}s, so no intermediate
+ * file is written and read back. A stage writes its file only when it is the last stage or
+ * listed in keep. Each stage's state is in the job's JobInfo.stages.
+ * Every stage is driven by a virtual thread on ioExecutor, which does the channel waits and
+ * the upload's inserts. Generate and process hand each batch's row building, xlsx/CSV
+ * writing and profiling to cpuExecutor and wait for it, so CPU work stays within the cores
+ * while a platform thread never blocks on a channel.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PipelineService {
+
+    // Which stage may feed which; a pipeline is a path through this graph from GENERATE
+    private static final Map<JobType, Set<JobType>> FEEDS = Map.of(
+            JobType.GENERATE, EnumSet.of(JobType.PROCESS, JobType.UPLOAD),
+            JobType.PROCESS, EnumSet.of(JobType.UPLOAD));
+
+    // Stages whose output has a file form: the generated workbook and the converted CSV
+    private static final Set<JobType> FILE_STAGES = EnumSet.of(JobType.GENERATE, JobType.PROCESS);
+
+    // Same cadence as the standalone jobs
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    private final JobService jobService;
+    private final ExcelGeneratorService excelGeneratorService;
+    private final CsvToDatabaseService csvToDatabaseService;
+    private final FileStorageService storageService;
+    private final ArtifactService artifactService;
+
+    // Stages spend much of their time waiting on each other's channels, so each gets a virtual thread
+    @Qualifier("ioExecutor")
+    private final Executor ioExecutor;
+
+    // The CPU-bound part of generate and process, one batch at a time
+    @Qualifier("cpuExecutor")
+    private final Executor cpuExecutor;
+
+    // Rows per channel message, and messages a channel holds before the producer waits
+    @Value("${app.pipeline.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.pipeline.channel-capacity:8}")
+    private int channelCapacity;
+
+    public void validate(PipelineRequest request) {
+        if (request.getCount() < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        List<JobType> stages = request.getStages();
+        if (stages == null || stages.isEmpty() || stages.get(0) != JobType.GENERATE) {
+            throw new IllegalArgumentException("A pipeline starts with GENERATE");
+        }
+        for (int i = 1; i < stages.size(); i++) {
+            if (!FEEDS.getOrDefault(stages.get(i - 1), Set.of()).contains(stages.get(i))) {
+                throw new IllegalArgumentException(stages.get(i - 1) + " can't feed " + stages.get(i));
+            }
+        }
+        if (request.getKeep() != null) {
+            for (JobType stage : request.getKeep()) {
+                if (!FILE_STAGES.contains(stage) || !stages.contains(stage)) {
+                    throw new IllegalArgumentException("Nothing to keep for " + stage + " in this pipeline");
+                }
+            }
+        }
+    }
+
+    // Runs on a JobScheduler worker, which has already admitted the job
+    public void run(String jobId, PipelineRequest request) {
+        long startTime = System.currentTimeMillis();
+        log.info("Job {} - Starting pipeline {}: {} records", jobId, request.getStages(), request.getCount());
+
+        Run run = new Run(jobId, request);
+        try {
+            run.cancellation.throwIfCancelled();
+            jobService.updateStatus(jobId, JobStatus.PROCESSING, null);
+
+            List<CompletableFuture<Void>> stages = IntStream.range(0, run.stages.size())
+                    .mapToObj(index -> CompletableFuture.runAsync(() -> run.runStage(index), ioExecutor))
+                    .toList();
+            // Stages catch their own errors, so this only waits
+            CompletableFuture.allOf(stages.toArray(new CompletableFuture[0])).join();
+
+            Exception failure = run.failure.get();
+            if (failure != null) {
+                throw failure;
+            }
+            if (run.cancelled) {
+                throw new JobCancelledException();
+            }
+            if (run.profile != null) {
+                jobService.attachProfile(jobId, run.profile);
+            }
+            jobService.updateStatus(jobId, JobStatus.COMPLETED, run.result());
+            long duration = System.currentTimeMillis() - startTime;
+            log.info("Job {} - Pipeline COMPLETED in {}ms: {} records", jobId, duration, request.getCount());
+        } catch (JobCancelledException e) {
+            long duration = System.currentTimeMillis() - startTime;
+            log.info("Job {} - Pipeline CANCELLED after {}ms", jobId, duration);
+            jobService.updateStatus(jobId, JobStatus.CANCELLED, e.getMessage());
+        } catch (Exception e) {
+            long duration = System.currentTimeMillis() - startTime;
+            log.error("Job {} - Pipeline FAILED in {}ms: {}", jobId, duration, e.getMessage());
+            jobService.updateStatus(jobId, JobStatus.FAILED, e.getMessage());
+        }
+    }
+
+    // State of one pipeline run. Index i of the arrays belongs to stage i and is written only by its thread.
+    private final class Run {
+
+        private final String jobId;
+        private final int count;
+        private final List<JobType> stages;
+        private final Set<JobType> keep;
+        private final CancellationToken cancellation;
+        private final JobTelemetry telemetry;
+        // channels.get(i) carries stage i's rows to stage i + 1
+        private final List<RowChannel> channels = new ArrayList<>();
+        private final long[] rows;
+        private final String[] files;   // file a stage is writing
+        private final String[] outputs; // file a stage finished
+        private final AtomicReference<Exception> failure = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private volatile DataProfile profile;
+
+        private Run(String jobId, PipelineRequest request) {
+            this.jobId = jobId;
+            this.count = request.getCount();
+            this.stages = List.copyOf(request.getStages());
+            this.keep = request.getKeep() == null ? Set.of() : Set.copyOf(request.getKeep());
+            this.cancellation = jobService.cancellationToken(jobId);
+            this.telemetry = jobService.telemetry(jobId);
+            for (int i = 1; i < stages.size(); i++) {
+                channels.add(new RowChannel(channelCapacity, this::stopped));
+            }
+            this.rows = new long[stages.size()];
+            this.files = new String[stages.size()];
+            this.outputs = new String[stages.size()];
+        }
+
+        // A cancel request or any failed stage stops every stage at its next wait or checkpoint
+        private boolean stopped() {
+            return cancellation.isCancelled() || failure.get() != null;
+        }
+
+        private void runStage(int index) {
+            JobType stage = stages.get(index);
+            RowChannel input = index > 0 ? channels.get(index - 1) : null;
+            RowChannel output = index < channels.size() ? channels.get(index) : null;
+            report(index, JobStatus.PROCESSING);
+            try {
+                switch (stage) {
+                    case GENERATE -> generate(index, output);
+                    case PROCESS -> process(index, input, output);
+                    case UPLOAD -> upload(index, input);
+                    default -> throw new IllegalStateException("Not a pipeline stage: " + stage);
+                }
+                if (output != null) {
+                    output.close();
+                }
+                outputs[index] = files[index];
+                if (output == null) {
+                    jobService.updateProgress(jobId, rows[index], count);
+                }
+                report(index, JobStatus.COMPLETED);
+            } catch (JobCancelledException e) {
+                cancelled = true;
+                deletePartialOutput(index);
+                report(index, JobStatus.CANCELLED);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                log.error("Job {} - Pipeline stage {} FAILED: {}", jobId, stage, e.getMessage());
+                deletePartialOutput(index);
+                report(index, JobStatus.FAILED);
+            }
+        }
+
+        private void generate(int index, RowChannel output) throws IOException {
+            SXSSFWorkbook workbook = keeps(index) ? new SXSSFWorkbook(100) : null;
+            try {
+                Sheet sheet = null;
+                if (workbook != null) {
+                    files[index] = startFile("StudentData_" + System.currentTimeMillis() + ".xlsx");
+                    sheet = workbook.createSheet("Students");
+                    ExcelGeneratorService.writeHeader(sheet);
+                }
+
+                Random random = new Random();
+                Sheet target = sheet;
+                JobTelemetry.PhaseTimer timer = telemetry.timer();
+                for (int first = 1; first <= count; first += batchSize) {
+                    int from = first;
+                    int to = Math.min(count, first + batchSize - 1);
+                    List<StudentView> batch = onCpu(() -> {
+                        List<StudentView> built = new ArrayList<>(to - from + 1);
+                        for (int i = from; i <= to; i++) {
+                            StudentView student = excelGeneratorService.randomStudent(i, random);
+                            if (target != null) {
+                                ExcelGeneratorService.writeRow(target, i, student);
+                            }
+                            built.add(student);
+                        }
+                        return built;
+                    });
+                    rows[index] = to;
+                    timer.lap(JobPhase.TRANSFORM);
+                    if (output != null) {
+                        output.send(batch);
+                        timer.skip();
+                    }
+                    if (to / PROGRESS_INTERVAL > (from - 1) / PROGRESS_INTERVAL) {
+                        timer.flush();
+                        checkpoint(index);
+                        timer.skip();
+                    }
+                }
+                timer.flush();
+
+                if (workbook != null) {
+                    // Zipping the sheet XML is CPU work too
+                    long writeStart = System.nanoTime();
+                    onCpu(() -> {
+                        try (OutputStream out = telemetry.countWrites(new FileOutputStream(files[index]))) {
+                            workbook.write(out);
+                        }
+                        return null;
+                    });
+                    telemetry.addPhase(JobPhase.WRITE, System.nanoTime() - writeStart);
+                }
+            } finally {
+                if (workbook != null) {
+                    // Deletes the temp files the streaming workbook flushed rows to
+                    workbook.dispose();
+                    workbook.close();
+                }
+            }
+        }
+
+        private void process(int index, RowChannel input, RowChannel output) throws IOException {
+            if (keeps(index)) {
+                files[index] = startFile("ProcessedData_" + System.currentTimeMillis() + ".csv");
+            }
+            // The last stage's rows are the job's rows, so it builds the profile
+            DataProfile stageProfile = output == null ? new DataProfile() : null;
+
+            try (BufferedWriter writer = files[index] == null ? null : new BufferedWriter(new OutputStreamWriter(
+                    telemetry.countWrites(Files.newOutputStream(Paths.get(files[index]))), StandardCharsets.UTF_8))) {
+                if (writer != null) {
+                    writer.write(ExcelToCsvService.CSV_HEADER);
+                    writer.newLine();
+                }
+                JobTelemetry.PhaseTimer timer = telemetry.timer();
+                long nextCheckpoint = PROGRESS_INTERVAL;
+                List<StudentView> batch;
+                while ((batch = input.receive()) != null) {
+                    // Time spent waiting for the batch isn't this stage's work
+                    timer.skip();
+                    List<StudentView> received = batch;
+                    List<StudentView> processed = onCpu(() -> {
+                        List<StudentView> updatedRows = new ArrayList<>(received.size());
+                        for (StudentView row : received) {
+                            StudentView updated = new StudentView(row.studentId(), row.firstName(), row.lastName(),
+                                    row.dob(), row.studentClass(), row.score() + ExcelToCsvService.SCORE_BONUS);
+                            updatedRows.add(updated);
+                            if (stageProfile != null) {
+                                stageProfile.add(updated.firstName(), updated.lastName(),
+                                        updated.studentClass(), updated.score());
+                            }
+                            if (writer != null) {
+                                writer.write(ExcelToCsvService.csvRow(updated.studentId().toString(),
+                                        updated.firstName(), updated.lastName(), updated.dob().toString(),
+                                        updated.studentClass().name(), updated.score()));
+                                writer.newLine();
+                            }
+                        }
+                        return updatedRows;
+                    });
+                    timer.lap(JobPhase.TRANSFORM);
+                    if (output != null) {
+                        output.send(processed);
+                    }
+
+                    rows[index] += batch.size();
+                    if (rows[index] >= nextCheckpoint) {
+                        nextCheckpoint += PROGRESS_INTERVAL;
+                        timer.flush();
+                        checkpoint(index);
+                    }
+                }
+                timer.flush();
+            }
+            if (stageProfile != null) {
+                profile = stageProfile;
+            }
+        }
+
+        // Runs work on cpuExecutor and waits for it here. Only finite work goes there, never a
+        // channel wait, so pipeline stages can't fill the pool blocking on each other.
+        private <T> T onCpu(Callable<T> work) throws IOException {
+            try {
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return work.call();
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, cpuExecutor).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        private void upload(int index, RowChannel input) {
+            CsvToDatabaseService.BatchLoader loader = csvToDatabaseService.loader(jobId, cancellation, telemetry);
+            try {
+                JobTelemetry.PhaseTimer timer = telemetry.timer();
+                List<StudentView> batch;
+                while ((batch = input.receive()) != null) {
+                    timer.skip();
+                    for (StudentView row : batch) {
+                        loader.add(row.studentId(), row.firstName(), row.lastName(), row.dob(),
+                                row.studentClass().name(), row.score() + CsvToDatabaseService.SCORE_BONUS);
+                        if (loader.isFull()) {
+                            timer.lap(JobPhase.TRANSFORM);
+                            timer.flush();
+                            // insertBatch times the write and commit
+                            loader.flush();
+                            rows[index] = loader.committedRows();
+                            checkpoint(index);
+                            timer.skip();
+                        }
+                    }
+                    timer.lap(JobPhase.TRANSFORM);
+                }
+                timer.flush();
+                loader.flush();
+                rows[index] = loader.committedRows();
+                profile = loader.profile();
+            } finally {
+                // Batches committed before a stop stay, as with the upload job
+                loader.publish();
+            }
+        }
+
+        // Every PROGRESS_INTERVAL rows: the cancel check, the stage's progress, and the job's if it is the last stage
+        private void checkpoint(int index) {
+            cancellation.throwIfCancelled();
+            log.info("Job {} - Pipeline {}: {} rows", jobId, stages.get(index), rows[index]);
+            report(index, JobStatus.PROCESSING);
+            if (index == stages.size() - 1) {
+                jobService.updateProgress(jobId, rows[index], count);
+            }
+        }
+
+        private void report(int index, JobStatus status) {
+            jobService.updateStage(jobId, stages.get(index),
+                    new JobService.StageInfo(status, rows[index], outputs[index]));
+        }
+
+        // The last stage always writes its file form; others only when asked to
+        private boolean keeps(int index) {
+            JobType stage = stages.get(index);
+            return FILE_STAGES.contains(stage) && (keep.contains(stage) || index == stages.size() - 1);
+        }
+
+        private String startFile(String fileName) {
+            String path = storageService.getPath(fileName);
+            artifactService.registerOutput(jobId, Paths.get(path));
+            return path;
+        }
+
+        private void deletePartialOutput(int index) {
+            if (files[index] == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(Paths.get(files[index]));
+            } catch (IOException e) {
+                log.warn("Job {} - could not delete partial output {}: {}", jobId, files[index], e.getMessage());
+            }
+        }
+
+        // Served by /download/{jobId}: the file of the last stage that kept one
+        private String result() {
+            for (int i = outputs.length - 1; i >= 0; i--) {
+                if (outputs[i] != null) {
+                    return outputs[i];
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -6,17 +6,29 @@ import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfWriter;
 import com.megan.dataproject.model.Student;
 import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.CursorPageResponse;
 import com.megan.dataproject.payload.ExportResponse;
+import com.megan.dataproject.repository.KeysetCursor;
+import com.megan.dataproject.repository.StudentFilter;
 import com.megan.dataproject.repository.StudentRepository;
 import com.megan.dataproject.repository.StudentSpecification;
+import com.megan.dataproject.repository.StudentView;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.awt.Color;
 import java.io.ByteArrayOutputStream;
@@ -24,48 +36,184 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 @RequiredArgsConstructor
 public class ReportService {
 
+    private static final String CSV_HEADER = "studentId,firstName,lastName,DOB,class,score\n";
+
     private final StudentRepository studentRepository;
+    private final StudentCountService studentCountService;
+    private final StudentColumnStore studentColumnStore;
+    private final StudentCache studentCache;
+
+    // Partition queries each hold a connection, so they share the pool-sized DB permits
+    @Qualifier("dbExecutor")
+    private final Executor dbExecutor;
+
+    @Value("${app.export.parallelism:4}")
+    private int exportParallelism;
+
+    // Served from the in-memory replica when it is enabled and current. Otherwise, with at
+    // most class filters the total comes from the count summary, so only the page query
+    // hits the students table.
+    @Transactional(readOnly = true)
+    public Page<StudentView> getStudents(StudentFilter filter, Pageable pageable) {
+        Optional<Page<StudentView>> replicaPage = studentColumnStore.findPage(filter, pageable);
+        if (replicaPage.isPresent()) {
+            return replicaPage.get();
+        }
+        if (filter.isSingleIdLookup()) {
+            return getCachedStudent(filter, pageable);
+        }
+        Specification<Student> spec = StudentSpecification.buildSpecification(filter);
+        List<StudentView> content = studentRepository.findContent(spec, replicaOrder(pageable));
+        if (!filter.hasRowFilters()) {
+            return new PageImpl<>(content, pageable, studentCountService.getCount(filter.resolvedStudentClasses()));
+        }
+        // Only counts when the page is full; an id lookup never is
+        return PageableExecutionUtils.getPage(content, pageable, () -> studentRepository.count(spec));
+    }
+
+    // A studentId lookup is at most one row, served from the LRU cache; class filters apply to that row
+    private Page<StudentView> getCachedStudent(StudentFilter filter, Pageable pageable) {
+        List<StudentClass> classes = filter.resolvedStudentClasses();
+        List<StudentView> match = studentCache.get(filter.resolvedStudentIds().get(0))
+                .filter(s -> classes.isEmpty() || classes.contains(s.studentClass()))
+                .map(List::of)
+                .orElse(List.of());
+        List<StudentView> content = pageable.getOffset() == 0 ? match : List.of();
+        return new PageImpl<>(content, pageable, match.size());
+    }
+
+    // Get a page without any total, for infinite scroll
+    @Transactional(readOnly = true)
+    public Slice<StudentView> getStudentSlice(StudentFilter filter, Pageable pageable) {
+        return studentRepository.findSlice(StudentSpecification.buildSpecification(filter), replicaOrder(pageable));
+    }
+
+    // The order the replica serves a one-column sort in: nulls after every value, ties by studentId
+    // in the same direction. Pinned so a page doesn't change when the replica becomes available.
+    private static Pageable replicaOrder(Pageable pageable) {
+        List<Sort.Order> orders = pageable.getSort().toList();
+        if (pageable.isUnpaged() || orders.size() != 1 || orders.get(0).getProperty().equals("studentId")) {
+            return pageable;
+        }
+        Sort.Order order = orders.get(0);
+        Sort sort = Sort.by(order.with(KeysetCursor.nullHandling(order.getDirection())),
+                new Sort.Order(order.getDirection(), "studentId"));
+        return PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), sort);
+    }
+
+    // Get a keyset page: seeks past the cursor row instead of using OFFSET, and skips count(*)
+    @Transactional(readOnly = true)
+    public CursorPageResponse<StudentView> getStudentsByCursor(StudentFilter filter, String cursor, int size,
+                                                               String sortBy, String sortDir) {
+        KeysetCursor position = cursor != null ? KeysetCursor.decode(cursor) : null;
+        if (position != null) {
+            // The cursor pins the ordering it was issued for
+            sortBy = position.getSortBy();
+            sortDir = position.isDescending() ? "desc" : "asc";
+        }
+        if (!KeysetCursor.SORT_COLUMNS.contains(sortBy)) {
+            throw new IllegalArgumentException("Unsupported sort column: " + sortBy);
+        }
+        boolean descending = sortDir.equalsIgnoreCase("desc");
+        boolean backward = position != null && position.isBackward();
+
+        // Query in travel direction; backward pages are flipped back afterwards
+        Sort.Direction direction = descending != backward ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort sort = sortBy.equals("studentId")
+                ? Sort.by(direction, "studentId")
+                : Sort.by(new Sort.Order(direction, sortBy, KeysetCursor.nullHandling(direction)),
+                        new Sort.Order(direction, "studentId"));
+
+        Specification<Student> spec = StudentSpecification.buildSpecification(filter)
+                .and(StudentSpecification.seek(position));
+        List<StudentView> rows = studentRepository.findViews(spec, sort, size + 1);
+
+        boolean hasMore = rows.size() > size;
+        List<StudentView> content = new ArrayList<>(hasMore ? rows.subList(0, size) : rows);
+        if (backward) {
+            Collections.reverse(content);
+        }
 
-    // Get paginated students
-    public Page<Student> getStudents(Long studentId, StudentClass studentClass, Pageable pageable) {
-        Specification<Student> spec = StudentSpecification.buildSpecification(studentId, studentClass);
-        return studentRepository.findAll(spec, pageable);
+        boolean hasNext = backward || hasMore;
+        boolean hasPrevious = backward ? hasMore : position != null;
+        String nextCursor = null;
+        String previousCursor = null;
+        if (!content.isEmpty()) {
+            if (hasNext) {
+                nextCursor = KeysetCursor.after(content.get(content.size() - 1), sortBy, descending, false).encode();
+            }
+            if (hasPrevious) {
+                previousCursor = KeysetCursor.after(content.get(0), sortBy, descending, true).encode();
+            }
+        }
+        return new CursorPageResponse<>(content, content.size(), nextCursor, previousCursor, hasNext, hasPrevious);
     }
 
-    // Export to CSV
-    public ExportResponse exportToCsv(Long studentId, StudentClass studentClass) throws IOException {
-        List<Student> students = getFilteredStudents(studentId, studentClass);
+    // Most rows an export of the filter can return, from the count summary or the ids asked for.
+    // Name, score and DOB filters only narrow it, so an export is never underestimated.
+    public long estimateRows(StudentFilter filter) {
+        long rows = studentCountService.getCount(filter.resolvedStudentClasses());
+        List<Long> ids = filter.resolvedStudentIds();
+        return ids.isEmpty() ? rows : Math.min(rows, ids.size());
+    }
 
+    // Export to CSV. In parallel mode every partition is queried and encoded on its own
+    // worker, then the chunks are concatenated in class/id order.
+    public ExportResponse exportToCsv(StudentFilter filter, boolean parallel) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
-            writer.print("studentId,firstName,lastName,DOB,class,score\n");
+        out.write(CSV_HEADER.getBytes(StandardCharsets.UTF_8));
 
-            for (Student s : students) {
-                writer.printf("%d,%s,%s,%s,%s,%d\n",
-                        s.getStudentId(),
-                        s.getFirstName(),
-                        s.getLastName(),
-                        s.getDOB(),
-                        s.getStudentClass().name(),
-                        s.getScore()
-                );
+        if (parallel && !studentColumnStore.isAvailable()) {
+            List<CompletableFuture<byte[]>> chunks = partitions(filter).stream()
+                    .map(partition -> CompletableFuture.supplyAsync(
+                            () -> encodeCsv(fetchPartition(filter, partition)), dbExecutor))
+                    .toList();
+            for (CompletableFuture<byte[]> chunk : chunks) {
+                out.write(chunk.join());
             }
+        } else if (parallel) {
+            out.write(encodeCsv(getPartitionedStudents(filter)));
+        } else {
+            out.write(encodeCsv(getFilteredStudents(filter)));
         }
 
         String base64Data = Base64.getEncoder().encodeToString(out.toByteArray());
         return new ExportResponse("students_report.csv", "text/csv", base64Data);
     }
 
-    // Export to Excel
-    public ExportResponse exportToExcel(Long studentId, StudentClass studentClass) throws IOException {
-        List<Student> students = getFilteredStudents(studentId, studentClass);
+    private byte[] encodeCsv(List<StudentView> students) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            for (StudentView s : students) {
+                writer.printf("%d,%s,%s,%s,%s,%d\n",
+                        s.studentId(),
+                        s.firstName(),
+                        s.lastName(),
+                        s.dob(),
+                        s.studentClass().name(),
+                        s.score()
+                );
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public ExportResponse exportToExcel(StudentFilter filter, boolean parallel) throws IOException {
+        List<StudentView> students = parallel
+                ? getPartitionedStudents(filter)
+                : getFilteredStudents(filter);
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
@@ -80,14 +228,14 @@ public class ReportService {
 
             // Data rows
             int rowNum = 1;
-            for (Student s : students) {
+            for (StudentView s : students) {
                 Row row = sheet.createRow(rowNum++);
-                row.createCell(0).setCellValue(s.getStudentId());
-                row.createCell(1).setCellValue(s.getFirstName());
-                row.createCell(2).setCellValue(s.getLastName());
-                row.createCell(3).setCellValue(s.getDOB().toString());
-                row.createCell(4).setCellValue(s.getStudentClass().name());
-                row.createCell(5).setCellValue(s.getScore());
+                row.createCell(0).setCellValue(s.studentId());
+                row.createCell(1).setCellValue(s.firstName());
+                row.createCell(2).setCellValue(s.lastName());
+                row.createCell(3).setCellValue(s.dob().toString());
+                row.createCell(4).setCellValue(s.studentClass().name());
+                row.createCell(5).setCellValue(s.score());
             }
 
             workbook.write(out);
@@ -102,9 +250,10 @@ public class ReportService {
         );
     }
 
-    // Export to PDF using OpenPDF
-    public ExportResponse exportToPdf(Long studentId, StudentClass studentClass) {
-        List<Student> students = getFilteredStudents(studentId, studentClass);
+    public ExportResponse exportToPdf(StudentFilter filter, boolean parallel) {
+        List<StudentView> students = parallel
+                ? getPartitionedStudents(filter)
+                : getFilteredStudents(filter);
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         Document document = new Document(PageSize.A4);
@@ -139,13 +288,13 @@ public class ReportService {
 
             // Data rows
             Font dataFont = FontFactory.getFont(FontFactory.HELVETICA, 9);
-            for (Student s : students) {
-                table.addCell(new Phrase(String.valueOf(s.getStudentId()), dataFont));
-                table.addCell(new Phrase(s.getFirstName(), dataFont));
-                table.addCell(new Phrase(s.getLastName(), dataFont));
-                table.addCell(new Phrase(s.getDOB().toString(), dataFont));
-                table.addCell(new Phrase(s.getStudentClass().name(), dataFont));
-                table.addCell(new Phrase(String.valueOf(s.getScore()), dataFont));
+            for (StudentView s : students) {
+                table.addCell(new Phrase(String.valueOf(s.studentId()), dataFont));
+                table.addCell(new Phrase(s.firstName(), dataFont));
+                table.addCell(new Phrase(s.lastName(), dataFont));
+                table.addCell(new Phrase(s.dob().toString(), dataFont));
+                table.addCell(new Phrase(s.studentClass().name(), dataFont));
+                table.addCell(new Phrase(String.valueOf(s.score()), dataFont));
             }
 
             document.add(table);
@@ -166,8 +315,76 @@ public class ReportService {
         return new ExportResponse("students_report.pdf", "application/pdf", base64Data);
     }
 
-    private List<Student> getFilteredStudents(Long studentId, StudentClass studentClass) {
-        Specification<Student> spec = StudentSpecification.buildSpecification(studentId, studentClass);
-        return studentRepository.findAll(spec);
+    private List<StudentView> getFilteredStudents(StudentFilter filter) {
+        Optional<List<StudentView>> replicaRows = studentColumnStore.findAll(filter, Sort.unsorted());
+        if (replicaRows.isPresent()) {
+            return replicaRows.get();
+        }
+        Specification<Student> spec = StudentSpecification.buildSpecification(filter);
+        return studentRepository.findViews(spec, Sort.unsorted());
+    }
+
+    // Workbook and PDF rendering is single-threaded, so only the partition queries run in parallel.
+    // The replica needs no partitioning; it returns the same class, then id, order directly.
+    private List<StudentView> getPartitionedStudents(StudentFilter filter) {
+        Optional<List<StudentView>> replicaRows = studentColumnStore.findAll(filter, Sort.by("studentClass"));
+        if (replicaRows.isPresent()) {
+            return replicaRows.get();
+        }
+        List<CompletableFuture<List<StudentView>>> parts = partitions(filter).stream()
+                .map(partition -> CompletableFuture.supplyAsync(
+                        () -> fetchPartition(filter, partition), dbExecutor))
+                .toList();
+
+        List<StudentView> students = new ArrayList<>();
+        for (CompletableFuture<List<StudentView>> part : parts) {
+            students.addAll(part.join());
+        }
+        return students;
+    }
+
+    // Partitions follow StudentClass order. When there are fewer classes than workers
+    // (e.g. a single-class filter) each class is further split into student_id ranges.
+    private List<ExportPartition> partitions(StudentFilter filter) {
+        List<StudentClass> classes = filter.resolvedStudentClasses().isEmpty()
+                ? List.of(StudentClass.values())
+                : filter.resolvedStudentClasses();
+
+        // Id lists are already narrow, so only split by class
+        int rangesPerClass = filter.resolvedStudentIds().isEmpty()
+                ? Math.max(1, exportParallelism / classes.size())
+                : 1;
+        Long minId = null;
+        Long maxId = null;
+        if (rangesPerClass > 1) {
+            minId = studentRepository.findMinStudentId();
+            maxId = studentRepository.findMaxStudentId();
+            if (minId == null || maxId == null) {
+                rangesPerClass = 1;
+            }
+        }
+
+        List<ExportPartition> partitions = new ArrayList<>();
+        for (StudentClass cls : classes) {
+            if (rangesPerClass == 1) {
+                partitions.add(new ExportPartition(cls, null, null));
+                continue;
+            }
+            long step = (maxId - minId + rangesPerClass) / rangesPerClass;
+            for (long from = minId; from <= maxId; from += step) {
+                partitions.add(new ExportPartition(cls, from, Math.min(from + step - 1, maxId)));
+            }
+        }
+        return partitions;
+    }
+
+    private List<StudentView> fetchPartition(StudentFilter filter, ExportPartition partition) {
+        Specification<Student> spec = StudentSpecification.buildSpecification(filter)
+                .and(StudentSpecification.hasStudentClass(partition.studentClass()))
+                .and(StudentSpecification.hasStudentIdBetween(partition.fromId(), partition.toId()));
+        return studentRepository.findViews(spec, Sort.by("studentId"));
+    }
+
+    private record ExportPartition(StudentClass studentClass, Long fromId, Long toId) {
     }
 }
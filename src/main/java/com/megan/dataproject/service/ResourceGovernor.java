@@ -0,0 +1,348 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.payload.PipelineRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memory and disk budgets for jobs and exports. Each one's footprint is estimated up front
+ * from its row count or input size, and reserved before it starts: jobs wait in JobScheduler
+ * until theirs fits, exports wait up to app.governor.export-wait on the request thread.
+ * Anything larger than the whole budget is turned away at once.
+ * The memory budget is app.governor.heap-fraction of the max heap; the disk budget is the
+ * storage directory's free space less app.governor.disk-headroom; in a cluster every node
+ * reserves against the same shared storage, so each gets an equal share of that, by the
+ * live node count the dispatcher heartbeat reports. Reservations are held until
+ * the work ends, so disk already written is counted twice until then: the budget errs on the
+ * safe side. With nothing reserved, work runs even if it doesn't fit, so it can't wait forever.
+ * Once something has failed to fit, the room it needs is held back: until it is reserved,
+ * later work only starts if both fit, so a stream of smaller jobs or exports can't starve it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResourceGovernor {
+
+    // Rough per-row costs of the layouts jobs and exports write
+    private static final long CSV_ROW_BYTES = 50;        // "123456,Firstname,Lastname,2005-01-15,Class1,75\n"
+    private static final long XLSX_ROW_BYTES = 40;       // the same row, zipped in a workbook
+    private static final long SXSSF_ROW_BYTES = 300;     // sheet XML SXSSF spills to temp files before zipping
+    private static final long ROW_OBJECT_BYTES = 200;    // a StudentView or a parsed row on the heap
+    private static final long PDF_ROW_BYTES = 3_000;     // six PdfPCells, all held until the table is added
+    // Streaming readers, SXSSF windows and insert batches: what a job holds whatever its size
+    private static final long JOB_BASE_BYTES = 64L << 20;
+    private static final long EXPORT_BASE_BYTES = 16L << 20;
+
+    private final FileStorageService storageService;
+
+    @Value("${app.governor.enabled:true}")
+    private boolean enabled;
+
+    // Share of -Xmx that reservations may add up to; the rest is left for caches, the replica and requests
+    @Value("${app.governor.heap-fraction:0.5}")
+    private double heapFraction;
+
+    // Free space kept in the storage directory beyond every reservation
+    @Value("${app.governor.disk-headroom:1GB}")
+    private DataSize diskHeadroom;
+
+    // How long an export waits for room before it gets a 503
+    @Value("${app.governor.export-wait:PT10S}")
+    private Duration exportWait;
+
+    // Same settings PipelineService sizes its channels with
+    @Value("${app.pipeline.batch-size:1000}")
+    private int pipelineBatchSize;
+
+    @Value("${app.pipeline.channel-capacity:8}")
+    private int pipelineChannelCapacity;
+
+    // ReentrantLock rather than synchronized: exports wait on it from virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Reservation> reservations = new LinkedHashMap<>();
+    // Work that didn't fit when it first asked, oldest first; the first one's footprint is held back
+    private final Map<String, Reservation> waiting = new LinkedHashMap<>();
+    private long reservedMemory;
+    private long reservedDisk;
+    // Nodes reserving against the same storage directory; 1 unless clustered
+    private volatile int diskShares = 1;
+
+    // Run after every release, outside the lock, e.g. so JobScheduler can start what now fits
+    private final List<Runnable> releaseListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public enum Export {
+        CSV, EXCEL, PDF
+    }
+
+    public record Footprint(long memoryBytes, long diskBytes) {
+        public static final Footprint NONE = new Footprint(0, 0);
+    }
+
+    public record Reservation(String owner, String kind, long memoryBytes, long diskBytes, Instant since) {
+    }
+
+    public Footprint estimate(JobSpec spec) {
+        return switch (spec.type()) {
+            // SXSSF's temp sheet plus the zipped workbook; rows leave memory every 100
+            case GENERATE -> new Footprint(JOB_BASE_BYTES, spec.count() * (SXSSF_ROW_BYTES + XLSX_ROW_BYTES));
+            case PROCESS, UPLOAD -> estimate(spec.type(), sizeOf(spec.inputPath()));
+            case PIPELINE -> estimate(spec.pipeline());
+        };
+    }
+
+    // For an uploaded file before it is copied to disk: an xlsx for PROCESS, a CSV for UPLOAD
+    public Footprint estimate(JobType type, long inputBytes) {
+        return switch (type) {
+            // StreamingReader copies the workbook to a temp file, then each zipped row becomes a CSV line
+            case PROCESS -> new Footprint(JOB_BASE_BYTES, inputBytes + inputBytes / XLSX_ROW_BYTES * CSV_ROW_BYTES);
+            // Batches of 10,000 rows, nothing written but the database
+            case UPLOAD -> new Footprint(JOB_BASE_BYTES, 0);
+            default -> throw new IllegalArgumentException(type + " jobs have no input file");
+        };
+    }
+
+    // Every channel can be full at once; only the last stage and the kept ones write a file
+    private Footprint estimate(PipelineRequest request) {
+        List<JobType> stages = request.getStages();
+        Set<JobType> keep = request.getKeep() == null ? Set.of() : request.getKeep();
+        long rows = request.getCount();
+        long channelRows = (long) (stages.size() - 1) * (pipelineChannelCapacity + 2) * pipelineBatchSize;
+        long disk = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            if (i < stages.size() - 1 && !keep.contains(stages.get(i))) {
+                continue;
+            }
+            disk += switch (stages.get(i)) {
+                case GENERATE -> rows * (SXSSF_ROW_BYTES + XLSX_ROW_BYTES);
+                case PROCESS -> rows * CSV_ROW_BYTES;
+                default -> 0;
+            };
+        }
+        return new Footprint(JOB_BASE_BYTES + channelRows * ROW_OBJECT_BYTES, disk);
+    }
+
+    // Exports hold every row, the encoded file, its copy and the Base64 string at once
+    public Footprint estimateExport(Export format, long rows) {
+        return switch (format) {
+            case CSV -> new Footprint(EXPORT_BASE_BYTES
+                    + rows * (ROW_OBJECT_BYTES + 4 * CSV_ROW_BYTES + CSV_ROW_BYTES * 4 / 3), 0);
+            case EXCEL -> new Footprint(EXPORT_BASE_BYTES
+                    + rows * (ROW_OBJECT_BYTES + 3 * XLSX_ROW_BYTES + XLSX_ROW_BYTES * 4 / 3), rows * SXSSF_ROW_BYTES);
+            case PDF -> new Footprint(EXPORT_BASE_BYTES + rows * (ROW_OBJECT_BYTES + PDF_ROW_BYTES), 0);
+        };
+    }
+
+    // Why the footprint could never fit, even with nothing else reserved; empty if it can
+    public Optional<String> checkFits(Footprint footprint) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long memoryBudget = memoryBudget();
+        if (footprint.memoryBytes() > memoryBudget) {
+            rejected.increment();
+            return Optional.of("Needs about " + megabytes(footprint.memoryBytes()) + " of memory, more than the whole "
+                    + megabytes(memoryBudget) + " budget");
+        }
+        long usable = usableDisk();
+        long diskBudget;
+        lock.lock();
+        try {
+            diskBudget = diskBudget(usable) + reservedDisk;
+        } finally {
+            lock.unlock();
+        }
+        if (usable >= 0 && footprint.diskBytes() > diskBudget) {
+            rejected.increment();
+            return Optional.of("Needs about " + megabytes(footprint.diskBytes()) + " of disk, more than the "
+                    + megabytes(Math.max(0, diskBudget)) + " that can be freed");
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Reserves the footprint for owner if it fits next to what is already reserved, or if
+     * nothing is. Work that waited longer comes first: while an earlier caller is still
+     * waiting, the footprint must also leave room for that one's. Doesn't wait; JobScheduler
+     * tries again after each release, and an owner that gives up must call release.
+     */
+    public boolean tryReserve(String owner, String kind, Footprint footprint) {
+        if (!enabled) {
+            return true;
+        }
+        lock.lock();
+        try {
+            Reservation first = waiting.values().stream().findFirst().orElse(null);
+            boolean mayRunAlone = first == null || first.owner().equals(owner);
+            Footprint heldBack = mayRunAlone ? Footprint.NONE : new Footprint(first.memoryBytes(), first.diskBytes());
+            if (!fits(footprint, heldBack) && !(mayRunAlone && reservations.isEmpty())) {
+                waiting.putIfAbsent(owner, new Reservation(owner, kind, footprint.memoryBytes(), footprint.diskBytes(),
+                        Instant.now()));
+                return false;
+            }
+            if (!fits(footprint, Footprint.NONE)) {
+                log.warn("{} {} - doesn't fit the free budget, running it alone", kind, owner);
+            }
+            waiting.remove(owner);
+            reservations.put(owner, new Reservation(owner, kind, footprint.memoryBytes(), footprint.diskBytes(),
+                    Instant.now()));
+            reservedMemory += footprint.memoryBytes();
+            reservedDisk += footprint.diskBytes();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Like tryReserve, but waits up to app.governor.export-wait for releases; false if there was no room by then
+    public boolean awaitReservation(String owner, String kind, Footprint footprint) {
+        long remaining = exportWait.toNanos();
+        boolean reserved = false;
+        lock.lock();
+        try {
+            while (!(reserved = tryReserve(owner, kind, footprint))) {
+                if (remaining <= 0) {
+                    timedOut.increment();
+                    break;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        if (!reserved) {
+            // Gave up: stop holding room back for it
+            release(owner);
+        }
+        return reserved;
+    }
+
+    // Ends owner's reservation, or its wait if it never got one
+    public void release(String owner) {
+        lock.lock();
+        try {
+            Reservation reservation = reservations.remove(owner);
+            Reservation waiter = waiting.remove(owner);
+            if (reservation == null && waiter == null) {
+                return;
+            }
+            if (reservation != null) {
+                reservedMemory -= reservation.memoryBytes();
+                reservedDisk -= reservation.diskBytes();
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        releaseListeners.forEach(Runnable::run);
+    }
+
+    // Called at every cluster heartbeat with the live node count
+    public void setDiskShares(int nodes) {
+        int shares = Math.max(1, nodes);
+        if (shares != diskShares) {
+            log.info("Disk budget now split between {} nodes", shares);
+            diskShares = shares;
+        }
+    }
+
+    public void onRelease(Runnable listener) {
+        releaseListeners.add(listener);
+    }
+
+    public long retryAfterSeconds() {
+        return Math.max(1, exportWait.toSeconds());
+    }
+
+    public Map<String, Object> getStatus() {
+        lock.lock();
+        try {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("enabled", enabled);
+            status.put("memoryBudgetBytes", memoryBudget());
+            status.put("memoryReservedBytes", reservedMemory);
+            status.put("heapUsedBytes", Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+            long usable = usableDisk();
+            status.put("diskFreeBytes", usable < 0 ? null : usable);
+            status.put("diskHeadroomBytes", diskHeadroom.toBytes());
+            status.put("diskShares", diskShares);
+            status.put("diskReservedBytes", reservedDisk);
+            status.put("reservations", new ArrayList<>(reservations.values()));
+            status.put("waiting", new ArrayList<>(waiting.values()));
+            status.put("rejected", rejected.sum());
+            status.put("timedOut", timedOut.sum());
+            return status;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether footprint fits next to what is reserved, with heldBack still left free
+    private boolean fits(Footprint footprint, Footprint heldBack) {
+        if (reservedMemory + heldBack.memoryBytes() + footprint.memoryBytes() > memoryBudget()) {
+            return false;
+        }
+        if (footprint.diskBytes() == 0) {
+            return true;
+        }
+        long usable = usableDisk();
+        return usable < 0
+                || reservedDisk + heldBack.diskBytes() + footprint.diskBytes() <= diskBudget(usable);
+    }
+
+    // This node's part of the free space beyond the headroom
+    private long diskBudget(long usable) {
+        return (usable - diskHeadroom.toBytes()) / diskShares;
+    }
+
+    private long memoryBudget() {
+        return (long) (Runtime.getRuntime().maxMemory() * heapFraction);
+    }
+
+    // Usable space in the storage directory, or -1 if it can't be read, which leaves disk unchecked
+    private long usableDisk() {
+        try {
+            return Files.getFileStore(storageService.getBaseDirectory()).getUsableSpace();
+        } catch (IOException e) {
+            log.debug("Could not read free space of {}: {}", storageService.getBaseDirectory(), e.getMessage());
+            return -1;
+        }
+    }
+
+    private static long sizeOf(String path) {
+        try {
+            return path == null ? 0 : Files.size(Path.of(path));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String megabytes(long bytes) {
+        return (bytes >> 20) + " MB";
+    }
+}
@@ -0,0 +1,75 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.repository.StudentView;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded hand-off of row batches between two pipeline stages. A full channel blocks the
+ * producer, so a fast stage runs at most capacity batches ahead of a slow one. Waits give
+ * up once the pipeline stops, so a stage never hangs on a partner that failed or was cancelled.
+ */
+class RowChannel {
+
+    // Compared by identity; senders never pass an empty batch
+    private static final List<StudentView> END = List.of();
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<List<StudentView>> queue;
+    private final BooleanSupplier stopped;
+
+    RowChannel(int capacity, BooleanSupplier stopped) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.stopped = stopped;
+    }
+
+    void send(List<StudentView> batch) {
+        if (!batch.isEmpty()) {
+            put(batch);
+        }
+    }
+
+    // No more batches; the receiver sees null once it has taken the ones before
+    void close() {
+        put(END);
+    }
+
+    List<StudentView> receive() {
+        try {
+            while (true) {
+                List<StudentView> batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == END) {
+                    return null;
+                }
+                if (batch != null) {
+                    return batch;
+                }
+                throwIfStopped();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JobCancelledException();
+        }
+    }
+
+    private void put(List<StudentView> batch) {
+        try {
+            while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                throwIfStopped();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JobCancelledException();
+        }
+    }
+
+    private void throwIfStopped() {
+        if (stopped.getAsBoolean()) {
+            throw new JobCancelledException();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.ScoreBucket;
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.ScoreStats;
+import com.megan.dataproject.repository.ScoreBucketRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Score statistics served from the score_buckets summary: one row per (class, score)
+ * holding the number of students. Scores are small integers, so the summary has at most
+ * a few hundred rows and mean, min, max and percentiles are exact. Each ingest job that
+ * committed rows rebuilds it on dbExecutor with one GROUP BY that can be answered from
+ * idx_student_class_score; ingests ending while a rebuild is still queued share it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScoreStatsService {
+
+    private static final int[] PERCENTILES = {25, 50, 75, 90, 99};
+
+    private final ScoreBucketRepository scoreBucketRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Qualifier("dbExecutor")
+    private final Executor dbExecutor;
+
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void initialize() {
+        if (scoreBucketRepository.count() == 0) {
+            rebuild();
+        }
+    }
+
+    // Published after the ingest's own commits, so this normally runs at once; inside a
+    // transaction it waits for that commit, and a rollback leaves nothing to summarize
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onStudentsIngested(StudentsIngestedEvent event) {
+        if (event.rowCount() == 0 || !rebuildQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            dbExecutor.execute(() -> {
+                // Cleared before the scan, so an ingest committing during it queues another
+                rebuildQueued.set(false);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> rebuild());
+                } catch (DataAccessException e) {
+                    log.error("Job {} - score summary rebuild failed: {}", event.jobId(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuildQueued.set(false);
+            log.warn("Job {} - score summary rebuild not queued: {}", event.jobId(), e.getMessage());
+        }
+    }
+
+    @Transactional
+    public void refresh() {
+        rebuild();
+    }
+
+    // Stats for one class, or for every student when studentClass is null
+    public ScoreStats getStats(StudentClass studentClass) {
+        return summarize(histogram(studentClass));
+    }
+
+    // "total" followed by one entry per class
+    public Map<String, ScoreStats> getStatsByClass() {
+        List<ScoreBucket> buckets = scoreBucketRepository.findAll();
+        Map<String, ScoreStats> stats = new LinkedHashMap<>();
+        stats.put("total", summarize(toHistogram(buckets)));
+        for (StudentClass studentClass : StudentClass.values()) {
+            stats.put(studentClass.name(), summarize(toHistogram(buckets.stream()
+                    .filter(bucket -> bucket.getClassKey().equals(studentClass.name()))
+                    .toList())));
+        }
+        return stats;
+    }
+
+    // Counts per score range of bucketWidth, keyed "from-to" in score order
+    public Map<String, Long> getHistogram(StudentClass studentClass, int bucketWidth) {
+        if (bucketWidth < 1) {
+            throw new IllegalArgumentException("bucketWidth must be at least 1");
+        }
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        histogram(studentClass).forEach((score, rows) -> {
+            int from = Math.floorDiv(score, bucketWidth) * bucketWidth;
+            histogram.merge(from + "-" + (from + bucketWidth - 1), rows, Long::sum);
+        });
+        return histogram;
+    }
+
+    private void rebuild() {
+        List<ScoreBucket> buckets = new ArrayList<>();
+        jdbcTemplate.query("SELECT class, score, COUNT(*) FROM students WHERE score IS NOT NULL GROUP BY class, score", rs -> {
+            buckets.add(new ScoreBucket(rs.getString(1), rs.getInt(2), rs.getLong(3)));
+        });
+        scoreBucketRepository.deleteAllInBatch();
+        scoreBucketRepository.saveAll(buckets);
+        log.info("Score summary rebuilt: {} buckets", buckets.size());
+    }
+
+    private TreeMap<Integer, Long> histogram(StudentClass studentClass) {
+        return toHistogram(studentClass == null
+                ? scoreBucketRepository.findAll()
+                : scoreBucketRepository.findByClassKey(studentClass.name()));
+    }
+
+    private TreeMap<Integer, Long> toHistogram(List<ScoreBucket> buckets) {
+        TreeMap<Integer, Long> histogram = new TreeMap<>();
+        buckets.stream()
+                .sorted(Comparator.comparingInt(ScoreBucket::getScore))
+                .forEach(bucket -> histogram.merge(bucket.getScore(), bucket.getRowCount(), Long::sum));
+        return histogram;
+    }
+
+    // Nearest-rank percentiles over the cumulative counts
+    private ScoreStats summarize(TreeMap<Integer, Long> histogram) {
+        long count = histogram.values().stream().mapToLong(Long::longValue).sum();
+        if (count == 0) {
+            return new ScoreStats(0, null, null, null, Map.of());
+        }
+        long sum = 0;
+        for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+            sum += entry.getKey() * entry.getValue();
+        }
+
+        Map<String, Integer> percentiles = new LinkedHashMap<>();
+        for (int p : PERCENTILES) {
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+                seen += entry.getValue();
+                if (seen >= rank) {
+                    percentiles.put("p" + p, entry.getKey());
+                    break;
+                }
+            }
+        }
+        return new ScoreStats(count, (double) sum / count, histogram.firstKey(), histogram.lastKey(), percentiles);
+    }
+}
@@ -0,0 +1,121 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of single-student lookups, including misses, so repeated lookups of
+ * the same hot ids skip the database. Ingest batches invalidate their id range right
+ * after they commit. A load that overlaps an invalidation is not cached, so a lookup can
+ * never put back a row that was read before the batch landed.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StudentCache {
+
+    private final StudentRepository studentRepository;
+
+    @Value("${app.cache.students.max-entries:10000}")
+    private int maxEntries;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Long, Optional<StudentView>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public Optional<StudentView> get(Long studentId) {
+        long loadGeneration;
+        synchronized (this) {
+            Optional<StudentView> cached = entries.get(studentId);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        Optional<StudentView> loaded = studentRepository.findByStudentId(studentId).map(StudentView::from);
+        put(studentId, loaded, loadGeneration);
+        return loaded;
+    }
+
+    // Cached entries for the given ids, without loading or admitting the rest. Bulk callers use
+    // this so one large lookup can't flush the hot single-id entries out of the LRU.
+    public synchronized Map<Long, Optional<StudentView>> peek(Collection<Long> studentIds) {
+        Map<Long, Optional<StudentView>> found = new HashMap<>();
+        for (Long studentId : studentIds) {
+            Optional<StudentView> cached = entries.get(studentId);
+            if (cached != null) {
+                found.put(studentId, cached);
+            }
+        }
+        hits.add(found.size());
+        misses.add(studentIds.size() - found.size());
+        return found;
+    }
+
+    // Drops every entry in [fromId, toId], found or missing
+    public synchronized void invalidateRange(long fromId, long toId) {
+        generation++;
+        Iterator<Long> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            long key = keys.next();
+            if (key >= fromId && key <= toId) {
+                keys.remove();
+                invalidations.increment();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private synchronized void put(Long studentId, Optional<StudentView> value, long loadGeneration) {
+        if (loadGeneration != generation) {
+            return; // an ingest batch committed while we were reading
+        }
+        entries.put(studentId, value);
+        Iterator<Long> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+}
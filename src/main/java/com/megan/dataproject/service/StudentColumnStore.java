@@ -0,0 +1,242 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.repository.KeysetCursor;
+import com.megan.dataproject.repository.StudentColumns;
+import com.megan.dataproject.repository.StudentFilter;
+import com.megan.dataproject.repository.StudentView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional in-process read replica of the students table (app.replica.enabled).
+ * Loaded once at startup into a {@link StudentColumns} snapshot and refreshed for the id
+ * range of each completed ingest job. Every read method returns empty while the replica
+ * is disabled, still loading or mid-refresh, or while an ingest is committing batches it
+ * hasn't merged yet, and callers fall back to JPA. In a cluster, ingests on other nodes
+ * make JobDispatcher call {@link #invalidate}, and the replica is reloaded in full.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StudentColumnStore {
+
+    private static final String SELECT_COLUMNS =
+            "SELECT student_id, first_name, last_name, dob, class, score FROM students";
+
+    // Rows the driver holds at a time during a full load; Postgres only streams inside a transaction
+    private static final int LOAD_FETCH_SIZE = 10_000;
+
+    private static final RowMapper<StudentView> ROW_MAPPER = (rs, rowNum) -> {
+        Date dob = rs.getDate(4);
+        String studentClass = rs.getString(5);
+        return new StudentView(
+                rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                dob == null ? null : dob.toLocalDate(),
+                studentClass == null ? null : StudentClass.valueOf(studentClass),
+                rs.getObject(6, Integer.class));
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DataVersionService dataVersionService;
+
+    @Qualifier("dbExecutor")
+    private final Executor dbExecutor;
+
+    @Value("${app.replica.enabled:false}")
+    private boolean enabled;
+
+    private volatile StudentColumns columns = StudentColumns.empty();
+    private volatile boolean loaded;
+    private volatile Instant refreshedAt;
+    private final AtomicInteger refreshesInFlight = new AtomicInteger();
+    // Ingests between their first commit and their refresh; counted even while disabled or unloaded
+    private final AtomicInteger ingestsInFlight = new AtomicInteger();
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        reload();
+    }
+
+    // Full rebuild; also repairs the replica after writes that bypass ingest
+    public synchronized void reload() {
+        if (!enabled) {
+            return;
+        }
+        refreshesInFlight.incrementAndGet();
+        try {
+            long startTime = System.currentTimeMillis();
+            columns = load();
+            loaded = true;
+            refreshedAt = Instant.now();
+            dataVersionService.bump();
+            log.info("Student replica loaded in {}ms: {} rows, ~{} KB",
+                    System.currentTimeMillis() - startTime, columns.size(), columns.memoryBytes() / 1024);
+        } catch (DataAccessException e) {
+            loaded = false;
+            log.error("Student replica load failed - serving reads from the database: {}", e.getMessage());
+        } finally {
+            refreshesInFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Another node changed the table. Reads fall back to the database at once and until a
+     * full reload on dbExecutor has finished; changes arriving while one is queued share it.
+     */
+    public void invalidate() {
+        if (!enabled || !reloadQueued.compareAndSet(false, true)) {
+            return;
+        }
+        // Counted until the queued reload ends, so one already running can't mark the replica current
+        refreshesInFlight.incrementAndGet();
+        try {
+            dbExecutor.execute(() -> {
+                reloadQueued.set(false);
+                try {
+                    reload();
+                } finally {
+                    refreshesInFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loaded = false;
+            reloadQueued.set(false);
+            refreshesInFlight.decrementAndGet();
+            log.warn("Student replica reload not queued - serving reads from the database: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onIngestStarted(StudentsIngestStartedEvent event) {
+        ingestsInFlight.incrementAndGet();
+    }
+
+    // The ingest stays counted until its range is merged, so no read sees the replica between
+    @EventListener
+    public void onStudentsIngested(StudentsIngestedEvent event) {
+        try {
+            if (enabled && loaded) {
+                refresh(event.minStudentId(), event.maxStudentId());
+            }
+        } catch (DataAccessException e) {
+            // A partial view is worse than none: stay on JPA until the next full reload
+            loaded = false;
+            log.error("Job {} - student replica refresh failed: {}", event.jobId(), e.getMessage());
+        } finally {
+            ingestsInFlight.decrementAndGet();
+        }
+    }
+
+    public boolean isAvailable() {
+        return enabled && loaded && refreshesInFlight.get() == 0 && ingestsInFlight.get() == 0;
+    }
+
+    public Optional<Page<StudentView>> findPage(StudentFilter filter, Pageable pageable) {
+        StudentColumns snapshot = columns;
+        if (!isAvailable() || !isSupported(pageable.getSort())) {
+            return Optional.empty();
+        }
+        List<StudentView> content = snapshot.find(filter, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+        return Optional.of(new PageImpl<>(content, pageable, snapshot.count(filter)));
+    }
+
+    public Optional<List<StudentView>> findAll(StudentFilter filter, Sort sort) {
+        StudentColumns snapshot = columns;
+        if (!isAvailable() || !isSupported(sort)) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot.find(filter, sort, 0, Integer.MAX_VALUE));
+    }
+
+    public Optional<Map<StudentClass, Long>> getCounts() {
+        StudentColumns snapshot = columns;
+        if (!isAvailable()) {
+            return Optional.empty();
+        }
+        Map<StudentClass, Long> counts = new EnumMap<>(StudentClass.class);
+        for (StudentClass studentClass : StudentClass.values()) {
+            counts.put(studentClass, snapshot.count(studentClass));
+        }
+        return Optional.of(counts);
+    }
+
+    public Map<String, Object> getStatus() {
+        StudentColumns snapshot = columns;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("available", isAvailable());
+        status.put("ingestsInFlight", ingestsInFlight.get());
+        status.put("rows", snapshot.size());
+        status.put("memoryBytes", snapshot.memoryBytes());
+        status.put("refreshedAt", refreshedAt);
+        return status;
+    }
+
+    // Streams the table into the column arrays, so no list of row objects is ever held. The summary
+    // total only sizes the arrays up front; the builder grows if more rows arrive meanwhile.
+    private StudentColumns load() {
+        Long expected = jdbcTemplate.queryForObject("SELECT sum(row_count) FROM student_counts", Long.class);
+        StudentColumns.Builder builder = StudentColumns.builder(expected == null ? 0 : (int) Math.min(expected, 1 << 30));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(SELECT_COLUMNS + " ORDER BY student_id");
+            statement.setFetchSize(LOAD_FETCH_SIZE);
+            return statement;
+        }, rs -> {
+            builder.add(ROW_MAPPER.mapRow(rs, 0));
+        }));
+        return builder.build();
+    }
+
+    // Re-reads only the ingested id range and merges it into a new snapshot
+    private synchronized void refresh(long minStudentId, long maxStudentId) {
+        long startTime = System.currentTimeMillis();
+        List<StudentView> rows = jdbcTemplate.query(
+                SELECT_COLUMNS + " WHERE student_id BETWEEN ? AND ? ORDER BY student_id",
+                ROW_MAPPER, minStudentId, maxStudentId);
+        columns = columns.merge(rows);
+        refreshedAt = Instant.now();
+        // Replica answers may have lagged the per-batch bumps; retag them now that they match
+        dataVersionService.bump();
+        log.info("Student replica refreshed in {}ms: {} rows merged, {} total",
+                System.currentTimeMillis() - startTime, rows.size(), columns.size());
+    }
+
+    // The replica orders by a single column (ties by studentId), like the keyset endpoint
+    private boolean isSupported(Sort sort) {
+        return sort.stream().count() <= 1
+                && sort.stream().allMatch(order -> KeysetCursor.SORT_COLUMNS.contains(order.getProperty()));
+    }
+}
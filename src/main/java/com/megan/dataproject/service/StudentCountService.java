@@ -0,0 +1,110 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.model.StudentCount;
+import com.megan.dataproject.repository.StudentCountRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves total and per-class row counts from the student_counts summary table instead
+ * of running count(*) over students. Ingest jobs call {@link #applyDelta} inside the
+ * same transaction as each insert batch, so the summary commits or rolls back with it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StudentCountService {
+
+    private final StudentCountRepository studentCountRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Build the summary on first start; afterwards it is maintained incrementally
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (studentCountRepository.count() < StudentClass.values().length) {
+            log.info("Student count summary missing - running exact recount");
+            recount();
+        }
+    }
+
+    public long getTotal() {
+        return studentCountRepository.findAll().stream().mapToLong(StudentCount::getRowCount).sum();
+    }
+
+    // Count for one class, or the total when studentClass is null
+    public long getCount(StudentClass studentClass) {
+        if (studentClass == null) {
+            return getTotal();
+        }
+        return studentCountRepository.findById(studentClass.name()).map(StudentCount::getRowCount).orElse(0L);
+    }
+
+    // Sum over a set of classes; an empty set means every class
+    public long getCount(Collection<StudentClass> studentClasses) {
+        if (studentClasses.isEmpty()) {
+            return getTotal();
+        }
+        Map<StudentClass, Long> counts = getCounts();
+        return studentClasses.stream().mapToLong(counts::get).sum();
+    }
+
+    public Map<StudentClass, Long> getCounts() {
+        Map<StudentClass, Long> counts = new EnumMap<>(StudentClass.class);
+        for (StudentClass studentClass : StudentClass.values()) {
+            counts.put(studentClass, 0L);
+        }
+        for (StudentCount count : studentCountRepository.findAll()) {
+            counts.put(StudentClass.valueOf(count.getClassKey()), count.getRowCount());
+        }
+        return counts;
+    }
+
+    // Must run inside the caller's insert transaction
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void applyDelta(Map<StudentClass, Long> delta) {
+        List<Object[]> updates = new ArrayList<>();
+        delta.forEach((studentClass, rows) -> {
+            if (rows != 0) {
+                updates.add(new Object[]{rows, studentClass.name()});
+            }
+        });
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE student_counts SET row_count = row_count + ? WHERE class_key = ?", updates);
+        }
+    }
+
+    // Exact recount with one GROUP BY scan; repairs any drift from writes that bypass ingest.
+    // The summary rows are locked first (in the same class order applyDelta updates them), so a batch
+    // either commits before the scan and is counted by it, or waits and adds its delta afterwards.
+    // Without the lock a batch committing between the scan and the save would be overwritten.
+    @Transactional
+    public Map<StudentClass, Long> recount() {
+        jdbcTemplate.queryForList("SELECT class_key FROM student_counts ORDER BY class_key FOR UPDATE", String.class);
+        Map<StudentClass, Long> counts = new EnumMap<>(StudentClass.class);
+        for (StudentClass studentClass : StudentClass.values()) {
+            counts.put(studentClass, 0L);
+        }
+        jdbcTemplate.query("SELECT class, COUNT(*) FROM students GROUP BY class", rs -> {
+            counts.put(StudentClass.valueOf(rs.getString(1)), rs.getLong(2));
+        });
+
+        List<StudentCount> rows = new ArrayList<>();
+        counts.forEach((studentClass, rowCount) -> rows.add(new StudentCount(studentClass.name(), rowCount)));
+        studentCountRepository.saveAll(rows);
+        log.info("Student count summary rebuilt: {}", counts);
+        return counts;
+    }
+}
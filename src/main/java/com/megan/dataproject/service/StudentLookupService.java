@@ -0,0 +1,142 @@
+package com.megan.dataproject.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.megan.dataproject.repository.StudentFilter;
+import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentSpecification;
+import com.megan.dataproject.repository.StudentView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bulk student lookup. Ids are parsed from a JSON array without building a tree, then
+ * resolved chunk by chunk (lookup cache first, then one IN query for the rest) and
+ * streamed back as each chunk completes. Output follows request order, with duplicate
+ * ids returned once, and ids that don't exist are listed at the end instead of failing the batch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StudentLookupService {
+
+    // Matches the padded IN-list sizes Hibernate caches plans for
+    static final int CHUNK_SIZE = 1024;
+
+    private final StudentRepository studentRepository;
+    private final StudentCache studentCache;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.lookup.max-ids:100000}")
+    private int maxIds;
+
+    // Reads a JSON array of ids, e.g. [1, 2, 3]; numeric strings are accepted too
+    public long[] readIds(InputStream in) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Request body must be a JSON array of student ids");
+            }
+            long[] ids = new long[64];
+            int count = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IllegalArgumentException("Unterminated id array");
+                }
+                if (count == maxIds) {
+                    throw new IllegalArgumentException("At most " + maxIds + " ids per lookup");
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, ids.length * 2);
+                }
+                ids[count++] = switch (token) {
+                    case VALUE_NUMBER_INT -> parser.getLongValue();
+                    case VALUE_STRING -> Long.parseLong(parser.getText().trim());
+                    default -> throw new IllegalArgumentException("Invalid student id: " + parser.getText());
+                };
+            }
+            return Arrays.copyOf(ids, count);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid student id: " + e.getMessage(), e);
+        }
+    }
+
+    // Writes {"success":true,"message":...,"data":{"students":[...],"missingIds":[...]}}
+    public void writeLookup(long[] ids, OutputStream out) throws IOException {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(Arrays.stream(ids).boxed().toList()));
+        List<Long> missing = new ArrayList<>();
+
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("success", true);
+            generator.writeStringField("message", "Lookup completed");
+            generator.writeObjectFieldStart("data");
+            generator.writeArrayFieldStart("students");
+
+            for (int from = 0; from < distinct.size(); from += CHUNK_SIZE) {
+                List<Long> chunk = distinct.subList(from, Math.min(from + CHUNK_SIZE, distinct.size()));
+                Map<Long, StudentView> found = resolve(chunk);
+                for (Long id : chunk) {
+                    StudentView student = found.get(id);
+                    if (student != null) {
+                        generator.writeObject(student);
+                    } else {
+                        missing.add(id);
+                    }
+                }
+                // Let the client start reading while the next chunk is queried
+                generator.flush();
+            }
+
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("missingIds");
+            for (Long id : missing) {
+                generator.writeNumber(id);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("requested", distinct.size());
+            generator.writeNumberField("found", distinct.size() - missing.size());
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        log.info("Bulk lookup: {} ids requested, {} missing", distinct.size(), missing.size());
+    }
+
+    private Map<Long, StudentView> resolve(List<Long> chunk) {
+        Map<Long, StudentView> found = new HashMap<>();
+        List<Long> uncached = new ArrayList<>();
+        Map<Long, Optional<StudentView>> cached = studentCache.peek(chunk);
+        for (Long id : chunk) {
+            Optional<StudentView> entry = cached.get(id);
+            if (entry == null) {
+                uncached.add(id);
+            } else {
+                entry.ifPresent(student -> found.put(id, student));
+            }
+        }
+        if (!uncached.isEmpty()) {
+            StudentFilter filter = StudentFilter.builder().studentIds(uncached).build();
+            for (StudentView student : studentRepository.findViews(
+                    StudentSpecification.buildSpecification(filter), Sort.unsorted())) {
+                found.put(student.studentId(), student);
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,8 @@
+package com.megan.dataproject.service;
+
+/**
+ * Published just before an ingest job commits its first batch. Every one is followed by a
+ * {@link StudentsIngestedEvent} for the same job once the job stops committing.
+ */
+public record StudentsIngestStartedEvent(String jobId) {
+}
@@ -0,0 +1,8 @@
+package com.megan.dataproject.service;
+
+/**
+ * Published once an ingest job has committed rows, with the studentId range it wrote.
+ * Listeners use the range to refresh derived state without rescanning the whole table.
+ */
+public record StudentsIngestedEvent(String jobId, long minStudentId, long maxStudentId, long rowCount) {
+}
@@ -0,0 +1,231 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobRecord;
+import com.megan.dataproject.repository.JobRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Two-tier job store. The hot tier is a bounded in-memory map that drops jobs untouched
+ * for app.jobs.hot-ttl, or beyond app.jobs.hot-max-entries (least recently used first).
+ * The durable tier is the jobs table. Progress updates are coalesced: save() only marks
+ * the job dirty and a scheduled flush writes each dirty job once, however many updates
+ * it had. Terminal statuses are written through immediately.
+ * <p>
+ * In a cluster (app.cluster.enabled) other nodes write the same table, so only jobs
+ * running on this node (see {@link #own}) and terminal jobs, which no longer change, are
+ * cached. Any other job is read from the table and written straight through to it.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TieredJobStore implements JobStore {
+
+    private final JobRecordRepository jobRecordRepository;
+
+    @Value("${app.jobs.hot-max-entries:10000}")
+    private int hotMaxEntries;
+
+    @Value("${app.jobs.hot-ttl:PT1H}")
+    private Duration hotTtl;
+
+    @Value("${app.jobs.retention:P7D}")
+    private Duration retention;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean shared;
+
+    // With shared: jobs this node runs, the only non-terminal ones it may cache or coalesce
+    private final Set<String> owned = ConcurrentHashMap.newKeySet();
+
+    // Access-ordered, so the eldest entry is the least recently used
+    private final LinkedHashMap<String, HotEntry> hot = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Jobs changed since the last flush; holds its own reference so eviction can't drop a write
+    private final Map<String, JobService.JobInfo> dirty = new ConcurrentHashMap<>();
+
+    // Held by saveNow and flush across their writes. A ReentrantLock rather than synchronized,
+    // which would pin the virtual threads that call saveNow for as long as the write takes.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // touchedAt is the last save, so a job still reporting progress never expires
+    private record HotEntry(JobService.JobInfo jobInfo, long touchedAt) {
+    }
+
+    @Override
+    public Optional<JobService.JobInfo> find(String jobId) {
+        boolean local = isLocal(jobId);
+        synchronized (hot) {
+            HotEntry entry = hot.get(jobId);
+            if (entry != null && !isExpired(entry, System.currentTimeMillis())
+                    && (local || entry.jobInfo().getStatus().isTerminal())) {
+                return Optional.of(entry.jobInfo());
+            }
+        }
+        JobService.JobInfo pending = dirty.get(jobId);
+        if (pending != null) {
+            admit(jobId, pending);
+            return Optional.of(pending);
+        }
+        // Cold path: after a restart or eviction, or a job another node writes, reload from the jobs table
+        Optional<JobService.JobInfo> stored = jobRecordRepository.findById(jobId).map(TieredJobStore::toJobInfo);
+        stored.filter(jobInfo -> local || jobInfo.getStatus().isTerminal())
+                .ifPresent(jobInfo -> admit(jobId, jobInfo));
+        return stored;
+    }
+
+    @Override
+    public void save(String jobId, JobService.JobInfo jobInfo) {
+        if (!isLocal(jobId)) {
+            // Another node may be about to claim it; a coalesced write could land after the claimer's
+            saveNow(jobId, jobInfo);
+            return;
+        }
+        admit(jobId, jobInfo);
+        dirty.put(jobId, jobInfo);
+    }
+
+    // Under writeLock with flush() so an older coalesced snapshot can't land after a terminal write
+    @Override
+    public void saveNow(String jobId, JobService.JobInfo jobInfo) {
+        writeLock.lock();
+        try {
+            admit(jobId, jobInfo);
+            dirty.remove(jobId);
+            if (jobInfo.getStatus().isTerminal()) {
+                owned.remove(jobId);
+            }
+            try {
+                jobRecordRepository.save(toRecord(jobId, jobInfo));
+            } catch (DataAccessException e) {
+                // Retry with the next flush rather than failing the job over bookkeeping
+                dirty.put(jobId, jobInfo);
+                log.warn("Job {} - could not persist status, will retry: {}", jobId, e.getMessage());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Write-behind: one row per dirty job, no matter how many updates it had since the last flush
+    @Scheduled(fixedDelayString = "${app.jobs.flush-interval:PT2S}")
+    public void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            List<JobRecord> records = new ArrayList<>();
+            for (String jobId : List.copyOf(dirty.keySet())) {
+                JobService.JobInfo jobInfo = dirty.remove(jobId);
+                if (jobInfo != null) {
+                    records.add(toRecord(jobId, jobInfo));
+                }
+            }
+            try {
+                jobRecordRepository.saveAll(records);
+            } catch (DataAccessException e) {
+                log.warn("Could not flush {} job updates, will retry: {}", records.size(), e.getMessage());
+                records.forEach(record -> dirty.putIfAbsent(record.getJobId(), toJobInfo(record)));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Expire idle hot entries and drop durable rows past retention
+    @Scheduled(fixedDelayString = "${app.jobs.sweep-interval:PT5M}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        synchronized (hot) {
+            Iterator<HotEntry> entries = hot.values().iterator();
+            while (entries.hasNext()) {
+                if (isExpired(entries.next(), now)) {
+                    entries.remove();
+                    expired++;
+                }
+            }
+        }
+        int deleted = jobRecordRepository.deleteUpdatedBefore(Instant.now().minus(retention));
+        if (expired > 0 || deleted > 0) {
+            log.info("Job store sweep: {} hot entries expired, {} stored jobs past retention deleted", expired, deleted);
+        }
+    }
+
+    @Override
+    public void own(String jobId) {
+        if (shared) {
+            owned.add(jobId);
+        }
+    }
+
+    // Unflushed progress is dropped, so it can't land on top of the new owner's
+    @Override
+    public void disown(String jobId) {
+        if (owned.remove(jobId)) {
+            dirty.remove(jobId);
+            synchronized (hot) {
+                hot.remove(jobId);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public int hotSize() {
+        synchronized (hot) {
+            return hot.size();
+        }
+    }
+
+    private void admit(String jobId, JobService.JobInfo jobInfo) {
+        synchronized (hot) {
+            hot.put(jobId, new HotEntry(jobInfo, System.currentTimeMillis()));
+            Iterator<HotEntry> eldest = hot.values().iterator();
+            while (hot.size() > hotMaxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private boolean isLocal(String jobId) {
+        return !shared || owned.contains(jobId);
+    }
+
+    private boolean isExpired(HotEntry entry, long now) {
+        return now - entry.touchedAt() > hotTtl.toMillis();
+    }
+
+    private static JobRecord toRecord(String jobId, JobService.JobInfo jobInfo) {
+        return new JobRecord(jobId, jobInfo.getStatus(), jobInfo.getResult(), jobInfo.getProgress(),
+                jobInfo.getProcessedCount(), jobInfo.getTotalCount(), Instant.now());
+    }
+
+    // Profile, metrics and pipeline stages are not persisted; a job reloaded from the table has none of them
+    private static JobService.JobInfo toJobInfo(JobRecord record) {
+        return new JobService.JobInfo(record.getStatus(), record.getResult(), record.getProgress(),
+                record.getProcessedCount(), record.getTotalCount(), null, null, null, null);
+    }
+}
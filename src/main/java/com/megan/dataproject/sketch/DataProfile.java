@@ -0,0 +1,109 @@
+package com.megan.dataproject.sketch;
+
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.ScoreStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Approximate profile of the rows a pipeline job wrote: score quantiles, distinct name
+ * counts and exact per-class counts. Jobs feed it from the loop that already reads every
+ * row and attach it to the job when done, so questions about an uploaded file need no
+ * second pass. Not thread-safe; one job owns it until it is attached.
+ */
+public class DataProfile {
+
+    private static final double[] QUANTILES = {0.25, 0.5, 0.75, 0.9, 0.99};
+    private static final StudentClass[] CLASSES = StudentClass.values();
+
+    private final QuantileSketch scores = new QuantileSketch();
+    private final HyperLogLog firstNames = new HyperLogLog();
+    private final HyperLogLog lastNames = new HyperLogLog();
+    // Indexed by StudentClass ordinal; names that aren't a class (e.g. from a bad xlsx cell) go to otherClasses
+    private final long[] classCounts = new long[CLASSES.length];
+    private final Map<String, Long> otherClasses = new TreeMap<>();
+    private long rowCount;
+
+    public void add(String firstName, String lastName, StudentClass studentClass, int score) {
+        rowCount++;
+        scores.add(score);
+        firstNames.add(firstName);
+        lastNames.add(lastName);
+        classCounts[studentClass.ordinal()]++;
+    }
+
+    public void add(String firstName, String lastName, String studentClass, int score) {
+        StudentClass known = classOf(studentClass);
+        if (known != null) {
+            add(firstName, lastName, known, score);
+            return;
+        }
+        rowCount++;
+        scores.add(score);
+        firstNames.add(firstName);
+        lastNames.add(lastName);
+        otherClasses.merge(String.valueOf(studentClass), 1L, Long::sum);
+    }
+
+    public void merge(DataProfile other) {
+        rowCount += other.rowCount;
+        scores.merge(other.scores);
+        firstNames.merge(other.firstNames);
+        lastNames.merge(other.lastNames);
+        for (int i = 0; i < classCounts.length; i++) {
+            classCounts[i] += other.classCounts[i];
+        }
+        other.otherClasses.forEach((studentClass, rows) -> otherClasses.merge(studentClass, rows, Long::sum));
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    // Classes with rows, in name order
+    public Map<String, Long> getClassCounts() {
+        Map<String, Long> counts = new TreeMap<>(otherClasses);
+        for (StudentClass studentClass : CLASSES) {
+            if (classCounts[studentClass.ordinal()] > 0) {
+                counts.put(studentClass.name(), classCounts[studentClass.ordinal()]);
+            }
+        }
+        return counts;
+    }
+
+    public long getDistinctFirstNames() {
+        return firstNames.estimate();
+    }
+
+    public long getDistinctLastNames() {
+        return lastNames.estimate();
+    }
+
+    // Same shape as the database-backed /stats/score, so the two can be compared directly
+    public ScoreStats getScoreStats() {
+        if (scores.getCount() == 0) {
+            return new ScoreStats(0, null, null, null, Map.of());
+        }
+        Map<String, Integer> percentiles = new LinkedHashMap<>();
+        for (double q : QUANTILES) {
+            percentiles.put("p" + Math.round(q * 100), (int) scores.quantile(q));
+        }
+        return new ScoreStats(scores.getCount(), scores.getMean(),
+                (int) scores.getMin(), (int) scores.getMax(), percentiles);
+    }
+
+    public long getScoreQuantile(double q) {
+        return scores.quantile(q);
+    }
+
+    private static StudentClass classOf(String name) {
+        for (StudentClass studentClass : CLASSES) {
+            if (studentClass.name().equals(name)) {
+                return studentClass;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+package com.megan.dataproject.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch for integer values. Counts values in buckets of equal width,
+ * held in a fixed long[] of maxBuckets slots starting at the lowest bucket seen; while the
+ * values span at most maxBuckets the width is 1 and every quantile is exact. Past that the
+ * width doubles and neighbouring buckets fold together, so memory stays bounded and a
+ * quantile is off by at most half a bucket. Adding a value allocates nothing.
+ */
+public final class QuantileSketch {
+
+    private static final int DEFAULT_MAX_BUCKETS = 1024;
+
+    private final int maxBuckets;
+    // counts[i] is the bucket of values in [(base + i) * width, (base + i + 1) * width)
+    private final long[] counts;
+    private long base;
+    private int span;
+    private long width = 1;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double sum;
+
+    public QuantileSketch() {
+        this(DEFAULT_MAX_BUCKETS);
+    }
+
+    // At least two, so values either side of zero can always share the slots
+    public QuantileSketch(int maxBuckets) {
+        if (maxBuckets < 2) {
+            throw new IllegalArgumentException("maxBuckets must be at least 2");
+        }
+        this.maxBuckets = maxBuckets;
+        this.counts = new long[maxBuckets];
+    }
+
+    public void add(long value) {
+        addToBucket(value, 1);
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        while (width < other.width) {
+            coarsen();
+        }
+        // Widths are powers of two and ours is now >= other's, so each bucket maps to exactly one of ours
+        for (int i = 0; i < other.span; i++) {
+            if (other.counts[i] != 0) {
+                addToBucket((other.base + i) * other.width, other.counts[i]);
+            }
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    // Nearest-rank quantile, q in [0, 1]; reports the bucket midpoint clamped to the seen range
+    public long quantile(double q) {
+        if (count == 0) {
+            throw new IllegalStateException("Sketch is empty");
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < span; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long midpoint = (base + i) * width + (width - 1) / 2;
+                return Math.max(min, Math.min(max, midpoint));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    public long getWidth() {
+        return width;
+    }
+
+    // Adds rows to the bucket of value, coarsening until it fits in the slots with the others
+    private void addToBucket(long value, long rows) {
+        long key = Math.floorDiv(value, width);
+        while (span > 0 && Math.max(base + span - 1, key) - Math.min(base, key) >= maxBuckets) {
+            coarsen();
+            key = Math.floorDiv(value, width);
+        }
+        if (span == 0) {
+            base = key;
+            span = 1;
+        } else if (key < base) {
+            int shift = (int) (base - key);
+            System.arraycopy(counts, 0, counts, shift, span);
+            Arrays.fill(counts, 0, shift, 0);
+            base = key;
+            span += shift;
+        } else if (key >= base + span) {
+            span = (int) (key - base + 1);
+        }
+        counts[(int) (key - base)] += rows;
+    }
+
+    // Folds slot i into bucket floorDiv(base + i, 2); that slot is never above i, so it folds in place
+    private void coarsen() {
+        long foldedBase = Math.floorDiv(base, 2);
+        int foldedSpan = 0;
+        for (int i = 0; i < span; i++) {
+            long rows = counts[i];
+            counts[i] = 0;
+            int slot = (int) (Math.floorDiv(base + i, 2) - foldedBase);
+            counts[slot] += rows;
+            foldedSpan = slot + 1;
+        }
+        base = foldedBase;
+        span = foldedSpan;
+        width *= 2;
+    }
+}
@@ -0,0 +1,52 @@
+-- Students table list-partitioned by class, for the "partitioned" profile (Postgres 11+).
+-- Runs before Hibernate starts; Hibernate then finds the table and leaves it alone.
+-- Only applies to a fresh database: an existing unpartitioned students table is kept as is.
+
+-- The primary key of a partitioned table must include the partition key, so on its own
+-- it would let one student_id exist once per class. student_ids below keeps ids unique.
+CREATE TABLE IF NOT EXISTS students (
+    student_id BIGINT NOT NULL,
+    first_name VARCHAR(255),
+    last_name VARCHAR(255),
+    dob DATE,
+    class VARCHAR(255) NOT NULL,
+    score INTEGER,
+    PRIMARY KEY (student_id, class)
+) PARTITION BY LIST (class);
+
+CREATE TABLE IF NOT EXISTS students_class1 PARTITION OF students FOR VALUES IN ('Class1');
+CREATE TABLE IF NOT EXISTS students_class2 PARTITION OF students FOR VALUES IN ('Class2');
+CREATE TABLE IF NOT EXISTS students_class3 PARTITION OF students FOR VALUES IN ('Class3');
+CREATE TABLE IF NOT EXISTS students_class4 PARTITION OF students FOR VALUES IN ('Class4');
+CREATE TABLE IF NOT EXISTS students_class5 PARTITION OF students FOR VALUES IN ('Class5');
+
+-- Global uniqueness of student_id. The upload job inserts a batch's ids here in the same
+-- transaction as its rows, so a duplicate fails the batch just as the plain table's primary
+-- key would. The cost is one more index insert per row; writes that bypass the upload job
+-- must keep it in step. Backfilled once for databases created before it existed.
+CREATE TABLE IF NOT EXISTS student_ids (
+    student_id BIGINT PRIMARY KEY
+);
+INSERT INTO student_ids (student_id)
+    SELECT student_id FROM students WHERE NOT EXISTS (SELECT 1 FROM student_ids)
+    ON CONFLICT DO NOTHING;
+
+-- Same names as the @Index list on Student, so Hibernate sees them as present.
+-- Indexes on the parent are created on every partition.
+CREATE INDEX IF NOT EXISTS idx_student_class ON students (class);
+CREATE INDEX IF NOT EXISTS idx_student_score ON students (score);
+CREATE INDEX IF NOT EXISTS idx_student_class_score ON students (class, score);
+CREATE INDEX IF NOT EXISTS idx_student_first_name_id ON students (first_name, student_id);
+CREATE INDEX IF NOT EXISTS idx_student_last_name_id ON students (last_name, student_id);
+CREATE INDEX IF NOT EXISTS idx_student_dob_id ON students (dob, student_id);
+CREATE INDEX IF NOT EXISTS idx_student_class_id ON students (class, student_id);
+CREATE INDEX IF NOT EXISTS idx_student_score_id ON students (score, student_id);
+
+-- Name prefix indexes; SchemaInitializer builds these CONCURRENTLY on the plain table,
+-- which Postgres doesn't allow on a partitioned one
+CREATE INDEX IF NOT EXISTS idx_student_first_name_prefix ON students (lower(first_name) text_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_student_last_name_prefix ON students (lower(last_name) text_pattern_ops);
+
+-- Name-sorted offset pages order by code point (COLLATE "C") so they match the in-memory replica
+CREATE INDEX IF NOT EXISTS idx_student_first_name_c_id ON students (first_name COLLATE "C", student_id);
+CREATE INDEX IF NOT EXISTS idx_student_last_name_c_id ON students (last_name COLLATE "C", student_id);
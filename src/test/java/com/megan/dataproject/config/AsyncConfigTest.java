@@ -0,0 +1,46 @@
+package com.megan.dataproject.config;
+
+import com.megan.dataproject.model.JobType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsyncConfigTest {
+
+    private static JobSchedulerProperties scheduler(int maxConcurrency, int uploads, int pipelines) {
+        return new JobSchedulerProperties(maxConcurrency, Map.of(
+                JobType.UPLOAD, new JobSchedulerProperties.Limits(uploads, 20, 1),
+                JobType.PIPELINE, new JobSchedulerProperties.Limits(pipelines, 5, 1)));
+    }
+
+    @Test
+    @DisplayName("Should hold back a connection per upload or pipeline that may run")
+    void shouldHoldBackJobConnections() {
+        // When - pool of 10, one left for requests, 2 uploads + 1 pipeline
+        int permits = AsyncConfig.defaultDbPermits(10, scheduler(4, 2, 1));
+
+        // Then
+        assertThat(permits).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("Should hold back no more connections than jobs can run at once")
+    void shouldCapHeldConnectionsAtMaxConcurrency() {
+        // When - 3 uploads + 2 pipelines allowed, but only 2 jobs run at a time
+        int permits = AsyncConfig.defaultDbPermits(10, scheduler(2, 3, 2));
+
+        // Then
+        assertThat(permits).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("Should keep at least one permit when jobs could take the whole pool")
+    void shouldKeepOnePermit() {
+        // When - the shipped pool of 5 with 2 uploads and 1 pipeline
+        assertThat(AsyncConfig.defaultDbPermits(5, scheduler(4, 2, 1))).isEqualTo(1);
+        assertThat(AsyncConfig.defaultDbPermits(3, scheduler(4, 2, 1))).isEqualTo(1);
+    }
+}
@@ -0,0 +1,126 @@
+package com.megan.dataproject.config;
+
+import com.megan.dataproject.service.DataVersionService;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class DataVersionEtagFilterTest {
+
+    // Only the local version is used; clustering is off, so the shared row is never touched
+    private final DataVersionService dataVersionService = new DataVersionService(mock(JdbcTemplate.class));
+    private final DataVersionEtagFilter filter = new DataVersionEtagFilter(dataVersionService);
+
+    private MockHttpServletResponse get(String uri, String query, String ifNoneMatch, MockFilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setQueryString(query);
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    // A controller answering with the status and a body
+    private MockFilterChain respond(int status) {
+        return new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.setStatus(status);
+                response.getWriter().write("{}");
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Should return 304 without calling the controller when the ETag matches")
+    void shouldShortCircuitMatchingETag() throws Exception {
+        // Given
+        String etag = get("/api/students/report", "page=0&size=20", null, new MockFilterChain()).getHeader("ETag");
+        MockFilterChain chain = new MockFilterChain();
+
+        // When
+        MockHttpServletResponse response = get("/api/students/report", "page=0&size=20", etag, chain);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should issue a new ETag after the data version moves")
+    void shouldChangeETagAfterBump() throws Exception {
+        // Given
+        String etag = get("/api/students/count", null, null, new MockFilterChain()).getHeader("ETag");
+        dataVersionService.bump();
+        MockFilterChain chain = new MockFilterChain();
+
+        // When
+        MockHttpServletResponse response = get("/api/students/count", null, etag, chain);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("ETag")).isNotEqualTo(etag);
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Should tag different query parameters differently and skip other endpoints")
+    void shouldScopeETagsToReportRequests() throws Exception {
+        // When
+        String first = get("/api/students/report", "studentClass=Class1", null, new MockFilterChain()).getHeader("ETag");
+        String second = get("/api/students/report", "studentClass=Class2", null, new MockFilterChain()).getHeader("ETag");
+        String status = get("/api/students/status/job", null, null, new MockFilterChain()).getHeader("ETag");
+
+        // Then
+        assertThat(first).isNotEqualTo(second);
+        assertThat(status).isNull();
+    }
+
+    @Test
+    @DisplayName("Should tag successful responses but not errors")
+    void shouldTagOnlySuccessfulResponses() throws Exception {
+        // When
+        MockHttpServletResponse ok = get("/api/students/report", "page=0", null, respond(200));
+        MockHttpServletResponse failed = get("/api/students/report", "page=0", null, respond(500));
+        MockHttpServletResponse invalid = get("/api/students/count", null, null, respond(400));
+
+        // Then - a client must not get 304 for an error it never saw succeed
+        assertThat(ok.getHeader("ETag")).isNotNull();
+        assertThat(ok.getHeader("Cache-Control")).isEqualTo("no-cache");
+        assertThat(failed.getHeader("ETag")).isNull();
+        assertThat(failed.getHeader("Cache-Control")).isNull();
+        assertThat(invalid.getHeader("ETag")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should not tag a response the controller failed with sendError")
+    void shouldNotTagSendError() throws Exception {
+        // Given
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.sendError(503);
+            }
+        });
+
+        // When
+        MockHttpServletResponse response = get("/api/students/report", null, null, chain);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("ETag")).isNull();
+    }
+}
@@ -0,0 +1,67 @@
+package com.megan.dataproject.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class WorkloadExecutorTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private WorkloadExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    private void block() {
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("Should run at most as many virtual-thread tasks as it has permits")
+    void shouldBoundVirtualTasksByPermits() {
+        // Given
+        executor = WorkloadExecutor.virtual("Db", 2);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            executor.execute(this::block);
+        }
+
+        // Then
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertThat(executor.getStats()).containsEntry("active", 2).containsEntry("waiting", 3);
+            assertThat(executor.getStats()).containsEntry("saturation", 1.0);
+        });
+        release.countDown();
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() ->
+                assertThat(executor.getStats()).containsEntry("completed", 5L).containsEntry("peakActive", 2));
+    }
+
+    @Test
+    @DisplayName("Should count tasks rejected by a full platform pool")
+    void shouldCountRejections() {
+        // Given - one thread, one queue slot
+        executor = WorkloadExecutor.platform("Cpu", 1, 1);
+        executor.execute(this::block);
+        executor.execute(this::block);
+
+        // When / Then
+        assertThatThrownBy(() -> executor.execute(this::block)).isInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.getStats()).containsEntry("rejected", 1L).containsEntry("capacity", 1);
+    }
+}
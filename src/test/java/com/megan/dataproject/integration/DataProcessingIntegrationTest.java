@@ -1,23 +1,35 @@
 package com.megan.dataproject.integration;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.megan.dataproject.model.JobStatus;
 import com.megan.dataproject.model.Student;
 import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.CursorPageResponse;
 import com.megan.dataproject.payload.ExportResponse;
+import com.megan.dataproject.payload.ScoreStats;
+import com.megan.dataproject.repository.JobRecordRepository;
+import com.megan.dataproject.repository.StudentFilter;
 import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentView;
 import com.megan.dataproject.service.*;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -49,6 +61,21 @@ class DataProcessingIntegrationTest {
     @Autowired
     private StudentRepository studentRepository;
 
+    @Autowired
+    private ScoreStatsService scoreStatsService;
+
+    @Autowired
+    private StudentLookupService studentLookupService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TieredJobStore jobStore;
+
+    @Autowired
+    private JobRecordRepository jobRecordRepository;
+
     private static String generatedExcelPath;
     private static String generatedCsvPath;
 
@@ -145,7 +172,7 @@ class DataProcessingIntegrationTest {
         Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
 
         // When
-        Page<Student> page = reportService.getStudents(null, null, PageRequest.of(0, 20));
+        Page<StudentView> page = reportService.getStudents(new StudentFilter(), PageRequest.of(0, 20));
 
         // Then
         assertThat(page.getContent()).hasSize(20);
@@ -161,10 +188,11 @@ class DataProcessingIntegrationTest {
         Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
 
         // When
-        Page<Student> page = reportService.getStudents(null, StudentClass.Class1, PageRequest.of(0, 100));
+        Page<StudentView> page = reportService.getStudents(
+                StudentFilter.of(null, StudentClass.Class1), PageRequest.of(0, 100));
 
         // Then
-        assertThat(page.getContent()).allMatch(s -> s.getStudentClass() == StudentClass.Class1);
+        assertThat(page.getContent()).allMatch(s -> s.studentClass() == StudentClass.Class1);
     }
 
     @Test
@@ -175,11 +203,11 @@ class DataProcessingIntegrationTest {
         Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
 
         // When
-        Page<Student> page = reportService.getStudents(1L, null, PageRequest.of(0, 10));
+        Page<StudentView> page = reportService.getStudents(StudentFilter.of(1L, null), PageRequest.of(0, 10));
 
         // Then
         assertThat(page.getContent()).hasSize(1);
-        assertThat(page.getContent().get(0).getStudentId()).isEqualTo(1L);
+        assertThat(page.getContent().get(0).studentId()).isEqualTo(1L);
     }
 
     @Test
@@ -190,7 +218,7 @@ class DataProcessingIntegrationTest {
         Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
 
         // When
-        ExportResponse response = reportService.exportToCsv(null, null);
+        ExportResponse response = reportService.exportToCsv(new StudentFilter(), false);
 
         // Then
         assertThat(response.getFileName()).isEqualTo("students_report.csv");
@@ -208,7 +236,7 @@ class DataProcessingIntegrationTest {
         Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
 
         // When
-        ExportResponse response = reportService.exportToExcel(null, null);
+        ExportResponse response = reportService.exportToExcel(new StudentFilter(), false);
 
         // Then
         assertThat(response.getFileName()).isEqualTo("students_report.xlsx");
@@ -223,7 +251,7 @@ class DataProcessingIntegrationTest {
         Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
 
         // When
-        ExportResponse response = reportService.exportToPdf(null, null);
+        ExportResponse response = reportService.exportToPdf(new StudentFilter(), false);
 
         // Then
         assertThat(response.getFileName()).isEqualTo("students_report.pdf");
@@ -249,4 +277,184 @@ class DataProcessingIntegrationTest {
             assertThat(jobInfo.getProgress()).isEqualTo(100);
         });
     }
+
+    @Test
+    @Order(11)
+    @DisplayName("Integration: Should page report as slices without totals")
+    void shouldPageReportAsSlices() {
+        // Given
+        Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
+
+        // When
+        Slice<StudentView> first = reportService.getStudentSlice(new StudentFilter(), PageRequest.of(0, 20));
+        Slice<StudentView> last = reportService.getStudentSlice(new StudentFilter(), PageRequest.of(4, 20));
+
+        // Then
+        assertThat(first.getContent()).hasSize(20);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(last.getContent()).hasSize(20);
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test
+    @Order(12)
+    @DisplayName("Integration: Should walk every row with keyset cursors")
+    void shouldWalkReportWithKeysetCursors() {
+        // Given
+        Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
+
+        // When - walk forward by score (many ties, so student_id breaks them)
+        List<Long> seen = new ArrayList<>();
+        String cursor = null;
+        CursorPageResponse<StudentView> page;
+        do {
+            page = reportService.getStudentsByCursor(new StudentFilter(), cursor, 30, "score", "desc");
+            page.getContent().forEach(s -> seen.add(s.studentId()));
+            cursor = page.getNextCursor();
+        } while (page.isHasNext());
+
+        // Then - every row exactly once
+        assertThat(seen).hasSize(100).doesNotHaveDuplicates();
+
+        // And stepping back from the last page returns the rows before it
+        CursorPageResponse<StudentView> previous = reportService.getStudentsByCursor(
+                new StudentFilter(), page.getPreviousCursor(), 30, "score", "desc");
+        assertThat(previous.getContent()).extracting(StudentView::studentId)
+                .containsExactlyElementsOf(seen.subList(60, 90));
+    }
+
+    @Test
+    @Order(13)
+    @DisplayName("Integration: Should search report by case-insensitive name prefix")
+    void shouldSearchReportByNamePrefix() {
+        // Given
+        Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
+        String prefix = studentRepository.findAll().get(0).getLastName().substring(0, 2).toUpperCase();
+
+        // When
+        Page<StudentView> page = reportService.getStudents(
+                StudentFilter.builder().name(prefix).build(), PageRequest.of(0, 100));
+
+        // Then
+        assertThat(page.getContent()).isNotEmpty();
+        assertThat(page.getContent()).allMatch(s ->
+                s.firstName().toUpperCase().startsWith(prefix) || s.lastName().toUpperCase().startsWith(prefix));
+        assertThat(page.getTotalElements()).isEqualTo(page.getContent().size());
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("Integration: Should combine class list, score and DOB ranges")
+    void shouldCombineRangeFilters() throws Exception {
+        // Given - DB scores are 70..90 after the +10 and +5 bumps
+        Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
+        StudentFilter filter = StudentFilter.builder()
+                .studentClasses(List.of(StudentClass.Class1, StudentClass.Class3))
+                .minScore(75)
+                .maxScore(85)
+                .dobFrom(LocalDate.of(2003, 1, 1))
+                .build();
+
+        // When
+        Page<StudentView> page = reportService.getStudents(filter, PageRequest.of(0, 100));
+        ExportResponse export = reportService.exportToCsv(filter, true);
+
+        // Then
+        assertThat(page.getContent()).allMatch(s ->
+                (s.studentClass() == StudentClass.Class1 || s.studentClass() == StudentClass.Class3)
+                        && s.score() >= 75 && s.score() <= 85
+                        && !s.dob().isBefore(LocalDate.of(2003, 1, 1)));
+
+        String csvContent = new String(Base64.getDecoder().decode(export.getData()));
+        assertThat(csvContent.split("\n")).hasSize((int) page.getTotalElements() + 1);
+    }
+
+    @Test
+    @Order(15)
+    @DisplayName("Integration: Should serve score statistics refreshed by the upload job")
+    void shouldServeScoreStatistics() {
+        // Given
+        Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
+
+        // When
+        Map<String, ScoreStats> stats = scoreStatsService.getStatsByClass();
+
+        // Then - DB scores are 70..90
+        ScoreStats total = stats.get("total");
+        assertThat(total.getCount()).isEqualTo(studentRepository.count());
+        assertThat(total.getMin()).isGreaterThanOrEqualTo(70);
+        assertThat(total.getMax()).isLessThanOrEqualTo(90);
+        assertThat(total.getMean()).isBetween(70.0, 90.0);
+        long perClass = stats.entrySet().stream()
+                .filter(e -> !e.getKey().equals("total"))
+                .mapToLong(e -> e.getValue().getCount())
+                .sum();
+        assertThat(perClass).isEqualTo(total.getCount());
+    }
+
+    @Test
+    @Order(16)
+    @DisplayName("Integration: Should bulk look up ids in request order with missing ids reported")
+    void shouldBulkLookUpStudents() throws Exception {
+        // Given
+        Assumptions.assumeTrue(studentRepository.count() > 0, "Database must have records");
+        long maxId = studentRepository.findMaxStudentId();
+        long minId = studentRepository.findMinStudentId();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        studentLookupService.writeLookup(new long[]{maxId, -1L, minId}, out);
+
+        // Then
+        JsonNode data = objectMapper.readTree(out.toByteArray()).get("data");
+        assertThat(data.get("students")).extracting(node -> node.get("studentId").asLong())
+                .containsExactly(maxId, minId);
+        assertThat(data.get("missingIds")).extracting(JsonNode::asLong).containsExactly(-1L);
+    }
+
+    @Test
+    @Order(17)
+    @DisplayName("Integration: Should persist job status to the jobs table")
+    void shouldPersistJobStatus() {
+        // Given
+        String jobId = jobService.createJob();
+        jobService.updateProgress(jobId, 10000, 0);
+
+        // When
+        jobStore.flush();
+        jobService.updateStatus(jobId, JobStatus.COMPLETED, "done");
+
+        // Then
+        assertThat(jobRecordRepository.findById(jobId)).hasValueSatisfying(record -> {
+            assertThat(record.getStatus()).isEqualTo(JobStatus.COMPLETED);
+            assertThat(record.getProcessedCount()).isEqualTo(10000);
+        });
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("Integration: Should match _ and % in a name prefix literally")
+    void shouldMatchLikeWildcardsLiterally() {
+        // Given - ids far above the generated ones; the "x" twins would match if _ or % were wildcards
+        List<Student> students = List.of(
+                new Student(900_000_001L, "Ann", "O_Brien", LocalDate.of(2004, 1, 1), StudentClass.Class1, 80),
+                new Student(900_000_002L, "Ann", "OxBrien", LocalDate.of(2004, 1, 1), StudentClass.Class1, 80),
+                new Student(900_000_003L, "Pct%Off", "Lee", LocalDate.of(2004, 1, 1), StudentClass.Class1, 80),
+                new Student(900_000_004L, "PctxOff", "Lee", LocalDate.of(2004, 1, 1), StudentClass.Class1, 80));
+        studentRepository.saveAll(students);
+
+        try {
+            // When
+            Page<StudentView> underscore = reportService.getStudents(
+                    StudentFilter.builder().name("o_b").build(), PageRequest.of(0, 100));
+            Page<StudentView> percent = reportService.getStudents(
+                    StudentFilter.builder().name("PCT%").build(), PageRequest.of(0, 100));
+
+            // Then
+            assertThat(underscore.getContent()).extracting(StudentView::studentId).containsExactly(900_000_001L);
+            assertThat(percent.getContent()).extracting(StudentView::studentId).containsExactly(900_000_003L);
+        } finally {
+            studentRepository.deleteAll(students);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package com.megan.dataproject.model;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The schema Hibernate generates for the job enum columns, against H2
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class EnumNameConverterTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    @DisplayName("Should store job enums as plain text a new constant can be written to")
+    void shouldNotConstrainEnumColumns() {
+        // When - values no current constant has, as a newer node might write
+        jdbcTemplate.update("INSERT INTO jobs(job_id, status, progress, processed_count, total_count) "
+                + "VALUES ('job-1', 'PAUSED', 0, 0, 0)");
+        jdbcTemplate.update("INSERT INTO job_queue(job_id, job_type, spec, state, attempts, cancel_requested) "
+                + "VALUES ('job-2', 'EXPORT', '{}', 'QUEUED', 0, false)");
+
+        // Then
+        assertThat(jdbcTemplate.queryForObject("SELECT status FROM jobs WHERE job_id = 'job-1'", String.class))
+                .isEqualTo("PAUSED");
+        assertThat(new EnumNameConverter.JobStatusConverter().convertToEntityAttribute("CANCELLED"))
+                .isEqualTo(JobStatus.CANCELLED);
+        assertThat(new EnumNameConverter.JobTypeConverter().convertToDatabaseColumn(JobType.PIPELINE))
+                .isEqualTo("PIPELINE");
+    }
+}
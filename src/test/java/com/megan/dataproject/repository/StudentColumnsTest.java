@@ -0,0 +1,122 @@
+package com.megan.dataproject.repository;
+
+import com.megan.dataproject.model.StudentClass;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StudentColumnsTest {
+
+    private StudentColumns columns;
+
+    @BeforeEach
+    void setUp() {
+        columns = StudentColumns.of(List.of(
+                student(1L, "John", "Doe", StudentClass.Class1, 85),
+                student(2L, "Jane", "Smith", StudentClass.Class2, 90),
+                student(3L, "Bob", "Johnson", StudentClass.Class1, 75),
+                student(4L, "Alice", "Smith", StudentClass.Class3, 85)
+        ));
+    }
+
+    private StudentView student(Long id, String firstName, String lastName, StudentClass studentClass, Integer score) {
+        return new StudentView(id, firstName, lastName, LocalDate.of(2005, 1, id.intValue()), studentClass, score);
+    }
+
+    @Test
+    @DisplayName("Should round-trip rows in studentId order")
+    void shouldReturnRowsInIdOrder() {
+        // When
+        List<StudentView> rows = columns.find(new StudentFilter(), Sort.unsorted(), 0, 10);
+
+        // Then
+        assertThat(rows).extracting(StudentView::studentId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(rows.get(1)).isEqualTo(student(2L, "Jane", "Smith", StudentClass.Class2, 90));
+    }
+
+    @Test
+    @DisplayName("Should apply class, score and name prefix filters")
+    void shouldApplyFilters() {
+        // Given
+        StudentFilter filter = StudentFilter.builder()
+                .studentClasses(List.of(StudentClass.Class1, StudentClass.Class3))
+                .minScore(80)
+                .build();
+        StudentFilter byName = StudentFilter.builder().name("JOHN").build();
+
+        // When / Then
+        assertThat(columns.find(filter, Sort.unsorted(), 0, 10))
+                .extracting(StudentView::studentId).containsExactly(1L, 4L);
+        assertThat(columns.count(filter)).isEqualTo(2);
+        // "john" matches first name John and last name Johnson
+        assertThat(columns.find(byName, Sort.unsorted(), 0, 10))
+                .extracting(StudentView::studentId).containsExactly(1L, 3L);
+    }
+
+    @Test
+    @DisplayName("Should sort by score descending with id tiebreak and page by offset")
+    void shouldSortAndPage() {
+        // When
+        List<StudentView> page = columns.find(new StudentFilter(), Sort.by(Sort.Direction.DESC, "score"), 1, 2);
+
+        // Then - order is 2(90), 4(85), 1(85), 3(75)
+        assertThat(page).extracting(StudentView::studentId).containsExactly(4L, 1L);
+    }
+
+    @Test
+    @DisplayName("Should sort nulls after every value and names by code point, as the database pages do")
+    void shouldSortLikeTheDatabase() {
+        // Given - 5 and 6 have no score or first name; "bob" sorts after "Jane" by code point
+        StudentColumns withNulls = columns.merge(List.of(
+                student(5L, null, "Adams", StudentClass.Class1, null),
+                student(6L, "bob", "Brown", StudentClass.Class2, null)));
+
+        // When / Then - nulls last ascending and first descending, ties by id in the sort direction
+        assertThat(withNulls.find(new StudentFilter(), Sort.by(Sort.Direction.ASC, "score"), 0, 10))
+                .extracting(StudentView::studentId).containsExactly(3L, 1L, 4L, 2L, 5L, 6L);
+        assertThat(withNulls.find(new StudentFilter(), Sort.by(Sort.Direction.DESC, "score"), 0, 10))
+                .extracting(StudentView::studentId).containsExactly(6L, 5L, 2L, 4L, 1L, 3L);
+        assertThat(withNulls.find(new StudentFilter(), Sort.by(Sort.Direction.ASC, "firstName"), 0, 10))
+                .extracting(StudentView::firstName).containsExactly("Alice", "Bob", "Jane", "John", "bob", null);
+    }
+
+    @Test
+    @DisplayName("Should count score ranges per class and page filtered rows in sort order")
+    void shouldCountAndPageFilteredRows() {
+        // Given
+        StudentColumns withUnscored = columns.merge(List.of(student(5L, "Eve", "Adams", StudentClass.Class1, null)));
+        StudentFilter class1 = StudentFilter.builder().studentClass(StudentClass.Class1).maxScore(80).build();
+        StudentFilter scored = StudentFilter.builder().minScore(80).maxScore(90).build();
+        StudentFilter atLeast85 = StudentFilter.builder().minScore(85).build();
+
+        // When / Then - the unscored row never matches a score range
+        assertThat(withUnscored.count(class1)).isEqualTo(1);
+        assertThat(withUnscored.count(scored)).isEqualTo(3);
+        assertThat(withUnscored.find(atLeast85, Sort.by(Sort.Direction.ASC, "lastName"), 1, 5))
+                .extracting(StudentView::studentId).containsExactly(2L, 4L);
+    }
+
+    @Test
+    @DisplayName("Should merge new rows and replace existing ids")
+    void shouldMergeRows() {
+        // When
+        StudentColumns merged = columns.merge(List.of(
+                student(2L, "Jane", "Smith", StudentClass.Class2, 95),
+                student(5L, "Eve", "Adams", StudentClass.Class2, 60)
+        ));
+
+        // Then
+        assertThat(merged.size()).isEqualTo(5);
+        assertThat(merged.count(StudentClass.Class2)).isEqualTo(2);
+        assertThat(merged.find(StudentFilter.builder().studentIds(List.of(2L, 5L)).build(), Sort.unsorted(), 0, 10))
+                .extracting(StudentView::score).containsExactly(95, 60);
+        // The original snapshot is untouched
+        assertThat(columns.size()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,173 @@
+package com.megan.dataproject.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ArtifactServiceTest {
+
+    @Mock
+    private FileStorageService storageService;
+
+    @Mock
+    private ClusterJobQueue clusterJobQueue;
+
+    @InjectMocks
+    private ArtifactService artifactService;
+
+    @TempDir
+    Path tempDir;
+
+    private Path uploadDir;
+    private Path outputDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        uploadDir = Files.createDirectory(tempDir.resolve("tmp"));
+        outputDir = Files.createDirectory(tempDir.resolve("out"));
+        ReflectionTestUtils.setField(artifactService, "tempDirectory", uploadDir);
+        ReflectionTestUtils.setField(artifactService, "outputRetention", Duration.ofDays(3));
+        ReflectionTestUtils.setField(artifactService, "outputQuota", DataSize.ofBytes(15));
+        ReflectionTestUtils.setField(artifactService, "tempMaxAge", Duration.ofHours(6));
+        ReflectionTestUtils.setField(artifactService, "activeGrace", Duration.ofMinutes(15));
+    }
+
+    private Path file(Path directory, String name, int bytes, Duration age) throws Exception {
+        Path path = Files.write(directory.resolve(name), new byte[bytes]);
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+        return path;
+    }
+
+    @Test
+    @DisplayName("Should delete temp inputs when the job is released")
+    void shouldDeleteInputsOnRelease() throws Exception {
+        // Given
+        Path input = file(uploadDir, "upload_csv_1.csv", 10, Duration.ZERO);
+        artifactService.registerInput("job-1", input);
+
+        // When
+        artifactService.release("job-1");
+
+        // Then
+        assertThat(input).doesNotExist();
+        assertThat(artifactService.getStatus()).containsEntry("bytesReclaimed", 10L);
+    }
+
+    @Test
+    @DisplayName("Should sweep orphaned temp inputs but keep those of running jobs")
+    void shouldSweepOrphanedInputs() throws Exception {
+        // Given
+        when(storageService.getBaseDirectory()).thenReturn(outputDir);
+        Path orphan = file(uploadDir, "upload_raw_1.xlsx", 10, Duration.ofDays(1));
+        Path running = file(uploadDir, "upload_raw_2.xlsx", 10, Duration.ofDays(1));
+        Path recent = file(uploadDir, "upload_raw_3.xlsx", 10, Duration.ofMinutes(5));
+        artifactService.registerInput("job-2", running);
+
+        // When
+        ArtifactService.SweepResult result = artifactService.sweep();
+
+        // Then
+        assertThat(orphan).doesNotExist();
+        assertThat(running).exists();
+        assertThat(recent).exists();
+        assertThat(result.files()).isEqualTo(1);
+        assertThat(result.bytes()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should reclaim outputs past retention, then oldest first down to the quota")
+    void shouldReclaimOutputsOldestFirst() throws Exception {
+        // Given - quota 15 bytes, 40 bytes of outputs
+        when(storageService.getBaseDirectory()).thenReturn(outputDir);
+        Path expired = file(outputDir, "ProcessedData_1.csv", 10, Duration.ofDays(4));
+        Path oldest = file(outputDir, "ProcessedData_2.csv", 10, Duration.ofHours(3));
+        Path writing = file(outputDir, "StudentData_3.xlsx", 10, Duration.ofHours(2));
+        Path newest = file(outputDir, "ProcessedData_4.csv", 10, Duration.ofHours(1));
+        Path foreign = file(outputDir, "notes.txt", 10, Duration.ofDays(30));
+        artifactService.registerOutput("job-3", writing);
+
+        // When
+        ArtifactService.SweepResult result = artifactService.sweep();
+
+        // Then - the running job's file is skipped even though it is older than the newest
+        assertThat(expired).doesNotExist();
+        assertThat(oldest).doesNotExist();
+        assertThat(writing).exists();
+        assertThat(newest).doesNotExist();
+        assertThat(foreign).exists();
+        assertThat(result.bytes()).isEqualTo(30);
+        assertThat(result.outputBytes()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("Should keep temp inputs of jobs queued or claimed on other nodes")
+    void shouldKeepInputsOfClusterJobs() throws Exception {
+        // Given - job-2 is held by another node, so only job_queue knows its input
+        when(storageService.getBaseDirectory()).thenReturn(outputDir);
+        Path orphan = file(uploadDir, "upload_raw_1.xlsx", 10, Duration.ofDays(1));
+        Path remote = file(uploadDir, "upload_csv_2.csv", 10, Duration.ofDays(1));
+        when(clusterJobQueue.inputPaths()).thenReturn(Set.of(remote.toAbsolutePath().normalize()));
+
+        // When
+        ArtifactService.SweepResult result = artifactService.sweep();
+
+        // Then
+        assertThat(orphan).doesNotExist();
+        assertThat(remote).exists();
+        assertThat(result.files()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should keep every temp input when the shared queue can't be read")
+    void shouldKeepInputsWhenQueueUnreadable() throws Exception {
+        // Given
+        when(storageService.getBaseDirectory()).thenReturn(outputDir);
+        Path orphan = file(uploadDir, "upload_raw_1.xlsx", 10, Duration.ofDays(1));
+        when(clusterJobQueue.inputPaths()).thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        // When
+        ArtifactService.SweepResult result = artifactService.sweep();
+
+        // Then
+        assertThat(orphan).exists();
+        assertThat(result.files()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should not reclaim outputs still being written, even over the quota")
+    void shouldKeepRecentlyWrittenOutputs() throws Exception {
+        // Given - quota 15 bytes; the recent file may be another node's job, which this node doesn't track
+        when(storageService.getBaseDirectory()).thenReturn(outputDir);
+        Path older = file(outputDir, "ProcessedData_1.csv", 10, Duration.ofHours(1));
+        Path writing = file(outputDir, "StudentData_2.xlsx", 10, Duration.ofMinutes(1));
+        Path justStarted = file(outputDir, "ProcessedData_3.csv", 10, Duration.ZERO);
+
+        // When
+        ArtifactService.SweepResult result = artifactService.sweep();
+
+        // Then - only the older file goes, leaving the quota exceeded until the others settle
+        assertThat(older).doesNotExist();
+        assertThat(writing).exists();
+        assertThat(justStarted).exists();
+        assertThat(result.outputBytes()).isEqualTo(20);
+    }
+}
@@ -0,0 +1,216 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.payload.PipelineRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs the job_queue SQL against H2, so what works here needs nothing Postgres-only
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import(ClusterJobQueue.class)
+@TestPropertySource(properties = "app.cluster.enabled=true")
+// Claims lock rows in their own transactions; a test-wide one would hide that
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ClusterJobQueueTest {
+
+    @Autowired
+    private ClusterJobQueue queue;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private static final Instant LEASE = Instant.now().plusSeconds(30);
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM job_queue");
+        jdbcTemplate.update("DELETE FROM cluster_nodes");
+    }
+
+    private List<String> ids(List<ClusterJobQueue.ClaimedJob> claimed) {
+        return claimed.stream().map(ClusterJobQueue.ClaimedJob::jobId).toList();
+    }
+
+    @Test
+    @DisplayName("Should not wait for, or hand out, a row another node is claiming")
+    void shouldSkipRowsAnotherNodeIsClaiming() throws Exception {
+        // Given
+        queue.enqueue("job-1", JobSpec.upload("/shared/job-1.csv"));
+        queue.enqueue("job-2", JobSpec.upload("/shared/job-2.csv"));
+        CountDownLatch firstClaimed = new CountDownLatch(1);
+        CountDownLatch secondDone = new CountDownLatch(1);
+
+        // When - node-a's claim stays uncommitted while node-b claims
+        CompletableFuture<List<ClusterJobQueue.ClaimedJob>> first = CompletableFuture.supplyAsync(() ->
+                transactionTemplate.execute(status -> {
+                    List<ClusterJobQueue.ClaimedJob> claimed = queue.claim(JobType.UPLOAD, 1, "node-a", LEASE);
+                    firstClaimed.countDown();
+                    try {
+                        secondDone.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return claimed;
+                }));
+        assertThat(firstClaimed.await(10, TimeUnit.SECONDS)).isTrue();
+        List<ClusterJobQueue.ClaimedJob> second = CompletableFuture
+                .supplyAsync(() -> queue.claim(JobType.UPLOAD, 2, "node-b", LEASE))
+                .get(10, TimeUnit.SECONDS);
+        secondDone.countDown();
+        List<ClusterJobQueue.ClaimedJob> firstJobs = first.get(10, TimeUnit.SECONDS);
+        List<ClusterJobQueue.ClaimedJob> afterCommit = queue.claim(JobType.UPLOAD, 2, "node-b", LEASE);
+
+        // Then - node-b returned at once without job-1. Postgres hands it job-2 right away; H2 skips
+        // the whole index range while any row in it is locked, so there job-2 comes with the next claim.
+        assertThat(ids(firstJobs)).containsExactly("job-1");
+        assertThat(ids(second)).doesNotContain("job-1");
+        assertThat(ids(second).size() + ids(afterCommit).size()).isEqualTo(1);
+        assertThat(afterCommit).allSatisfy(job -> assertThat(job.spec()).isEqualTo(JobSpec.upload("/shared/job-2.csv")));
+        assertThat(queue.queued(JobType.UPLOAD)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should claim every job exactly once when nodes claim at the same time")
+    void shouldClaimEachJobOnce() throws Exception {
+        // Given
+        int jobs = 40;
+        for (int i = 0; i < jobs; i++) {
+            queue.enqueue("job-" + i, JobSpec.generate(100));
+        }
+
+        // When - four nodes claim one job at a time until the queue is empty
+        List<CompletableFuture<List<String>>> nodes = new ArrayList<>();
+        for (int node = 0; node < 4; node++) {
+            String nodeId = "node-" + node;
+            nodes.add(CompletableFuture.supplyAsync(() -> {
+                List<String> claimed = new ArrayList<>();
+                while (queue.queued(JobType.GENERATE) > 0) {
+                    claimed.addAll(ids(queue.claim(JobType.GENERATE, 1, nodeId, LEASE)));
+                }
+                return claimed;
+            }));
+        }
+        List<String> claimed = new ArrayList<>();
+        for (CompletableFuture<List<String>> node : nodes) {
+            claimed.addAll(node.get(30, TimeUnit.SECONDS));
+        }
+
+        // Then
+        assertThat(claimed).hasSize(jobs).doesNotHaveDuplicates();
+    }
+
+    @Test
+    @DisplayName("Should extend leases and report cancel requests at the heartbeat")
+    void shouldHeartbeatOwnedJobs() {
+        // Given - job-1 is claimed, job-2 and job-3 still queued
+        queue.enqueue("job-1", JobSpec.generate(100));
+        queue.enqueue("job-2", JobSpec.generate(100));
+        queue.enqueue("job-3", JobSpec.generate(100));
+        queue.claim(JobType.GENERATE, 1, "node-a", LEASE);
+
+        // When
+        assertThat(queue.queuePosition("job-3")).contains(2);
+        assertThat(queue.queuePosition("job-1")).isEmpty();
+        Optional<JobSpec> cancelledQueued = queue.cancel("job-2");
+        Optional<JobSpec> cancelledClaimed = queue.cancel("job-1");
+        List<ClusterJobQueue.OwnedJob> owned = queue.heartbeat("node-a", Instant.now(), LEASE.plusSeconds(60));
+
+        // Then - the queued job is gone, the claimed one flagged for its owner
+        assertThat(cancelledQueued).contains(JobSpec.generate(100));
+        assertThat(cancelledClaimed).isEmpty();
+        assertThat(owned).containsExactly(new ClusterJobQueue.OwnedJob("job-1", true));
+        assertThat(queue.queuePosition("job-3")).contains(1);
+        assertThat(queue.liveNodes(Instant.now().minusSeconds(30))).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should requeue a job whose lease ran out and give up after the last attempt")
+    void shouldRequeueExpiredLease() {
+        // Given - the lease is already over
+        queue.enqueue("job-1", JobSpec.generate(100));
+        queue.claim(JobType.GENERATE, 1, "node-a", Instant.now().minusSeconds(1));
+
+        // When
+        ClusterJobQueue.Reaped first = queue.reapExpired(Instant.now(), 2);
+        queue.claim(JobType.GENERATE, 1, "node-b", Instant.now().minusSeconds(1));
+        ClusterJobQueue.Reaped second = queue.reapExpired(Instant.now(), 2);
+
+        // Then
+        assertThat(first.requeued()).containsExactly("job-1");
+        assertThat(second.requeued()).isEmpty();
+        assertThat(second.abandoned()).containsExactly("job-1");
+        assertThat(queue.queued(JobType.GENERATE)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should interrupt started uploads and pipelines but requeue a started generate")
+    void shouldNotRequeueStartedUploads() {
+        // Given - all three started before their node went silent
+        PipelineRequest pipeline = new PipelineRequest(100, List.of(JobType.GENERATE, JobType.UPLOAD), Set.of());
+        queue.enqueue("upload-1", JobSpec.upload("/shared/upload-1.csv"));
+        queue.enqueue("pipeline-1", JobSpec.pipeline(pipeline));
+        queue.enqueue("generate-1", JobSpec.generate(100));
+        Instant expired = Instant.now().minusSeconds(1);
+        for (JobType type : List.of(JobType.UPLOAD, JobType.PIPELINE, JobType.GENERATE)) {
+            queue.claim(type, 1, "node-a", expired);
+        }
+        List.of("upload-1", "pipeline-1", "generate-1").forEach(jobId -> queue.markStarted(jobId, "node-a"));
+
+        // When
+        ClusterJobQueue.Reaped reaped = queue.reapExpired(Instant.now(), 3);
+
+        // Then - the generate starts over, and its start mark is cleared for the next claim
+        assertThat(reaped.interrupted()).containsExactlyInAnyOrder("upload-1", "pipeline-1");
+        assertThat(reaped.requeued()).containsExactly("generate-1");
+        assertThat(queue.queued(JobType.UPLOAD)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM job_queue WHERE started_at IS NOT NULL",
+                Integer.class)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should list the inputs of queued and claimed jobs for the artifact sweeper")
+    void shouldListInputPaths() {
+        // Given
+        queue.enqueue("upload-1", JobSpec.upload("/shared/upload-1.csv"));
+        queue.enqueue("upload-2", JobSpec.upload("/shared/upload-2.csv"));
+        queue.enqueue("generate-1", JobSpec.generate(100));
+        queue.claim(JobType.UPLOAD, 1, "node-a", LEASE);
+
+        // When
+        Set<Path> inputs = queue.inputPaths();
+
+        // Then
+        assertThat(inputs).containsExactlyInAnyOrder(Path.of("/shared/upload-1.csv"), Path.of("/shared/upload-2.csv"));
+    }
+}
@@ -1,6 +1,8 @@
 package com.megan.dataproject.service;
 
 import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.sketch.DataProfile;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -9,13 +11,19 @@ import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
@@ -30,6 +38,22 @@ class CsvToDatabaseServiceTest {
     @Mock
     private JobService jobService;
 
+    @Mock
+    private StudentCountService studentCountService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private DataVersionService dataVersionService;
+
+    @Mock
+    private StudentCache studentCache;
+
+    // Real template over a mock manager so batch callbacks actually run
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private CsvToDatabaseService csvToDatabaseService;
 
@@ -38,9 +62,15 @@ class CsvToDatabaseServiceTest {
 
     private String csvFilePath;
 
+    private final CancellationToken cancellation = new CancellationToken();
+
+    private final JobTelemetry telemetry = new JobTelemetry();
+
     @BeforeEach
     void setUp() throws Exception {
         csvFilePath = tempDir.resolve("test_input.csv").toString();
+        when(jobService.cancellationToken(any())).thenReturn(cancellation);
+        when(jobService.telemetry(any())).thenReturn(telemetry);
     }
 
     private void createTestCsvFile(int recordCount) throws Exception {
@@ -166,6 +196,94 @@ class CsvToDatabaseServiceTest {
         verify(jobService).updateStatus(eq(jobId), eq(JobStatus.FAILED), any());
     }
 
+    @Test
+    @DisplayName("Should apply per-class count delta with each batch")
+    void shouldApplyCountDeltaWithEachBatch() throws Exception {
+        // Given
+        String jobId = "test-job-123";
+        Files.writeString(Path.of(csvFilePath), """
+                studentId,firstName,lastName,DOB,class,score
+                1,John,Doe,2005-01-02,Class1,70
+                2,Jane,Roe,2005-01-03,Class2,71
+                3,Jack,Poe,2005-01-04,Class1,72
+                """);
+
+        ArgumentCaptor<Map<StudentClass, Long>> deltaCaptor = ArgumentCaptor.forClass(Map.class);
+
+        // When
+        csvToDatabaseService.uploadCsvToDatabase(jobId, csvFilePath);
+
+        // Then
+        verify(studentCountService).applyDelta(deltaCaptor.capture());
+        assertThat(deltaCaptor.getValue())
+                .containsEntry(StudentClass.Class1, 2L)
+                .containsEntry(StudentClass.Class2, 1L);
+        verify(eventPublisher).publishEvent(new StudentsIngestedEvent(jobId, 1L, 3L, 3L));
+        verify(studentCache).invalidateRange(1L, 3L);
+        verify(dataVersionService).bump();
+    }
+
+    @Test
+    @DisplayName("Should insert each class into its own partition when partitioned")
+    void shouldRouteRowsToPartitions() throws Exception {
+        // Given
+        ReflectionTestUtils.setField(csvToDatabaseService, "partitioned", true);
+        String jobId = "test-job-123";
+        Files.writeString(Path.of(csvFilePath), """
+                studentId,firstName,lastName,DOB,class,score
+                1,John,Doe,2005-01-02,Class1,70
+                2,Jane,Roe,2005-01-03,Class2,71
+                3,Jack,Poe,2005-01-04,Class1,72
+                """);
+
+        ArgumentCaptor<List<Object[]>> class1Rows = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<Object[]>> ids = ArgumentCaptor.forClass(List.class);
+
+        // When
+        csvToDatabaseService.uploadCsvToDatabase(jobId, csvFilePath);
+
+        // Then
+        verify(jdbcTemplate).batchUpdate(eq(CsvToDatabaseService.partitionSql(StudentClass.Class1)), class1Rows.capture());
+        verify(jdbcTemplate).batchUpdate(eq(CsvToDatabaseService.partitionSql(StudentClass.Class2)), anyList());
+        // Every id of the batch is claimed in student_ids, which keeps ids unique across partitions
+        verify(jdbcTemplate).batchUpdate(eq(CsvToDatabaseService.STUDENT_IDS_SQL), ids.capture());
+        assertThat(ids.getValue()).extracting(values -> values[0]).containsExactly(1L, 2L, 3L);
+        // One transaction for the whole batch: one count delta, one invalidation, one version bump
+        verify(transactionTemplate).executeWithoutResult(any());
+        verify(studentCountService).applyDelta(Map.of(StudentClass.Class1, 2L, StudentClass.Class2, 1L));
+        verify(studentCache).invalidateRange(1L, 3L);
+        verify(dataVersionService).bump();
+        assertThat(class1Rows.getValue()).extracting(values -> values[0]).containsExactly(1L, 3L);
+        verify(jobService).updateStatus(jobId, JobStatus.COMPLETED, null);
+    }
+
+    @Test
+    @DisplayName("Should attach a profile of the inserted rows to the job")
+    void shouldAttachProfileToJob() throws Exception {
+        // Given
+        String jobId = "test-job-123";
+        Files.writeString(Path.of(csvFilePath), """
+                studentId,firstName,lastName,DOB,class,score
+                1,John,Doe,2005-01-02,Class1,70
+                2,Jane,Doe,2005-01-03,Class2,80
+                3,John,Poe,2005-01-04,Class1,90
+                """);
+
+        ArgumentCaptor<DataProfile> profileCaptor = ArgumentCaptor.forClass(DataProfile.class);
+
+        // When
+        csvToDatabaseService.uploadCsvToDatabase(jobId, csvFilePath);
+
+        // Then - scores carry the +5 applied on insert
+        verify(jobService).attachProfile(eq(jobId), profileCaptor.capture());
+        DataProfile profile = profileCaptor.getValue();
+        assertThat(profile.getRowCount()).isEqualTo(3);
+        assertThat(profile.getClassCounts()).containsEntry("Class1", 2L).containsEntry("Class2", 1L);
+        assertThat(profile.getDistinctFirstNames()).isEqualTo(2);
+        assertThat(profile.getScoreStats().getMin()).isEqualTo(75);
+        assertThat(profile.getScoreStats().getPercentiles()).containsEntry("p50", 85);
+    }
+
     @Test
     @DisplayName("Should skip header row")
     void shouldSkipHeaderRow() throws Exception {
@@ -184,4 +302,29 @@ class CsvToDatabaseServiceTest {
         // Should only have 2 data rows, not 3 (header excluded)
         assertThat(batchCaptor.getValue()).hasSize(2);
     }
+
+    @Test
+    @DisplayName("Should keep committed batches and drop the pending one when cancelled")
+    void shouldDropPendingBatchWhenCancelled() throws Exception {
+        // Given - the cancel arrives while the first batch is being reported
+        String jobId = "test-job-123";
+        StringBuilder csv = new StringBuilder("studentId,firstName,lastName,DOB,class,score\n");
+        for (int i = 1; i <= 15000; i++) {
+            csv.append(i).append(",John,Doe,2005-01-02,Class1,70\n");
+        }
+        Files.writeString(Path.of(csvFilePath), csv.toString());
+        doAnswer(invocation -> {
+            cancellation.cancel();
+            return null;
+        }).when(jobService).updateProgress(eq(jobId), anyLong(), anyLong());
+
+        // When
+        csvToDatabaseService.uploadCsvToDatabase(jobId, csvFilePath);
+
+        // Then - only the first 10,000 rows were inserted
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+        verify(eventPublisher).publishEvent(new StudentsIngestedEvent(jobId, 1L, 10000L, 10000L));
+        verify(jobService).updateStatus(eq(jobId), eq(JobStatus.CANCELLED), any());
+        verify(jobService, never()).updateStatus(eq(jobId), eq(JobStatus.COMPLETED), any());
+    }
 }
@@ -0,0 +1,95 @@
+package com.megan.dataproject.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The shared data_version row against H2; "another node" is a plain update of the same row
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DataVersionService.class)
+@TestPropertySource(properties = "app.cluster.enabled=true")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DataVersionServiceTest {
+
+    @Autowired
+    private DataVersionService dataVersionService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        // Starts the row over, as a restored database would; the next poll must treat that as a change
+        jdbcTemplate.update("DELETE FROM data_version");
+        dataVersionService.pollShared();
+    }
+
+    private void bumpInBatch() {
+        transactionTemplate.executeWithoutResult(status -> dataVersionService.bumpShared());
+    }
+
+    private void bumpOnAnotherNode() {
+        jdbcTemplate.update("UPDATE data_version SET version = version + 1 WHERE name = 'students'");
+    }
+
+    @Test
+    @DisplayName("Should tell this node's own batches from another node's")
+    void shouldIgnoreOwnBumps() {
+        // Given - the first poll seeds the row and takes a baseline
+        assertThat(dataVersionService.pollShared()).isFalse();
+
+        // When / Then
+        bumpInBatch();
+        bumpInBatch();
+        assertThat(dataVersionService.pollShared()).isFalse();
+        bumpOnAnotherNode();
+        assertThat(dataVersionService.pollShared()).isTrue();
+        bumpInBatch();
+        bumpOnAnotherNode();
+        bumpInBatch();
+        assertThat(dataVersionService.pollShared()).isTrue();
+        assertThat(dataVersionService.pollShared()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should not count a batch that rolled back as its own")
+    void shouldForgetRolledBackBumps() {
+        // Given
+        dataVersionService.pollShared();
+
+        // When - the rolled-back bump frees its version for another node
+        transactionTemplate.executeWithoutResult(status -> {
+            dataVersionService.bumpShared();
+            status.setRollbackOnly();
+        });
+        bumpOnAnotherNode();
+
+        // Then
+        assertThat(dataVersionService.pollShared()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should only bump inside the batch's transaction")
+    void shouldRequireTransaction() {
+        assertThatThrownBy(() -> dataVersionService.bumpShared()).isInstanceOf(IllegalTransactionStateException.class);
+    }
+}
@@ -32,6 +32,9 @@ class ExcelGeneratorServiceTest {
     @Mock
     private JobService jobService;
 
+    @Mock
+    private ArtifactService artifactService;
+
     @InjectMocks
     private ExcelGeneratorService excelGeneratorService;
 
@@ -40,9 +43,15 @@ class ExcelGeneratorServiceTest {
 
     private String testFilePath;
 
+    private final CancellationToken cancellation = new CancellationToken();
+
+    private final JobTelemetry telemetry = new JobTelemetry();
+
     @BeforeEach
     void setUp() {
         testFilePath = tempDir.resolve("test_output.xlsx").toString();
+        when(jobService.cancellationToken(any())).thenReturn(cancellation);
+        when(jobService.telemetry(any())).thenReturn(telemetry);
     }
 
     @Test
@@ -153,4 +162,21 @@ class ExcelGeneratorServiceTest {
         // Then
         verify(jobService).updateStatus(eq(jobId), eq(JobStatus.FAILED), any());
     }
+
+    @Test
+    @DisplayName("Should stop without writing the workbook when cancelled")
+    void shouldStopWhenCancelled() throws Exception {
+        // Given - cancelled while queued
+        String jobId = "test-job-123";
+        when(storageService.getPath(any())).thenReturn(testFilePath);
+        cancellation.cancel();
+
+        // When
+        excelGeneratorService.generateStudentsExcel(jobId, 20000);
+
+        // Then
+        assertThat(Path.of(testFilePath)).doesNotExist();
+        verify(jobService).updateStatus(eq(jobId), eq(JobStatus.CANCELLED), any());
+        verify(jobService, never()).updateStatus(eq(jobId), eq(JobStatus.PROCESSING), any());
+    }
 }
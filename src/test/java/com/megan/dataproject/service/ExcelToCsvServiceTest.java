@@ -1,5 +1,6 @@
 package com.megan.dataproject.service;
 
+import com.megan.dataproject.model.JobPhase;
 import com.megan.dataproject.model.JobStatus;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -33,12 +34,19 @@ class ExcelToCsvServiceTest {
     @Mock
     private JobService jobService;
 
+    @Mock
+    private ArtifactService artifactService;
+
     @InjectMocks
     private ExcelToCsvService excelToCsvService;
 
     @TempDir
     Path tempDir;
 
+    private final CancellationToken cancellation = new CancellationToken();
+
+    private final JobTelemetry telemetry = new JobTelemetry();
+
     private File inputExcelFile;
     private String outputCsvPath;
 
@@ -49,6 +57,8 @@ class ExcelToCsvServiceTest {
         outputCsvPath = tempDir.resolve("test_output.csv").toString();
 
         createTestExcelFile(inputExcelFile);
+        when(jobService.cancellationToken(any())).thenReturn(cancellation);
+        when(jobService.telemetry(any())).thenReturn(telemetry);
     }
 
     private void createTestExcelFile(File file) throws Exception {
@@ -146,6 +156,24 @@ class ExcelToCsvServiceTest {
         verify(jobService).updateStatus(eq(jobId), eq(JobStatus.COMPLETED), eq(outputCsvPath));
     }
 
+    @Test
+    @DisplayName("Should count bytes in and out and time each phase")
+    void shouldRecordTelemetry() throws Exception {
+        // Given
+        String jobId = "test-job-123";
+        when(storageService.getPath(any())).thenReturn(outputCsvPath);
+
+        // When
+        excelToCsvService.convertExceltoCsv(inputExcelFile, jobId);
+
+        // Then
+        JobTelemetry.Metrics metrics = telemetry.snapshot();
+        assertThat(metrics.bytesRead()).isEqualTo(Files.size(inputExcelFile.toPath()));
+        assertThat(metrics.bytesWritten()).isEqualTo(Files.size(Path.of(outputCsvPath)));
+        assertThat(metrics.phaseMillis())
+                .containsKeys(JobPhase.READ, JobPhase.PARSE, JobPhase.TRANSFORM, JobPhase.WRITE);
+    }
+
     @Test
     @DisplayName("Should update job status to FAILED on invalid file")
     void shouldUpdateJobStatusToFailedOnInvalidFile() {
@@ -160,4 +188,20 @@ class ExcelToCsvServiceTest {
         // Then
         verify(jobService).updateStatus(eq(jobId), eq(JobStatus.FAILED), any());
     }
+
+    @Test
+    @DisplayName("Should mark the job CANCELLED and leave no partial CSV")
+    void shouldCancelAndDeletePartialOutput() throws Exception {
+        // Given
+        String jobId = "test-job-123";
+        when(storageService.getPath(any())).thenReturn(outputCsvPath);
+        cancellation.cancel();
+
+        // When
+        excelToCsvService.convertExceltoCsv(inputExcelFile, jobId);
+
+        // Then
+        assertThat(Path.of(outputCsvPath)).doesNotExist();
+        verify(jobService).updateStatus(eq(jobId), eq(JobStatus.CANCELLED), any());
+    }
 }
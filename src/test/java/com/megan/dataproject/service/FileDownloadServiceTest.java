@@ -0,0 +1,152 @@
+package com.megan.dataproject.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileDownloadServiceTest {
+
+    private final FileDownloadService fileDownloadService = new FileDownloadService();
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = tempDir.resolve("ProcessedData_1.csv");
+        Files.writeString(file, "0123456789");
+    }
+
+    @Test
+    @DisplayName("Should serve whole file with validators and Accept-Ranges")
+    void shouldServeWholeFile() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/students/download/job");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader("Accept-Ranges")).isEqualTo("bytes");
+        assertThat(response.getHeader("ETag")).isNotNull();
+        assertThat(response.getHeader("Last-Modified")).isNotNull();
+        assertThat(response.getContentType()).isEqualTo("text/csv");
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    @Test
+    @DisplayName("Should serve partial content for a byte range")
+    void shouldServePartialContent() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/students/download/job");
+        request.addHeader("Range", "bytes=2-5");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes 2-5/10");
+        assertThat(response.getContentAsString()).isEqualTo("2345");
+    }
+
+    @Test
+    @DisplayName("Should serve suffix range")
+    void shouldServeSuffixRange() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/students/download/job");
+        request.addHeader("Range", "bytes=-3");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsString()).isEqualTo("789");
+    }
+
+    @Test
+    @DisplayName("Should reject range past end of file")
+    void shouldRejectUnsatisfiableRange() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/students/download/job");
+        request.addHeader("Range", "bytes=20-30");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader("Content-Range")).isEqualTo("bytes */10");
+    }
+
+    @Test
+    @DisplayName("Should return 304 when ETag matches")
+    void shouldReturnNotModifiedForMatchingETag() throws Exception {
+        // Given - first request to learn the ETag
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        fileDownloadService.serve(file, new MockHttpServletRequest("GET", "/"), first);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("If-None-Match", first.getHeader("ETag"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should ignore Range when If-Range does not match")
+    void shouldIgnoreRangeWhenIfRangeIsStale() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader("Range", "bytes=0-1");
+        request.addHeader("If-Range", "\"stale\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsString()).isEqualTo("0123456789");
+    }
+
+    @Test
+    @DisplayName("Should hand off to sendfile when the connector supports it")
+    void shouldUseSendfileWhenSupported() throws Exception {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setAttribute(FileDownloadService.SENDFILE_SUPPORTED, Boolean.TRUE);
+        request.addHeader("Range", "bytes=4-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        fileDownloadService.serve(file, request, response);
+
+        // Then - body is left to the container
+        assertThat(request.getAttribute(FileDownloadService.SENDFILE_START)).isEqualTo(4L);
+        assertThat(request.getAttribute(FileDownloadService.SENDFILE_END)).isEqualTo(10L);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(response.getContentLengthLong()).isEqualTo(6);
+    }
+}
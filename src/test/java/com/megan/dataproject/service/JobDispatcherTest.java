@@ -0,0 +1,225 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.config.JobSchedulerProperties;
+import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.JobType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JobDispatcherTest {
+
+    @Mock
+    private ClusterJobQueue clusterJobQueue;
+
+    @Mock
+    private JobRunner jobRunner;
+
+    @Mock
+    private JobService jobService;
+
+    @Mock
+    private ArtifactService artifactService;
+
+    @Mock
+    private DataVersionService dataVersionService;
+
+    @Mock
+    private StudentCache studentCache;
+
+    @Mock
+    private StudentColumnStore studentColumnStore;
+
+    // Real scheduler with one running slot; started tasks wait here until the test runs them
+    private final List<Runnable> executor = new ArrayList<>();
+    private final List<String> ran = new ArrayList<>();
+    private JobScheduler jobScheduler;
+    private JobDispatcher dispatcher;
+
+    @TempDir
+    private Path storageDir;
+
+    @BeforeEach
+    void setUp() {
+        // Not enabled, so every job fits
+        ResourceGovernor resourceGovernor = new ResourceGovernor(new FileStorageService(storageDir.toString()));
+        jobScheduler = new JobScheduler(executor::add, executor::add, new JobSchedulerProperties(1,
+                Map.of(JobType.UPLOAD, new JobSchedulerProperties.Limits(1, 5, 1))), resourceGovernor);
+        dispatcher = new JobDispatcher(jobScheduler, clusterJobQueue, jobRunner, jobService, artifactService,
+                resourceGovernor, dataVersionService, studentCache, studentColumnStore);
+        ReflectionTestUtils.setField(dispatcher, "nodeName", "node-a");
+        ReflectionTestUtils.setField(dispatcher, "lease", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+    }
+
+    private void clustered() {
+        when(clusterJobQueue.isEnabled()).thenReturn(true);
+    }
+
+    // The shared table holds one upload; the other types have nothing to claim
+    private void queuedUpload(String jobId) {
+        when(jobRunner.task(eq(jobId), any())).thenReturn(() -> ran.add(jobId));
+        ClusterJobQueue.ClaimedJob job = new ClusterJobQueue.ClaimedJob(jobId, JobSpec.upload("/shared/" + jobId + ".csv"));
+        when(clusterJobQueue.claim(any(), anyInt(), anyString(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0) == JobType.UPLOAD ? List.of(job) : List.of());
+    }
+
+    @Test
+    @DisplayName("Should hand jobs straight to the local scheduler on a single node")
+    void shouldSubmitLocally() {
+        // Given
+        when(jobRunner.task(eq("job-1"), any())).thenReturn(() -> ran.add("job-1"));
+
+        // When
+        JobScheduler.Admission admission = dispatcher.submit("job-1", JobSpec.upload("/tmp/upload_csv_1.csv"));
+        executor.remove(0).run();
+
+        // Then
+        assertThat(admission.accepted()).isTrue();
+        assertThat(ran).containsExactly("job-1");
+        verify(artifactService).registerInput("job-1", Path.of("/tmp/upload_csv_1.csv"));
+        verify(clusterJobQueue, never()).enqueue(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should queue jobs in the shared table and claim only what can start at once")
+    void shouldClaimWhatFits() {
+        // Given - one slot, so at most one job is claimed
+        clustered();
+        dispatcher.submit("job-1", JobSpec.upload("/shared/job-1.csv"));
+        queuedUpload("job-1");
+
+        // When
+        dispatcher.poll();
+        executor.remove(0).run();
+
+        // Then - it ran here, marked started first, and its row is gone once it finished
+        verify(clusterJobQueue).enqueue(eq("job-1"), any());
+        verify(clusterJobQueue).markStarted("job-1", dispatcher.nodeId());
+        verify(clusterJobQueue).claim(eq(JobType.UPLOAD), eq(1), anyString(), any());
+        verify(artifactService).registerInput("job-1", Path.of("/shared/job-1.csv"));
+        assertThat(ran).containsExactly("job-1");
+        verify(clusterJobQueue).complete("job-1", dispatcher.nodeId());
+    }
+
+    @Test
+    @DisplayName("Should reject when the shared queue of the type is full")
+    void shouldRejectWhenSharedQueueIsFull() {
+        // Given
+        clustered();
+        when(clusterJobQueue.queued(JobType.UPLOAD)).thenReturn(5L);
+
+        // When
+        JobScheduler.Admission admission = dispatcher.submit("job-1", JobSpec.upload("/shared/job-1.csv"));
+
+        // Then - the input is the job's, so recording the rejection deletes it
+        assertThat(admission.accepted()).isFalse();
+        assertThat(dispatcher.checkCapacity(JobType.UPLOAD)).isPresent();
+        verify(clusterJobQueue, never()).enqueue(anyString(), any());
+        verify(artifactService).registerInput("job-1", Path.of("/shared/job-1.csv"));
+    }
+
+    @Test
+    @DisplayName("Should stop its copy of a job whose lease another node took over")
+    void shouldStopJobWhenLeaseIsLost() {
+        // Given - job-1 was claimed here
+        clustered();
+        queuedUpload("job-1");
+        dispatcher.poll();
+        when(clusterJobQueue.heartbeat(anyString(), any(), any())).thenReturn(List.of());
+        when(clusterJobQueue.reapExpired(any(), eq(3)))
+                .thenReturn(new ClusterJobQueue.Reaped(List.of(), List.of(), List.of(), List.of()));
+
+        // When - the heartbeat no longer lists it as ours
+        dispatcher.heartbeat();
+
+        // Then
+        verify(jobService).stopLocally("job-1");
+        assertThat(dispatcher.getStatus()).containsEntry("claimed", 0);
+    }
+
+    @Test
+    @DisplayName("Should requeue jobs of silent nodes, fail started uploads and give up after the last attempt")
+    void shouldReapExpiredLeases() {
+        // Given - job-3 is an upload that had started
+        clustered();
+        when(clusterJobQueue.heartbeat(anyString(), any(), any())).thenReturn(List.of());
+        when(clusterJobQueue.reapExpired(any(), eq(3)))
+                .thenReturn(new ClusterJobQueue.Reaped(List.of("job-1"), List.of(), List.of("job-3"), List.of("job-2")));
+
+        // When
+        dispatcher.heartbeat();
+
+        // Then
+        verify(jobService).updateStatus(eq("job-1"), eq(JobStatus.SUBMITTED), anyString());
+        verify(jobService).updateStatus(eq("job-2"), eq(JobStatus.FAILED), anyString());
+        verify(jobService).updateStatus(eq("job-3"), eq(JobStatus.FAILED), contains("Interrupted"));
+    }
+
+    @Test
+    @DisplayName("Should drop cached students when another node ingested rows")
+    void shouldInvalidateOnSharedVersionChange() {
+        // Given - the first heartbeat sees nothing new, the second a bump from another node
+        clustered();
+        when(clusterJobQueue.heartbeat(anyString(), any(), any())).thenReturn(List.of());
+        when(clusterJobQueue.reapExpired(any(), eq(3)))
+                .thenReturn(new ClusterJobQueue.Reaped(List.of(), List.of(), List.of(), List.of()));
+        when(dataVersionService.pollShared()).thenReturn(false, true);
+
+        // When
+        dispatcher.heartbeat();
+        verify(studentCache, never()).clear();
+        dispatcher.heartbeat();
+
+        // Then
+        verify(studentColumnStore).invalidate();
+        verify(studentCache).clear();
+        verify(dataVersionService).bump();
+    }
+
+    @Test
+    @DisplayName("Should pass a cancel request from another node to the running job")
+    void shouldForwardCancelRequest() {
+        // Given - job-1 is running here
+        clustered();
+        queuedUpload("job-1");
+        dispatcher.poll();
+        Runnable running = executor.remove(0);
+        when(clusterJobQueue.heartbeat(anyString(), any(), any()))
+                .thenReturn(List.of(new ClusterJobQueue.OwnedJob("job-1", true)));
+        when(clusterJobQueue.reapExpired(any(), eq(3)))
+                .thenReturn(new ClusterJobQueue.Reaped(List.of(), List.of(), List.of(), List.of()));
+
+        // When - two heartbeats see the flag; the job is told once
+        dispatcher.heartbeat();
+        dispatcher.heartbeat();
+
+        // Then
+        verify(jobService).cancel("job-1");
+        verify(jobService, never()).stopLocally(anyString());
+        running.run();
+        verify(clusterJobQueue).complete("job-1", dispatcher.nodeId());
+    }
+}
@@ -0,0 +1,121 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JobEventServiceTest {
+
+    @Mock
+    private JobStore jobStore;
+
+    @InjectMocks
+    private JobEventService jobEventService;
+
+    // Records the job updates it is sent instead of writing to a response
+    private static class CapturingEmitter extends SseEmitter {
+        private final List<JobEventService.JobUpdate> updates = new ArrayList<>();
+        private boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            builder.build().forEach(part -> {
+                if (part.getData() instanceof JobEventService.JobUpdate update) {
+                    updates.add(update);
+                }
+            });
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jobEventService, "sender", (Executor) Runnable::run);
+    }
+
+    private JobService.JobInfo job(JobStatus status, long processed) {
+        return new JobService.JobInfo(status, null, 0, processed, 0, null, null, null, null);
+    }
+
+    @Test
+    @DisplayName("Should send the current state on subscribe and reject unknown jobs")
+    void shouldSendCurrentState() {
+        // Given
+        when(jobStore.find("job-1")).thenReturn(Optional.of(job(JobStatus.PROCESSING, 10000)));
+        CapturingEmitter emitter = new CapturingEmitter();
+
+        // When
+        Optional<SseEmitter> stream = jobEventService.subscribe(List.of("job-1"), emitter);
+        Optional<SseEmitter> unknown = jobEventService.subscribe(List.of("missing"), new CapturingEmitter());
+
+        // Then
+        assertThat(stream).containsSame(emitter);
+        assertThat(unknown).isEmpty();
+        assertThat(emitter.updates).singleElement()
+                .satisfies(update -> assertThat(update.job().getProcessedCount()).isEqualTo(10000));
+    }
+
+    @Test
+    @DisplayName("Should coalesce updates published between flushes into one event")
+    void shouldCoalesceUpdates() {
+        // Given
+        when(jobStore.find("job-1")).thenReturn(Optional.of(job(JobStatus.PROCESSING, 0)));
+        CapturingEmitter emitter = new CapturingEmitter();
+        jobEventService.subscribe(List.of("job-1"), emitter);
+
+        // When
+        jobEventService.publish("job-1", job(JobStatus.PROCESSING, 10000));
+        jobEventService.publish("job-1", job(JobStatus.PROCESSING, 20000));
+        jobEventService.publish("job-1", job(JobStatus.PROCESSING, 30000));
+        jobEventService.flush();
+
+        // Then - the initial state plus only the latest update
+        assertThat(emitter.updates).extracting(update -> update.job().getProcessedCount())
+                .containsExactly(0L, 30000L);
+        assertThat(emitter.completed).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should close a multiplexed stream once every job has ended")
+    void shouldCompleteWhenAllJobsEnd() {
+        // Given
+        when(jobStore.find("job-1")).thenReturn(Optional.of(job(JobStatus.PROCESSING, 0)));
+        when(jobStore.find("job-2")).thenReturn(Optional.of(job(JobStatus.PROCESSING, 0)));
+        CapturingEmitter emitter = new CapturingEmitter();
+        jobEventService.subscribe(List.of("job-1", "job-2"), emitter);
+
+        // When
+        jobEventService.publish("job-1", job(JobStatus.COMPLETED, 5));
+        jobEventService.flush();
+        boolean completedAfterFirst = emitter.completed;
+        jobEventService.publish("job-2", job(JobStatus.FAILED, 0));
+        jobEventService.flush();
+
+        // Then
+        assertThat(completedAfterFirst).isFalse();
+        assertThat(emitter.completed).isTrue();
+        assertThat(emitter.updates).extracting(JobEventService.JobUpdate::jobId)
+                .containsExactly("job-1", "job-2", "job-1", "job-2");
+        assertThat(jobEventService.subscriberCount()).isZero();
+    }
+}
@@ -0,0 +1,190 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.config.JobSchedulerProperties;
+import com.megan.dataproject.model.JobType;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobSchedulerTest {
+
+    // Collects started tasks so the test decides when each job runs
+    private final List<Runnable> executor = new ArrayList<>();
+    private final List<String> started = new ArrayList<>();
+
+    @TempDir
+    private Path storageDir;
+
+    // Not enabled unless a test turns it on, so every job fits
+    private ResourceGovernor resourceGovernor;
+
+    private JobScheduler scheduler(int maxConcurrency, Map<JobType, JobSchedulerProperties.Limits> types) {
+        resourceGovernor = resourceGovernor != null ? resourceGovernor
+                : new ResourceGovernor(new FileStorageService(storageDir.toString()));
+        return new JobScheduler(executor::add, executor::add, new JobSchedulerProperties(maxConcurrency, types),
+                resourceGovernor);
+    }
+
+    private JobScheduler.Admission submit(JobScheduler scheduler, JobType type, String jobId) {
+        return scheduler.submit(type, jobId, () -> started.add(jobId));
+    }
+
+    private void runNext() {
+        executor.remove(0).run();
+    }
+
+    @Test
+    @DisplayName("Should cap running jobs per type and reject once the queue is full")
+    void shouldRejectWhenQueueIsFull() {
+        // Given - one upload at a time, two may wait
+        JobScheduler scheduler = scheduler(4, Map.of(JobType.UPLOAD, new JobSchedulerProperties.Limits(1, 2, 1)));
+
+        // When
+        submit(scheduler, JobType.UPLOAD, "u1");
+        submit(scheduler, JobType.UPLOAD, "u2");
+        submit(scheduler, JobType.UPLOAD, "u3");
+        JobScheduler.Admission rejected = submit(scheduler, JobType.UPLOAD, "u4");
+
+        // Then
+        assertThat(executor).hasSize(1);
+        assertThat(rejected.accepted()).isFalse();
+        assertThat(rejected.retryAfterSeconds()).isPositive();
+        assertThat(scheduler.checkCapacity(JobType.UPLOAD)).isPresent();
+        assertThat(scheduler.checkCapacity(JobType.GENERATE)).isEmpty();
+        assertThat(scheduler.queuePosition("u3")).contains(2);
+        assertThat(scheduler.queuePosition("u1")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should share slots between types in proportion to their weights")
+    void shouldDequeueWeightedFair() {
+        // Given - a single slot; uploads weigh twice as much as generation
+        JobScheduler scheduler = scheduler(1, Map.of(
+                JobType.UPLOAD, new JobSchedulerProperties.Limits(1, 10, 2),
+                JobType.GENERATE, new JobSchedulerProperties.Limits(1, 10, 1)));
+        for (int i = 1; i <= 6; i++) {
+            submit(scheduler, JobType.UPLOAD, "u" + i);
+        }
+        for (int i = 1; i <= 3; i++) {
+            submit(scheduler, JobType.GENERATE, "g" + i);
+        }
+
+        // When
+        while (!executor.isEmpty()) {
+            runNext();
+        }
+
+        // Then - generation is interleaved instead of waiting behind every upload
+        assertThat(started).containsExactly("u1", "g1", "u2", "g2", "u3", "u4", "g3", "u5", "u6");
+    }
+
+    @Test
+    @DisplayName("Should drop a queued job that is removed before it starts")
+    void shouldRemoveQueuedJob() {
+        // Given
+        JobScheduler scheduler = scheduler(1, Map.of());
+        submit(scheduler, JobType.PROCESS, "p1");
+        submit(scheduler, JobType.PROCESS, "p2");
+        submit(scheduler, JobType.PROCESS, "p3");
+
+        // When
+        boolean removed = scheduler.remove("p2");
+        while (!executor.isEmpty()) {
+            runNext();
+        }
+
+        // Then
+        assertThat(removed).isTrue();
+        assertThat(started).containsExactly("p1", "p3");
+    }
+
+    @Test
+    @DisplayName("Should report the new positions of waiting jobs when their queue moves up")
+    void shouldReportQueueMoves() {
+        // Given - one slot, so p2 to p4 wait
+        JobScheduler scheduler = scheduler(1, Map.of());
+        List<String> moves = new ArrayList<>();
+        scheduler.onQueueMoved((jobId, position) -> moves.add(jobId + "@" + position));
+        submit(scheduler, JobType.PROCESS, "p1");
+        submit(scheduler, JobType.PROCESS, "p2");
+        submit(scheduler, JobType.PROCESS, "p3");
+        submit(scheduler, JobType.PROCESS, "p4");
+        moves.clear();
+
+        // When - p3 is removed, then p1 finishes and p2 starts
+        scheduler.remove("p3");
+        runNext();
+
+        // Then
+        assertThat(moves).containsExactly("p2@1", "p4@2", "p4@1");
+    }
+
+    @Test
+    @DisplayName("Should retry a job the executor turned away even with nothing running")
+    void shouldRetryRejectedStart() {
+        // Given - the executor's queue is full for the first attempt only
+        boolean[] full = {true};
+        Executor flaky = task -> {
+            if (full[0]) {
+                full[0] = false;
+                throw new RejectedExecutionException("queue full");
+            }
+            executor.add(task);
+        };
+        JobScheduler scheduler = new JobScheduler(flaky, flaky, new JobSchedulerProperties(1, Map.of()),
+                new ResourceGovernor(new FileStorageService(storageDir.toString())));
+        submit(scheduler, JobType.GENERATE, "g1");
+
+        // When - no job finishes to dispatch it, so only the retry tick can
+        assertThat(scheduler.queuePosition("g1")).contains(1);
+        scheduler.retryRejected();
+
+        // Then
+        assertThat(scheduler.queuePosition("g1")).isEmpty();
+        runNext();
+        assertThat(started).containsExactly("g1");
+    }
+
+    @Test
+    @DisplayName("Should hold a job until the memory it needs is released")
+    void shouldWaitForResources() {
+        // Given - the whole heap is the budget and each job needs 60% of it; an export holds some already
+        resourceGovernor = new ResourceGovernor(new FileStorageService(storageDir.toString()));
+        ReflectionTestUtils.setField(resourceGovernor, "enabled", true);
+        ReflectionTestUtils.setField(resourceGovernor, "heapFraction", 1.0);
+        ReflectionTestUtils.setField(resourceGovernor, "diskHeadroom", DataSize.ofBytes(0));
+        ReflectionTestUtils.setField(resourceGovernor, "exportWait", Duration.ZERO);
+        ResourceGovernor.Footprint large = new ResourceGovernor.Footprint(Runtime.getRuntime().maxMemory() * 6 / 10, 0);
+        JobScheduler scheduler = scheduler(4, Map.of(JobType.UPLOAD, new JobSchedulerProperties.Limits(2, 10, 1)));
+        resourceGovernor.tryReserve("export-1", "CSV export", large);
+
+        // When
+        scheduler.submit(JobType.UPLOAD, "u1", large, () -> started.add("u1"));
+        scheduler.submit(JobType.UPLOAD, "u2", large, () -> started.add("u2"));
+
+        // Then - neither starts while the export runs, then one at a time
+        assertThat(executor).isEmpty();
+        assertThat(scheduler.getStatus()).extractingByKey("UPLOAD", InstanceOfAssertFactories.MAP)
+                .containsEntry("waitingForResources", true);
+        resourceGovernor.release("export-1");
+        assertThat(executor).hasSize(1);
+        runNext();
+        assertThat(executor).hasSize(1);
+        runNext();
+        assertThat(started).containsExactly("u1", "u2");
+        assertThat(resourceGovernor.getStatus()).containsEntry("memoryReservedBytes", 0L);
+    }
+}
@@ -0,0 +1,256 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobPhase;
+import com.megan.dataproject.model.JobStatus;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JobServiceTest {
+
+    // Real map behind a spy: snapshots are replaced on every update, so tests read back what was saved
+    @Spy
+    private JobStore jobStore = new MapJobStore();
+
+    @Mock
+    private ArtifactService artifactService;
+
+    @Mock
+    private JobEventService jobEventService;
+
+    @Mock
+    private JobScheduler jobScheduler;
+
+    @Mock
+    private ClusterJobQueue clusterJobQueue;
+
+    @InjectMocks
+    private JobService jobService;
+
+    private static class MapJobStore implements JobStore {
+        private final Map<String, JobService.JobInfo> jobs = new HashMap<>();
+
+        @Override
+        public Optional<JobService.JobInfo> find(String jobId) {
+            return Optional.ofNullable(jobs.get(jobId));
+        }
+
+        @Override
+        public void save(String jobId, JobService.JobInfo jobInfo) {
+            jobs.put(jobId, jobInfo);
+        }
+
+        @Override
+        public void saveNow(String jobId, JobService.JobInfo jobInfo) {
+            jobs.put(jobId, jobInfo);
+        }
+    }
+
+    private void stored(JobStatus status) {
+        jobStore.save("job-1", new JobService.JobInfo(status, null, 0, 0, 0, null, null, null, null));
+        clearInvocations(jobStore);
+    }
+
+    @Test
+    @DisplayName("Should cancel a queued job at once and release its files")
+    void shouldCancelQueuedJob() {
+        // Given
+        stored(JobStatus.SUBMITTED);
+
+        // When
+        Optional<JobStatus> status = jobService.cancel("job-1");
+
+        // Then
+        assertThat(status).contains(JobStatus.CANCELLED);
+        assertThat(jobService.getJob("job-1").getStatus()).isEqualTo(JobStatus.CANCELLED);
+        verify(jobScheduler).remove("job-1");
+        verify(jobStore).saveNow(eq("job-1"), any());
+        verify(artifactService).release("job-1");
+    }
+
+    @Test
+    @DisplayName("Should take a job off the cluster queue and delete its input")
+    void shouldCancelClusterQueuedJob() {
+        // Given - queued in the shared table, not in this node's scheduler
+        stored(JobStatus.SUBMITTED);
+        when(clusterJobQueue.cancel("job-1")).thenReturn(Optional.of(JobSpec.upload("/shared/upload_csv_1.csv")));
+
+        // When
+        Optional<JobStatus> status = jobService.cancel("job-1");
+
+        // Then - registered so that releasing the CANCELLED job deletes it
+        assertThat(status).contains(JobStatus.CANCELLED);
+        verify(artifactService).registerInput("job-1", Path.of("/shared/upload_csv_1.csv"));
+        verify(artifactService).release("job-1");
+    }
+
+    @Test
+    @DisplayName("Should drop what a job still reports after another node took it over")
+    void shouldIgnoreAbandonedJob() {
+        // Given
+        stored(JobStatus.PROCESSING);
+        CancellationToken token = jobService.cancellationToken("job-1");
+
+        // When
+        jobService.stopLocally("job-1");
+        jobService.updateProgress("job-1", 10000, 20000);
+        jobService.updateStatus("job-1", JobStatus.CANCELLED, "Job cancelled");
+
+        // Then - the new owner writes the status; this node only stopped its copy
+        assertThat(token.isCancelled()).isTrue();
+        assertThat(jobService.getJob("job-1").getStatus()).isEqualTo(JobStatus.PROCESSING);
+        verify(jobStore).disown("job-1");
+        verify(jobStore, never()).save(anyString(), any());
+        verify(jobStore, never()).saveNow(anyString(), any());
+        verify(artifactService, never()).release(anyString());
+    }
+
+    @Test
+    @DisplayName("Should signal a running job and leave it PROCESSING until it stops")
+    void shouldSignalRunningJob() {
+        // Given
+        stored(JobStatus.PROCESSING);
+        CancellationToken token = jobService.cancellationToken("job-1");
+
+        // When
+        Optional<JobStatus> status = jobService.cancel("job-1");
+
+        // Then
+        assertThat(status).contains(JobStatus.PROCESSING);
+        assertThat(token.isCancelled()).isTrue();
+        verify(jobStore, never()).saveNow(anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should leave no token behind for a job running on another node")
+    void shouldNotTrackRemoteJob() {
+        // Given - PROCESSING in the shared table, never started here
+        stored(JobStatus.PROCESSING);
+
+        // When
+        Optional<JobStatus> status = jobService.cancel("job-1");
+
+        // Then - its owner stops it after the heartbeat; this node holds nothing for it
+        assertThat(status).contains(JobStatus.PROCESSING);
+        verify(clusterJobQueue).cancel("job-1");
+        assertThat(ReflectionTestUtils.getField(jobService, "cancellationTokens")).asInstanceOf(InstanceOfAssertFactories.MAP)
+                .isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should ignore updates that arrive after a job was cancelled")
+    void shouldKeepCancelledJobCancelled() {
+        // Given
+        stored(JobStatus.CANCELLED);
+
+        // When
+        jobService.updateStatus("job-1", JobStatus.COMPLETED, "/tmp/out.csv");
+        jobService.updateProgress("job-1", 10000, 0);
+
+        // Then
+        JobService.JobInfo jobInfo = jobService.getJob("job-1");
+        assertThat(jobInfo.getStatus()).isEqualTo(JobStatus.CANCELLED);
+        assertThat(jobInfo.getProcessedCount()).isZero();
+        verify(jobStore, never()).saveNow(anyString(), any());
+        assertThat(jobService.cancellationToken("job-1").isCancelled()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should leave finished jobs alone")
+    void shouldNotCancelFinishedJob() {
+        // Given
+        stored(JobStatus.COMPLETED);
+
+        // When / Then
+        assertThat(jobService.cancel("job-1")).contains(JobStatus.COMPLETED);
+        assertThat(jobService.cancel("missing")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should replace the snapshot on progress instead of changing the one readers hold")
+    void shouldPublishNewSnapshotOnProgress() {
+        // Given
+        stored(JobStatus.PROCESSING);
+        jobService.telemetry("job-1");
+        JobService.JobInfo before = jobService.getJob("job-1");
+
+        // When
+        jobService.updateProgress("job-1", 25000, 100000);
+
+        // Then
+        assertThat(before.getProcessedCount()).isZero();
+        JobService.JobInfo after = jobService.getJob("job-1");
+        assertThat(after.getProcessedCount()).isEqualTo(25000);
+        assertThat(after.getProgress()).isEqualTo(25);
+        assertThat(after.getMetrics().rowsPerSecond()).isPositive();
+        assertThat(after.getMetrics().etaSeconds()).isNotNull();
+        verify(jobEventService).publish(eq("job-1"), argThat(update -> update.getProcessedCount() == 25000));
+    }
+
+    @Test
+    @DisplayName("Should freeze the telemetry into the final snapshot")
+    void shouldFreezeMetricsAtTerminalStatus() {
+        // Given
+        stored(JobStatus.PROCESSING);
+        JobTelemetry telemetry = jobService.telemetry("job-1");
+        telemetry.addBytesRead(4096);
+        telemetry.addPhase(JobPhase.COMMIT, 5_000_000);
+
+        // When
+        jobService.updateStatus("job-1", JobStatus.COMPLETED, null);
+        telemetry.addBytesRead(1024);
+
+        // Then
+        JobTelemetry.Metrics metrics = jobService.getJob("job-1").getMetrics();
+        assertThat(metrics.bytesRead()).isEqualTo(4096);
+        assertThat(metrics.phaseMillis()).containsEntry(JobPhase.COMMIT, 5L);
+        // A later job with the same id would start from zero
+        assertThat(jobService.telemetry("job-1")).isNotSameAs(telemetry);
+    }
+
+    @Test
+    @DisplayName("Should push a queued job's position, and push it again when its queue moves")
+    void shouldPublishQueuePositions() {
+        // Given - job-1 waits behind two jobs
+        stored(JobStatus.SUBMITTED);
+        when(jobScheduler.queuePosition("job-1")).thenReturn(Optional.of(3));
+        jobService.registerListeners();
+        ArgumentCaptor<Function<String, Optional<JobService.JobInfo>>> lookup = ArgumentCaptor.captor();
+        ArgumentCaptor<BiConsumer<String, Integer>> queueMoved = ArgumentCaptor.captor();
+        verify(jobEventService).lookupWith(lookup.capture());
+        verify(jobScheduler).onQueueMoved(queueMoved.capture());
+
+        // When - a subscriber reads it, then the job ahead starts
+        Optional<JobService.JobInfo> subscribed = lookup.getValue().apply("job-1");
+        queueMoved.getValue().accept("job-1", 2);
+
+        // Then
+        assertThat(subscribed).map(JobService.JobInfo::getQueuePosition).contains(3);
+        verify(jobEventService).publish(eq("job-1"), argThat(update -> update.getQueuePosition() == 2));
+    }
+}
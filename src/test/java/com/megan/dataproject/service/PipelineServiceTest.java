@@ -0,0 +1,176 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.payload.PipelineRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineServiceTest {
+
+    @Mock
+    private JobService jobService;
+
+    @Mock
+    private FileStorageService storageService;
+
+    @Mock
+    private ArtifactService artifactService;
+
+    @Mock
+    private CsvToDatabaseService csvToDatabaseService;
+
+    @TempDir
+    Path tempDir;
+
+    // Stages block on each other's channels, so they need real threads
+    private final ExecutorService stageExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private PipelineService pipelineService;
+
+    @BeforeEach
+    void setUp() {
+        ExcelGeneratorService generator = new ExcelGeneratorService(storageService, jobService, artifactService);
+        pipelineService = new PipelineService(jobService, generator, csvToDatabaseService,
+                storageService, artifactService, stageExecutor, stageExecutor);
+        // Small batches and channels, so the stages really take turns
+        ReflectionTestUtils.setField(pipelineService, "batchSize", 10);
+        ReflectionTestUtils.setField(pipelineService, "channelCapacity", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stageExecutor.shutdownNow();
+    }
+
+    private void stubJob() {
+        when(jobService.cancellationToken(any())).thenReturn(new CancellationToken());
+        when(jobService.telemetry(any())).thenReturn(new JobTelemetry());
+    }
+
+    private void stubStorage() {
+        when(storageService.getPath(anyString())).thenAnswer(call -> tempDir.resolve(call.<String>getArgument(0)).toString());
+    }
+
+    @Test
+    @DisplayName("Should accept only chains that start at GENERATE and follow the stage graph")
+    void shouldValidateStages() {
+        // Given
+        PipelineRequest startsMidway = new PipelineRequest(10, List.of(JobType.PROCESS, JobType.UPLOAD), Set.of());
+        PipelineRequest backwards = new PipelineRequest(10, List.of(JobType.GENERATE, JobType.UPLOAD, JobType.PROCESS), Set.of());
+        PipelineRequest keepsUpload = new PipelineRequest(10, List.of(JobType.GENERATE, JobType.UPLOAD), Set.of(JobType.UPLOAD));
+
+        // When / Then
+        assertThatThrownBy(() -> pipelineService.validate(startsMidway)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> pipelineService.validate(backwards)).hasMessage("UPLOAD can't feed PROCESS");
+        assertThatThrownBy(() -> pipelineService.validate(keepsUpload)).isInstanceOf(IllegalArgumentException.class);
+        pipelineService.validate(new PipelineRequest(10, List.of(JobType.GENERATE, JobType.UPLOAD), Set.of(JobType.GENERATE)));
+    }
+
+    @Test
+    @DisplayName("Should stream generated rows into the CSV without writing the workbook")
+    void shouldStreamGenerateIntoProcess() throws Exception {
+        // Given
+        stubJob();
+        stubStorage();
+        PipelineRequest request = new PipelineRequest(95, List.of(JobType.GENERATE, JobType.PROCESS), Set.of());
+
+        // When
+        pipelineService.run("job-1", request);
+
+        // Then - only the last stage's file exists, with every row and the process score bonus
+        verify(storageService, times(1)).getPath(anyString());
+        Path csv;
+        try (var files = Files.list(tempDir)) {
+            csv = files.filter(file -> file.getFileName().toString().startsWith("ProcessedData_")).findFirst().orElseThrow();
+        }
+        List<String> lines = Files.readAllLines(csv);
+        assertThat(lines).hasSize(96);
+        assertThat(lines.get(0)).isEqualTo(ExcelToCsvService.CSV_HEADER);
+        assertThat(lines.get(1)).startsWith("1,");
+        assertThat(Integer.parseInt(lines.get(1).substring(lines.get(1).lastIndexOf(',') + 1))).isBetween(65, 85);
+
+        verify(jobService).updateStage("job-1", JobType.GENERATE, new JobService.StageInfo(JobStatus.COMPLETED, 95, null));
+        verify(jobService).updateStage("job-1", JobType.PROCESS, new JobService.StageInfo(JobStatus.COMPLETED, 95, csv.toString()));
+        verify(jobService).updateStatus("job-1", JobStatus.COMPLETED, csv.toString());
+        verify(jobService).attachProfile(eq("job-1"), any());
+    }
+
+    @Test
+    @DisplayName("Should load generated rows straight into the database")
+    void shouldStreamGenerateIntoUpload() {
+        // Given
+        stubJob();
+        CsvToDatabaseService.BatchLoader loader = mock(CsvToDatabaseService.BatchLoader.class);
+        when(csvToDatabaseService.loader(eq("job-1"), any(), any())).thenReturn(loader);
+        when(loader.committedRows()).thenReturn(25L);
+
+        // When
+        pipelineService.run("job-1", new PipelineRequest(25, List.of(JobType.GENERATE, JobType.UPLOAD), Set.of()));
+
+        // Then - upload adds its own bonus to the generated 55-75 scores, and nothing is written to disk
+        verify(loader, times(25)).add(anyLong(), anyString(), anyString(), any(LocalDate.class), anyString(),
+                intThat(score -> score >= 60 && score <= 80));
+        verify(loader).flush();
+        verify(loader).publish();
+        verify(storageService, times(0)).getPath(anyString());
+        verify(jobService).updateStatus("job-1", JobStatus.COMPLETED, null);
+    }
+
+    @Test
+    @DisplayName("Should fail the job and stop every stage when one stage fails")
+    void shouldStopAllStagesOnFailure() {
+        // Given
+        stubJob();
+        stubStorage();
+        CsvToDatabaseService.BatchLoader loader = mock(CsvToDatabaseService.BatchLoader.class);
+        when(csvToDatabaseService.loader(eq("job-1"), any(), any())).thenReturn(loader);
+        when(loader.isFull()).thenReturn(true);
+        doThrow(new IllegalStateException("Database is down")).when(loader).flush();
+
+        // When - far more rows than the channels hold, so generate would block without the stop
+        pipelineService.run("job-1", new PipelineRequest(100000,
+                List.of(JobType.GENERATE, JobType.PROCESS, JobType.UPLOAD), Set.of(JobType.PROCESS)));
+
+        // Then
+        verify(jobService).updateStatus("job-1", JobStatus.FAILED, "Database is down");
+        verify(jobService).updateStage(eq("job-1"), eq(JobType.UPLOAD),
+                argThat(stage -> stage.status() == JobStatus.FAILED));
+        verify(jobService, atLeastOnce()).updateStage(eq("job-1"), eq(JobType.GENERATE),
+                argThat(stage -> stage.status() == JobStatus.CANCELLED));
+        // Committed batches are still announced, and the partial CSV is gone
+        verify(loader).publish();
+        assertThat(tempDir.toFile().list()).isEmpty();
+    }
+}
@@ -0,0 +1,128 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.CursorPageResponse;
+import com.megan.dataproject.repository.KeysetCursor;
+import com.megan.dataproject.repository.StudentFilter;
+import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Keyset pages against H2, whose default null ordering differs from Postgres, so the pinned one is tested
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ReportServiceKeysetTest {
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private ReportService reportService;
+
+    @BeforeEach
+    void setUp() {
+        // Only the repository is used by cursor and offset pages (the replica mock has nothing to serve)
+        reportService = new ReportService(studentRepository, mock(StudentCountService.class),
+                mock(StudentColumnStore.class), mock(StudentCache.class), mock(Executor.class));
+        // Other tests in the same in-memory database may leave students behind; rolled back with the rest
+        jdbcTemplate.update("DELETE FROM students");
+        // Scores: 1 -> 50, 2 -> null, 3 -> 40, 4 -> null, 5 -> 50, 6 -> 30, 7 -> null
+        Integer[] scores = {50, null, 40, null, 50, 30, null};
+        for (int i = 0; i < scores.length; i++) {
+            jdbcTemplate.update("INSERT INTO students(student_id, first_name, last_name, dob, class, score) "
+                            + "VALUES (?, ?, 'Doe', ?, ?, ?)",
+                    i + 1, "Name" + (i + 1), LocalDate.of(2005, 1, 1), StudentClass.Class1.name(), scores[i]);
+        }
+    }
+
+    private List<Long> walkForward(String sortDir, int size) {
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPageResponse<StudentView> page = reportService.getStudentsByCursor(
+                    new StudentFilter(), cursor, size, "score", sortDir);
+            page.getContent().forEach(student -> ids.add(student.studentId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    @Test
+    @DisplayName("Should page past null scores, sorting them after every score")
+    void shouldPageThroughNullSortValues() {
+        // When
+        List<Long> ascending = walkForward("asc", 2);
+        List<Long> descending = walkForward("desc", 2);
+
+        // Then - every row exactly once; nulls last ascending and first descending, ties by id
+        assertThat(ascending).containsExactly(6L, 3L, 1L, 5L, 2L, 4L, 7L);
+        assertThat(descending).containsExactly(7L, 4L, 2L, 5L, 1L, 3L, 6L);
+    }
+
+    @Test
+    @DisplayName("Should page backward from a cursor on a null score")
+    void shouldPageBackwardFromNullSortValue() {
+        // Given - the page after 6, 3, 1, 5 starts on the nulls
+        CursorPageResponse<StudentView> first = reportService.getStudentsByCursor(
+                new StudentFilter(), null, 4, "score", "asc");
+        CursorPageResponse<StudentView> second = reportService.getStudentsByCursor(
+                new StudentFilter(), first.getNextCursor(), 2, "score", "asc");
+
+        // When
+        CursorPageResponse<StudentView> back = reportService.getStudentsByCursor(
+                new StudentFilter(), second.getPreviousCursor(), 2, "score", "asc");
+
+        // Then
+        assertThat(second.getContent()).extracting(StudentView::studentId).containsExactly(2L, 4L);
+        assertThat(back.getContent()).extracting(StudentView::studentId).containsExactly(1L, 5L);
+        assertThat(back.isHasPrevious()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should order offset pages like the replica: nulls after every score, ties by id")
+    void shouldPinOffsetPageOrder() {
+        // When
+        List<StudentView> ascending = reportService.getStudents(new StudentFilter(),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.ASC, "score"))).getContent();
+        List<StudentView> descending = reportService.getStudentSlice(new StudentFilter(),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "score"))).getContent();
+
+        // Then
+        assertThat(ascending).extracting(StudentView::studentId).containsExactly(6L, 3L, 1L, 5L, 2L, 4L, 7L);
+        assertThat(descending).extracting(StudentView::studentId).containsExactly(7L, 4L, 2L, 5L, 1L, 3L, 6L);
+    }
+
+    @Test
+    @DisplayName("Should tell a null sort value from the text \"null\" in a cursor")
+    void shouldEncodeNullSortValue() {
+        // Given
+        KeysetCursor nullName = new KeysetCursor("firstName", false, false, null, 4L);
+        KeysetCursor textName = new KeysetCursor("firstName", false, false, "null", 4L);
+
+        // When / Then
+        assertThat(KeysetCursor.decode(nullName.encode()).getValue()).isNull();
+        assertThat(KeysetCursor.decode(textName.encode()).getValue()).isEqualTo("null");
+        assertThat(KeysetCursor.decode(new KeysetCursor("score", true, true, null, 7L).encode()))
+                .isEqualTo(new KeysetCursor("score", true, true, null, 7L));
+    }
+}
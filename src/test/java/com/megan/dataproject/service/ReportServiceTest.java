@@ -1,9 +1,12 @@
 package com.megan.dataproject.service;
 
-import com.megan.dataproject.model.Student;
 import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.CursorPageResponse;
 import com.megan.dataproject.payload.ExportResponse;
+import com.megan.dataproject.repository.KeysetCursor;
+import com.megan.dataproject.repository.StudentFilter;
 import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentView;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,15 +18,19 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,10 +39,19 @@ class ReportServiceTest {
     @Mock
     private StudentRepository studentRepository;
 
+    @Mock
+    private StudentCountService studentCountService;
+
+    @Mock
+    private StudentColumnStore studentColumnStore;
+
+    @Mock
+    private StudentCache studentCache;
+
     @InjectMocks
     private ReportService reportService;
 
-    private List<Student> testStudents;
+    private List<StudentView> testStudents;
 
     @BeforeEach
     void setUp() {
@@ -46,16 +62,9 @@ class ReportServiceTest {
         );
     }
 
-    private Student createStudent(Long id, String firstName, String lastName,
-                                   StudentClass studentClass, Integer score) {
-        Student student = new Student();
-        student.setStudentId(id);
-        student.setFirstName(firstName);
-        student.setLastName(lastName);
-        student.setDOB(LocalDate.of(2005, 1, 15));
-        student.setStudentClass(studentClass);
-        student.setScore(score);
-        return student;
+    private StudentView createStudent(Long id, String firstName, String lastName,
+                                      StudentClass studentClass, Integer score) {
+        return new StudentView(id, firstName, lastName, LocalDate.of(2005, 1, 15), studentClass, score);
     }
 
     @Test
@@ -63,12 +72,12 @@ class ReportServiceTest {
     void shouldReturnPaginatedStudents() {
         // Given
         Pageable pageable = PageRequest.of(0, 10);
-        Page<Student> expectedPage = new PageImpl<>(testStudents, pageable, testStudents.size());
-        when(studentRepository.findAll(any(Specification.class), any(Pageable.class)))
-                .thenReturn(expectedPage);
+        when(studentRepository.findContent(any(Specification.class), any(Pageable.class)))
+                .thenReturn(testStudents);
+        when(studentCountService.getCount(List.of())).thenReturn(3L);
 
         // When
-        Page<Student> result = reportService.getStudents(null, null, pageable);
+        Page<StudentView> result = reportService.getStudents(new StudentFilter(), pageable);
 
         // Then
         assertThat(result.getContent()).hasSize(3);
@@ -79,10 +88,10 @@ class ReportServiceTest {
     @DisplayName("Should export to CSV with correct format")
     void shouldExportToCsvWithCorrectFormat() throws Exception {
         // Given
-        when(studentRepository.findAll(any(Specification.class))).thenReturn(testStudents);
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class))).thenReturn(testStudents);
 
         // When
-        ExportResponse response = reportService.exportToCsv(null, null);
+        ExportResponse response = reportService.exportToCsv(new StudentFilter(), false);
 
         // Then
         assertThat(response.getFileName()).isEqualTo("students_report.csv");
@@ -100,10 +109,10 @@ class ReportServiceTest {
     @DisplayName("Should export to Excel with correct format")
     void shouldExportToExcelWithCorrectFormat() throws Exception {
         // Given
-        when(studentRepository.findAll(any(Specification.class))).thenReturn(testStudents);
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class))).thenReturn(testStudents);
 
         // When
-        ExportResponse response = reportService.exportToExcel(null, null);
+        ExportResponse response = reportService.exportToExcel(new StudentFilter(), false);
 
         // Then
         assertThat(response.getFileName()).isEqualTo("students_report.xlsx");
@@ -116,10 +125,10 @@ class ReportServiceTest {
     @DisplayName("Should export to PDF with correct format")
     void shouldExportToPdfWithCorrectFormat() {
         // Given
-        when(studentRepository.findAll(any(Specification.class))).thenReturn(testStudents);
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class))).thenReturn(testStudents);
 
         // When
-        ExportResponse response = reportService.exportToPdf(null, null);
+        ExportResponse response = reportService.exportToPdf(new StudentFilter(), false);
 
         // Then
         assertThat(response.getFileName()).isEqualTo("students_report.pdf");
@@ -133,20 +142,21 @@ class ReportServiceTest {
     }
 
     @Test
-    @DisplayName("Should filter by studentId")
+    @DisplayName("Should filter by studentId through the lookup cache")
     void shouldFilterByStudentId() {
         // Given
         Pageable pageable = PageRequest.of(0, 10);
-        List<Student> filtered = List.of(testStudents.get(0));
-        Page<Student> expectedPage = new PageImpl<>(filtered, pageable, 1);
-        when(studentRepository.findAll(any(Specification.class), any(Pageable.class)))
-                .thenReturn(expectedPage);
+        when(studentCache.get(1L)).thenReturn(Optional.of(testStudents.get(0)));
 
         // When
-        Page<Student> result = reportService.getStudents(1L, null, pageable);
+        Page<StudentView> result = reportService.getStudents(StudentFilter.of(1L, null), pageable);
+        Page<StudentView> otherClass = reportService.getStudents(StudentFilter.of(1L, StudentClass.Class2), pageable);
 
         // Then
         assertThat(result.getContent()).hasSize(1);
+        assertThat(result.getTotalElements()).isEqualTo(1);
+        assertThat(otherClass.getContent()).isEmpty();
+        verifyNoInteractions(studentRepository);
     }
 
     @Test
@@ -154,28 +164,29 @@ class ReportServiceTest {
     void shouldFilterByStudentClass() {
         // Given
         Pageable pageable = PageRequest.of(0, 10);
-        List<Student> filtered = testStudents.stream()
-                .filter(s -> s.getStudentClass() == StudentClass.Class1)
+        List<StudentView> filtered = testStudents.stream()
+                .filter(s -> s.studentClass() == StudentClass.Class1)
                 .toList();
-        Page<Student> expectedPage = new PageImpl<>(filtered, pageable, 2);
-        when(studentRepository.findAll(any(Specification.class), any(Pageable.class)))
-                .thenReturn(expectedPage);
+        when(studentRepository.findContent(any(Specification.class), any(Pageable.class)))
+                .thenReturn(filtered);
+        when(studentCountService.getCount(List.of(StudentClass.Class1))).thenReturn(2L);
 
         // When
-        Page<Student> result = reportService.getStudents(null, StudentClass.Class1, pageable);
+        Page<StudentView> result = reportService.getStudents(StudentFilter.of(null, StudentClass.Class1), pageable);
 
         // Then
         assertThat(result.getContent()).hasSize(2);
+        assertThat(result.getTotalElements()).isEqualTo(2);
     }
 
     @Test
     @DisplayName("Should handle empty result")
     void shouldHandleEmptyResult() throws Exception {
         // Given
-        when(studentRepository.findAll(any(Specification.class))).thenReturn(List.of());
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class))).thenReturn(List.of());
 
         // When
-        ExportResponse response = reportService.exportToCsv(null, null);
+        ExportResponse response = reportService.exportToCsv(new StudentFilter(), false);
 
         // Then
         String csvContent = new String(Base64.getDecoder().decode(response.getData()));
@@ -185,4 +196,89 @@ class ReportServiceTest {
         assertThat(lines).hasSize(1);
         assertThat(lines[0]).isEqualTo("studentId,firstName,lastName,DOB,class,score");
     }
+
+    @Test
+    @DisplayName("Should serve report page from the replica without querying the database")
+    void shouldServeReportPageFromReplica() {
+        // Given
+        Pageable pageable = PageRequest.of(0, 10);
+        StudentFilter filter = StudentFilter.builder().minScore(80).build();
+        when(studentColumnStore.findPage(filter, pageable))
+                .thenReturn(Optional.of(new PageImpl<>(testStudents.subList(0, 2), pageable, 2)));
+
+        // When
+        Page<StudentView> result = reportService.getStudents(filter, pageable);
+
+        // Then
+        assertThat(result.getContent()).hasSize(2);
+        assertThat(result.getTotalElements()).isEqualTo(2);
+        verifyNoInteractions(studentRepository, studentCountService);
+    }
+
+    @Test
+    @DisplayName("Should concatenate parallel partitions in class order")
+    void shouldConcatenateParallelPartitionsInClassOrder() throws Exception {
+        // Given - run partitions inline, one stubbed result per StudentClass
+        ReportService parallelService = new ReportService(studentRepository, studentCountService, studentColumnStore, studentCache, Runnable::run);
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class)))
+                .thenReturn(List.of(testStudents.get(0), testStudents.get(2)),
+                        List.of(testStudents.get(1)), List.of(), List.of(), List.of());
+
+        // When
+        ExportResponse response = parallelService.exportToCsv(new StudentFilter(), true);
+
+        // Then
+        String csvContent = new String(Base64.getDecoder().decode(response.getData()));
+        String[] lines = csvContent.split("\n");
+
+        assertThat(lines).hasSize(4);
+        assertThat(lines[1]).startsWith("1,");
+        assertThat(lines[2]).startsWith("3,");
+        assertThat(lines[3]).startsWith("2,");
+    }
+
+    @Test
+    @DisplayName("Should return keyset page with cursor after last row")
+    void shouldReturnKeysetPageWithNextCursor() {
+        // Given - size + 1 rows come back, so there is another page
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class), eq(3)))
+                .thenReturn(testStudents);
+
+        // When
+        CursorPageResponse<StudentView> page = reportService.getStudentsByCursor(
+                new StudentFilter(), null, 2, "lastName", "asc");
+
+        // Then
+        assertThat(page.getContent()).hasSize(2);
+        assertThat(page.isHasNext()).isTrue();
+        assertThat(page.isHasPrevious()).isFalse();
+        assertThat(page.getPreviousCursor()).isNull();
+
+        KeysetCursor next = KeysetCursor.decode(page.getNextCursor());
+        assertThat(next.getSortBy()).isEqualTo("lastName");
+        assertThat(next.getValue()).isEqualTo("Smith");
+        assertThat(next.getStudentId()).isEqualTo(2L);
+        assertThat(next.isBackward()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should count name-filtered pages instead of using the summary")
+    void shouldCountNameFilteredPages() {
+        // Given - a full page, so the total can't be inferred from content
+        Pageable pageable = PageRequest.of(0, 2);
+        StudentFilter filter = StudentFilter.builder()
+                .studentClass(StudentClass.Class1)
+                .name("do")
+                .build();
+        when(studentRepository.findContent(any(Specification.class), any(Pageable.class)))
+                .thenReturn(testStudents.subList(0, 2));
+        when(studentRepository.count(any(Specification.class))).thenReturn(7L);
+
+        // When
+        Page<StudentView> result = reportService.getStudents(filter, pageable);
+
+        // Then
+        assertThat(result.getTotalElements()).isEqualTo(7);
+        verifyNoInteractions(studentCountService);
+    }
 }
@@ -0,0 +1,174 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobType;
+import com.megan.dataproject.payload.PipelineRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResourceGovernorTest {
+
+    @TempDir
+    private Path storageDir;
+
+    private ResourceGovernor governor;
+    private long budget;
+
+    @BeforeEach
+    void setUp() {
+        governor = new ResourceGovernor(new FileStorageService(storageDir.toString()));
+        ReflectionTestUtils.setField(governor, "enabled", true);
+        ReflectionTestUtils.setField(governor, "heapFraction", 0.5);
+        ReflectionTestUtils.setField(governor, "diskHeadroom", DataSize.ofBytes(0));
+        ReflectionTestUtils.setField(governor, "exportWait", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(governor, "pipelineBatchSize", 1000);
+        ReflectionTestUtils.setField(governor, "pipelineChannelCapacity", 8);
+        budget = Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    private ResourceGovernor.Footprint memory(long bytes) {
+        return new ResourceGovernor.Footprint(bytes, 0);
+    }
+
+    @Test
+    @DisplayName("Should turn away work larger than the whole budget")
+    void shouldRejectWhatCanNeverFit() {
+        // Given
+        ResourceGovernor.Footprint tooMuchMemory = memory(budget + 1);
+        ResourceGovernor.Footprint tooMuchDisk = new ResourceGovernor.Footprint(0, Long.MAX_VALUE / 2);
+
+        // When / Then
+        assertThat(governor.checkFits(tooMuchMemory)).get().asString().contains("of memory");
+        assertThat(governor.checkFits(tooMuchDisk)).get().asString().contains("of disk");
+        assertThat(governor.checkFits(memory(budget / 4))).isEmpty();
+        assertThat(governor.getStatus()).containsEntry("rejected", 2L);
+    }
+
+    @Test
+    @DisplayName("Should make an export wait for room and give up after export-wait")
+    void shouldWaitForRoom() {
+        // Given - a job holds most of the budget
+        governor.tryReserve("job-1", "UPLOAD job", memory(budget * 3 / 4));
+
+        // When
+        boolean waitedOut = governor.awaitReservation("export-1", "CSV export", memory(budget / 2));
+        governor.release("job-1");
+        boolean reserved = governor.awaitReservation("export-2", "CSV export", memory(budget / 2));
+
+        // Then
+        assertThat(waitedOut).isFalse();
+        assertThat(reserved).isTrue();
+        assertThat(governor.getStatus())
+                .containsEntry("timedOut", 1L)
+                .containsEntry("memoryReservedBytes", budget / 2);
+        assertThat((List<?>) governor.getStatus().get("reservations")).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Should let work that doesn't fit run once nothing else is reserved")
+    void shouldRunAloneWhenIdle() {
+        // Given
+        ResourceGovernor.Footprint large = memory(budget * 3 / 4);
+
+        // When
+        boolean first = governor.tryReserve("job-1", "GENERATE job", large);
+        boolean second = governor.tryReserve("job-2", "GENERATE job", large);
+        governor.release("job-1");
+        boolean afterRelease = governor.tryReserve("job-2", "GENERATE job", large);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(afterRelease).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should hold back room for work that has been waiting")
+    void shouldHoldBackRoomForWaiter() {
+        // Given - half the budget is taken, so a large job has to wait
+        governor.tryReserve("job-1", "UPLOAD job", memory(budget / 2));
+        boolean large = governor.tryReserve("job-2", "GENERATE job", memory(budget * 3 / 4));
+
+        // When - smaller work would fit next to job-1, but not next to job-2 as well
+        boolean smallWhileWaiting = governor.tryReserve("job-3", "UPLOAD job", memory(budget / 3));
+        boolean exportWhileWaiting = governor.awaitReservation("export-1", "CSV export", memory(budget / 3));
+        governor.release("job-1");
+        boolean largeAfterRelease = governor.tryReserve("job-2", "GENERATE job", memory(budget * 3 / 4));
+
+        // Then - the large job gets the freed room first
+        assertThat(large).isFalse();
+        assertThat(smallWhileWaiting).isFalse();
+        assertThat(exportWhileWaiting).isFalse();
+        assertThat(largeAfterRelease).isTrue();
+        assertThat((List<?>) governor.getStatus().get("waiting")).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Should stop holding back room once the waiting work is dropped")
+    void shouldForgetDroppedWaiter() {
+        // Given - job-2 waits behind job-1 and holds back room from job-3
+        governor.tryReserve("job-1", "UPLOAD job", memory(budget / 2));
+        governor.tryReserve("job-2", "GENERATE job", memory(budget * 3 / 4));
+        boolean heldBack = governor.tryReserve("job-3", "UPLOAD job", memory(budget / 3));
+
+        // When - job-2 is cancelled before it starts
+        governor.release("job-2");
+        boolean afterDrop = governor.tryReserve("job-3", "UPLOAD job", memory(budget / 3));
+
+        // Then
+        assertThat(heldBack).isFalse();
+        assertThat(afterDrop).isTrue();
+        assertThat((List<?>) governor.getStatus().get("waiting")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should budget only its share of the disk in a cluster")
+    void shouldSplitDiskBetweenNodes() throws Exception {
+        // Given - a job writing half the free space
+        ResourceGovernor.Footprint halfTheDisk =
+                new ResourceGovernor.Footprint(0, Files.getFileStore(storageDir).getUsableSpace() / 2);
+
+        // When
+        boolean alone = governor.checkFits(halfTheDisk).isEmpty();
+        governor.setDiskShares(4);
+        boolean clustered = governor.checkFits(halfTheDisk).isEmpty();
+
+        // Then
+        assertThat(alone).isTrue();
+        assertThat(clustered).isFalse();
+        assertThat(governor.getStatus()).containsEntry("diskShares", 4);
+    }
+
+    @Test
+    @DisplayName("Should estimate disk only for the files a job keeps")
+    void shouldEstimateFromRowsAndFiles() {
+        // Given
+        PipelineRequest streamed = new PipelineRequest(100_000, List.of(JobType.GENERATE, JobType.UPLOAD), Set.of());
+        PipelineRequest kept = new PipelineRequest(100_000, List.of(JobType.GENERATE, JobType.UPLOAD),
+                Set.of(JobType.GENERATE));
+
+        // When
+        ResourceGovernor.Footprint streamedFootprint = governor.estimate(JobSpec.pipeline(streamed));
+        ResourceGovernor.Footprint keptFootprint = governor.estimate(JobSpec.pipeline(kept));
+        ResourceGovernor.Footprint generate = governor.estimate(JobSpec.generate(100_000));
+
+        // Then - an uploaded pipeline writes nothing unless asked; exports grow with their rows
+        assertThat(streamedFootprint.diskBytes()).isZero();
+        assertThat(keptFootprint.diskBytes()).isEqualTo(generate.diskBytes()).isPositive();
+        assertThat(governor.estimate(JobType.UPLOAD, 1L << 30).diskBytes()).isZero();
+        assertThat(governor.estimateExport(ResourceGovernor.Export.PDF, 100_000).memoryBytes())
+                .isGreaterThan(governor.estimateExport(ResourceGovernor.Export.CSV, 100_000).memoryBytes())
+                .isGreaterThan(governor.estimateExport(ResourceGovernor.Export.CSV, 1_000).memoryBytes());
+    }
+}
@@ -0,0 +1,142 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.ScoreBucket;
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.payload.ScoreStats;
+import com.megan.dataproject.repository.ScoreBucketRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ScoreStatsServiceTest {
+
+    @Mock
+    private ScoreBucketRepository scoreBucketRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private Executor dbExecutor;
+
+    @InjectMocks
+    private ScoreStatsService scoreStatsService;
+
+    private List<ScoreBucket> buckets;
+
+    @BeforeEach
+    void setUp() {
+        // Class1: 70 x2, 80 x1, 90 x1  -  Class2: 75 x4
+        buckets = List.of(
+                new ScoreBucket("Class1", 70, 2),
+                new ScoreBucket("Class1", 80, 1),
+                new ScoreBucket("Class1", 90, 1),
+                new ScoreBucket("Class2", 75, 4)
+        );
+    }
+
+    @Test
+    @DisplayName("Should compute count, mean, min, max and percentiles from buckets")
+    void shouldSummarizeOneClass() {
+        // Given
+        when(scoreBucketRepository.findByClassKey("Class1")).thenReturn(buckets.subList(0, 3));
+
+        // When
+        ScoreStats stats = scoreStatsService.getStats(StudentClass.Class1);
+
+        // Then
+        assertThat(stats.getCount()).isEqualTo(4);
+        assertThat(stats.getMean()).isCloseTo(77.5, within(0.001));
+        assertThat(stats.getMin()).isEqualTo(70);
+        assertThat(stats.getMax()).isEqualTo(90);
+        assertThat(stats.getPercentiles())
+                .containsEntry("p25", 70)
+                .containsEntry("p50", 70)
+                .containsEntry("p75", 80)
+                .containsEntry("p99", 90);
+    }
+
+    @Test
+    @DisplayName("Should return total first, then every class, with empty classes zeroed")
+    void shouldSummarizeAllClasses() {
+        // Given
+        when(scoreBucketRepository.findAll()).thenReturn(buckets);
+
+        // When
+        Map<String, ScoreStats> stats = scoreStatsService.getStatsByClass();
+
+        // Then
+        assertThat(List.copyOf(stats.keySet())).startsWith("total", "Class1", "Class2");
+        assertThat(stats.get("total").getCount()).isEqualTo(8);
+        assertThat(stats.get("Class2").getMean()).isEqualTo(75.0);
+        assertThat(stats.get("Class3").getCount()).isZero();
+        assertThat(stats.get("Class3").getMean()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should group histogram into ranges of bucket width")
+    void shouldGroupHistogram() {
+        // Given
+        when(scoreBucketRepository.findAll()).thenReturn(buckets);
+
+        // When
+        Map<String, Long> histogram = scoreStatsService.getHistogram(null, 10);
+
+        // Then
+        assertThat(histogram).containsExactly(
+                Map.entry("70-79", 6L),
+                Map.entry("80-89", 1L),
+                Map.entry("90-99", 1L));
+    }
+
+    @Test
+    @DisplayName("Should rebuild once off the job thread for ingests that committed rows")
+    void shouldRebuildAfterIngest() {
+        // Given - the executor holds the rebuild until the test runs it
+        List<Runnable> queued = new ArrayList<>();
+        doAnswer(invocation -> queued.add(invocation.getArgument(0))).when(dbExecutor).execute(any());
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // When - two ingests end before the rebuild starts; a third committed nothing
+        scoreStatsService.onStudentsIngested(new StudentsIngestedEvent("job-1", 1L, 10L, 10L));
+        scoreStatsService.onStudentsIngested(new StudentsIngestedEvent("job-2", 11L, 20L, 10L));
+        scoreStatsService.onStudentsIngested(new StudentsIngestedEvent("job-3", 21L, 21L, 0L));
+
+        // Then - nothing ran on the caller, and one rebuild covers both
+        verifyNoInteractions(jdbcTemplate, scoreBucketRepository);
+        assertThat(queued).hasSize(1);
+        queued.get(0).run();
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        verify(scoreBucketRepository).deleteAllInBatch();
+    }
+}
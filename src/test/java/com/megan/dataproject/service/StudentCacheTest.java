@@ -0,0 +1,100 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.Student;
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StudentCacheTest {
+
+    @Mock
+    private StudentRepository studentRepository;
+
+    @InjectMocks
+    private StudentCache studentCache;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(studentCache, "maxEntries", 2);
+        lenient().when(studentRepository.findByStudentId(anyLong())).thenAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            return id > 100 ? Optional.empty()
+                    : Optional.of(new Student(id, "First" + id, "Last" + id, LocalDate.of(2005, 1, 1), StudentClass.Class1, 80));
+        });
+    }
+
+    @Test
+    @DisplayName("Should serve repeated lookups, including misses, from the cache")
+    void shouldCacheHitsAndMisses() {
+        // When
+        Optional<StudentView> first = studentCache.get(1L);
+        Optional<StudentView> second = studentCache.get(1L);
+        studentCache.get(999L);
+        Optional<StudentView> missing = studentCache.get(999L);
+
+        // Then
+        assertThat(first).isEqualTo(second).isPresent();
+        assertThat(missing).isEmpty();
+        verify(studentRepository, times(1)).findByStudentId(1L);
+        verify(studentRepository, times(1)).findByStudentId(999L);
+        assertThat(studentCache.getStats())
+                .containsEntry("hits", 2L)
+                .containsEntry("misses", 2L)
+                .containsEntry("hitRate", 0.5);
+    }
+
+    @Test
+    @DisplayName("Should evict the least recently used entry when full")
+    void shouldEvictLeastRecentlyUsed() {
+        // Given - 1 is touched again, so 2 is the eldest when 3 arrives
+        studentCache.get(1L);
+        studentCache.get(2L);
+        studentCache.get(1L);
+
+        // When
+        studentCache.get(3L);
+        studentCache.get(1L);
+        studentCache.get(2L);
+
+        // Then
+        verify(studentRepository, times(1)).findByStudentId(1L);
+        verify(studentRepository, times(2)).findByStudentId(2L);
+        assertThat(studentCache.getStats()).containsEntry("size", 2).containsEntry("evictions", 2L);
+    }
+
+    @Test
+    @DisplayName("Should drop entries inside an ingested id range only")
+    void shouldInvalidateIdRange() {
+        // Given
+        studentCache.get(1L);
+        studentCache.get(50L);
+
+        // When
+        studentCache.invalidateRange(40L, 60L);
+        studentCache.get(1L);
+        studentCache.get(50L);
+
+        // Then
+        verify(studentRepository, times(1)).findByStudentId(1L);
+        verify(studentRepository, times(2)).findByStudentId(50L);
+        assertThat(studentCache.getStats()).containsEntry("invalidations", 1L);
+    }
+}
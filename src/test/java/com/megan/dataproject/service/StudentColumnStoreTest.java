@@ -0,0 +1,88 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.repository.StudentFilter;
+import com.megan.dataproject.repository.StudentView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StudentColumnStoreTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataVersionService dataVersionService;
+
+    @Mock
+    private ResultSet resultSet;
+
+    // Real template over a mock manager so the streaming load actually runs
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+    @InjectMocks
+    private StudentColumnStore studentColumnStore;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(studentColumnStore, "enabled", true);
+    }
+
+    @Test
+    @DisplayName("Should keep a null score null when loading the replica")
+    void shouldLoadNullScores() throws Exception {
+        // Given - student 1 has no score, student 2 has one; the mapper reads the real row mapper's columns
+        when(resultSet.getLong(1)).thenReturn(1L, 2L);
+        when(resultSet.getString(2)).thenReturn("John", "Jane");
+        when(resultSet.getString(3)).thenReturn("Doe", "Smith");
+        when(resultSet.getDate(4)).thenReturn(Date.valueOf("2005-01-01"), Date.valueOf("2005-01-02"));
+        when(resultSet.getString(5)).thenReturn("Class1", "Class2");
+        when(resultSet.getObject(6, Integer.class)).thenReturn(null, 90);
+        when(jdbcTemplate.queryForObject(any(String.class), eq(Long.class))).thenReturn(2L);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(resultSet);
+            handler.processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        // When
+        studentColumnStore.reload();
+        List<StudentView> all = studentColumnStore.findAll(new StudentFilter(), Sort.unsorted()).orElseThrow();
+        List<StudentView> scored = studentColumnStore.findAll(StudentFilter.builder().minScore(0).build(), Sort.unsorted())
+                .orElseThrow();
+
+        // Then - the null score is neither 0 nor matched by a score range
+        assertThat(all).containsExactly(
+                new StudentView(1L, "John", "Doe", LocalDate.of(2005, 1, 1), StudentClass.Class1, null),
+                new StudentView(2L, "Jane", "Smith", LocalDate.of(2005, 1, 2), StudentClass.Class2, 90));
+        assertThat(scored).extracting(StudentView::studentId).containsExactly(2L);
+    }
+}
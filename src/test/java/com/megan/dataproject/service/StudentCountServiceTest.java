@@ -0,0 +1,102 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.StudentClass;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The student_counts summary against H2, with ingest batches in their own transactions
+@DataJpaTest
+@ActiveProfiles("test")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(StudentCountService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StudentCountServiceTest {
+
+    @Autowired
+    private StudentCountService studentCountService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM students");
+        jdbcTemplate.update("DELETE FROM student_counts");
+    }
+
+    private void insertStudent(long id, StudentClass studentClass) {
+        jdbcTemplate.update("INSERT INTO students(student_id, first_name, last_name, dob, class, score) "
+                + "VALUES (?, 'John', 'Doe', DATE '2005-01-01', ?, 50)", id, studentClass.name());
+    }
+
+    @Test
+    @DisplayName("Should rebuild the summary from the students table")
+    void shouldRecountExactly() {
+        // Given
+        insertStudent(1, StudentClass.Class1);
+        insertStudent(2, StudentClass.Class1);
+        insertStudent(3, StudentClass.Class3);
+
+        // When
+        Map<StudentClass, Long> counts = studentCountService.recount();
+
+        // Then
+        assertThat(counts).containsEntry(StudentClass.Class1, 2L).containsEntry(StudentClass.Class2, 0L)
+                .containsEntry(StudentClass.Class3, 1L);
+        assertThat(studentCountService.getTotal()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should not lose a batch that commits while a recount runs")
+    void shouldKeepBatchCommittedDuringRecount() throws Exception {
+        // Given - a drifted summary, so the recount has a row to write, and a batch that has inserted
+        // and updated it but not committed
+        insertStudent(1, StudentClass.Class1);
+        studentCountService.recount();
+        jdbcTemplate.update("UPDATE student_counts SET row_count = 5 WHERE class_key = 'Class1'");
+        CountDownLatch batchUpdated = new CountDownLatch(1);
+        CountDownLatch commitBatch = new CountDownLatch(1);
+        CompletableFuture<Void> batch = CompletableFuture.runAsync(() ->
+                transactionTemplate.executeWithoutResult(status -> {
+                    insertStudent(2, StudentClass.Class1);
+                    studentCountService.applyDelta(Map.of(StudentClass.Class1, 1L));
+                    batchUpdated.countDown();
+                    try {
+                        commitBatch.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertThat(batchUpdated.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // When - the recount starts first, the batch commits while it waits
+        CompletableFuture<Map<StudentClass, Long>> recount = CompletableFuture.supplyAsync(studentCountService::recount);
+        Thread.sleep(200);
+        commitBatch.countDown();
+        batch.get(10, TimeUnit.SECONDS);
+        recount.get(10, TimeUnit.SECONDS);
+
+        // Then - the summary matches the table
+        assertThat(studentCountService.getCount(StudentClass.Class1)).isEqualTo(2);
+    }
+}
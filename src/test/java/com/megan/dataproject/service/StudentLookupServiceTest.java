@@ -0,0 +1,91 @@
+package com.megan.dataproject.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.megan.dataproject.model.StudentClass;
+import com.megan.dataproject.repository.StudentRepository;
+import com.megan.dataproject.repository.StudentView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StudentLookupServiceTest {
+
+    @Mock
+    private StudentRepository studentRepository;
+
+    @Mock
+    private StudentCache studentCache;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private StudentLookupService studentLookupService;
+
+    @BeforeEach
+    void setUp() {
+        studentLookupService = new StudentLookupService(studentRepository, studentCache, objectMapper);
+        ReflectionTestUtils.setField(studentLookupService, "maxIds", 5);
+    }
+
+    private StudentView student(Long id) {
+        return new StudentView(id, "First" + id, "Last" + id, LocalDate.of(2005, 1, 15), StudentClass.Class1, 80);
+    }
+
+    private long[] read(String json) throws Exception {
+        return studentLookupService.readIds(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("Should stream found students in request order and list missing ids")
+    void shouldStreamInRequestOrder() throws Exception {
+        // Given - 1 is cached, 3 comes from the database, 99 doesn't exist
+        when(studentCache.peek(anyCollection())).thenReturn(Map.of(1L, Optional.of(student(1L))));
+        when(studentRepository.findViews(any(Specification.class), any(Sort.class))).thenReturn(List.of(student(3L)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        studentLookupService.writeLookup(read("[3, 1, 99, \"3\"]"), out);
+
+        // Then
+        JsonNode data = objectMapper.readTree(out.toByteArray()).get("data");
+        assertThat(data.get("students")).extracting(node -> node.get("studentId").asLong()).containsExactly(3L, 1L);
+        assertThat(data.get("students").get(0).get("dob").asText()).isEqualTo("2005-01-15");
+        assertThat(data.get("missingIds")).extracting(JsonNode::asLong).containsExactly(99L);
+        assertThat(data.get("requested").asInt()).isEqualTo(3);
+        assertThat(data.get("found").asInt()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should reject bodies that are not an id array or exceed the limit")
+    void shouldRejectInvalidBodies() {
+        assertThatThrownBy(() -> read("{\"ids\": [1]}")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> read("[1, \"abc\"]")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> read("[1, 2, 3, 4, 5, 6]"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("At most 5");
+    }
+}
@@ -0,0 +1,122 @@
+package com.megan.dataproject.service;
+
+import com.megan.dataproject.model.JobRecord;
+import com.megan.dataproject.model.JobStatus;
+import com.megan.dataproject.repository.JobRecordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TieredJobStoreTest {
+
+    @Mock
+    private JobRecordRepository jobRecordRepository;
+
+    @InjectMocks
+    private TieredJobStore jobStore;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jobStore, "hotMaxEntries", 2);
+        ReflectionTestUtils.setField(jobStore, "hotTtl", Duration.ofHours(1));
+        ReflectionTestUtils.setField(jobStore, "retention", Duration.ofDays(7));
+    }
+
+    private JobService.JobInfo job(JobStatus status, long processed) {
+        return new JobService.JobInfo(status, null, 0, processed, 0, null, null, null, null);
+    }
+
+    @Test
+    @DisplayName("Should coalesce progress updates into one write per flush")
+    void shouldCoalesceUpdates() {
+        // Given
+        for (long rows = 10000; rows <= 50000; rows += 10000) {
+            jobStore.save("job-1", job(JobStatus.PROCESSING, rows));
+        }
+        ArgumentCaptor<List<JobRecord>> records = ArgumentCaptor.forClass(List.class);
+
+        // When
+        jobStore.flush();
+        jobStore.flush();
+
+        // Then - the second flush had nothing to write
+        verify(jobRecordRepository, times(1)).saveAll(records.capture());
+        assertThat(records.getValue()).singleElement()
+                .satisfies(record -> assertThat(record.getProcessedCount()).isEqualTo(50000));
+    }
+
+    @Test
+    @DisplayName("Should write terminal status through without waiting for a flush")
+    void shouldWriteThroughOnSaveNow() {
+        // Given
+        jobStore.save("job-1", job(JobStatus.PROCESSING, 100));
+
+        // When
+        jobStore.saveNow("job-1", job(JobStatus.COMPLETED, 100));
+        jobStore.flush();
+
+        // Then
+        verify(jobRecordRepository).save(any(JobRecord.class));
+        verify(jobRecordRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("Should reload evicted jobs from the durable tier")
+    void shouldReloadEvictedJobs() {
+        // Given - capacity 2, so job-1 is evicted by job-3
+        jobStore.saveNow("job-1", job(JobStatus.COMPLETED, 5));
+        jobStore.saveNow("job-2", job(JobStatus.COMPLETED, 6));
+        jobStore.saveNow("job-3", job(JobStatus.COMPLETED, 7));
+        when(jobRecordRepository.findById("job-1")).thenReturn(Optional.of(
+                new JobRecord("job-1", JobStatus.COMPLETED, "/tmp/out.csv", 100, 5, 5, Instant.now())));
+
+        // When
+        Optional<JobService.JobInfo> reloaded = jobStore.find("job-1");
+
+        // Then
+        assertThat(jobStore.hotSize()).isEqualTo(2);
+        assertThat(reloaded).isPresent();
+        assertThat(reloaded.get().getResult()).isEqualTo("/tmp/out.csv");
+        verify(jobRecordRepository, never()).findById("job-3");
+    }
+
+    @Test
+    @DisplayName("Should cache and coalesce only the jobs this node runs when the table is shared")
+    void shouldReadOtherNodesJobsFromTable() {
+        // Given - job-1 was submitted here but another node runs it; job-2 runs here
+        ReflectionTestUtils.setField(jobStore, "shared", true);
+        jobStore.save("job-1", job(JobStatus.SUBMITTED, 0));
+        when(jobRecordRepository.findById("job-1")).thenReturn(Optional.of(
+                new JobRecord("job-1", JobStatus.PROCESSING, null, 40, 40000, 100000, Instant.now())));
+        jobStore.own("job-2");
+
+        // When
+        Optional<JobService.JobInfo> remote = jobStore.find("job-1");
+        jobStore.save("job-2", job(JobStatus.PROCESSING, 10000));
+
+        // Then - job-1 was written through and read back from the table; job-2 waits for the flush
+        verify(jobRecordRepository).save(any(JobRecord.class));
+        assertThat(remote).map(JobService.JobInfo::getProcessedCount).contains(40000L);
+        assertThat(jobStore.find("job-2")).map(JobService.JobInfo::getProcessedCount).contains(10000L);
+        verify(jobRecordRepository, never()).findById("job-2");
+    }
+}
@@ -0,0 +1,43 @@
+package com.megan.dataproject.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class HyperLogLogTest {
+
+    @Test
+    @DisplayName("Should count small cardinalities exactly enough to ignore duplicates")
+    void shouldIgnoreDuplicates() {
+        // Given
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("name" + (i % 50));
+        }
+
+        // Then
+        assertThat(sketch.estimate()).isCloseTo(50L, within(1L));
+    }
+
+    @Test
+    @DisplayName("Should estimate the union of merged sketches within a few percent")
+    void shouldMergeSketches() {
+        // Given - overlapping ranges, 100,000 distinct values in total
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < 60000; i++) {
+            first.add("name" + i);
+        }
+        for (int i = 40000; i < 100000; i++) {
+            second.add("name" + i);
+        }
+
+        // When
+        first.merge(second);
+
+        // Then
+        assertThat(first.estimate()).isCloseTo(100000L, within(5000L));
+    }
+}
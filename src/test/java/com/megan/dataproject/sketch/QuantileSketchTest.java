@@ -0,0 +1,65 @@
+package com.megan.dataproject.sketch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class QuantileSketchTest {
+
+    @Test
+    @DisplayName("Should give exact quantiles while distinct values fit")
+    void shouldBeExactForFewDistinctValues() {
+        // Given
+        QuantileSketch sketch = new QuantileSketch();
+        for (int score = 1; score <= 100; score++) {
+            sketch.add(score);
+        }
+
+        // Then
+        assertThat(sketch.getWidth()).isEqualTo(1);
+        assertThat(sketch.quantile(0.5)).isEqualTo(50);
+        assertThat(sketch.quantile(0.99)).isEqualTo(99);
+        assertThat(sketch.getMean()).isEqualTo(50.5);
+    }
+
+    @Test
+    @DisplayName("Should stay within half a bucket after coarsening and merging")
+    void shouldBoundErrorAfterMerge() {
+        // Given - two halves of 0..19999 in sketches limited to 64 buckets
+        QuantileSketch first = new QuantileSketch(64);
+        QuantileSketch second = new QuantileSketch(64);
+        for (int i = 0; i < 10000; i++) {
+            first.add(i);
+            second.add(10000 + i);
+        }
+
+        // When
+        first.merge(second);
+
+        // Then
+        long halfBucket = first.getWidth() / 2;
+        assertThat(first.getCount()).isEqualTo(20000);
+        assertThat(first.getMin()).isZero();
+        assertThat(first.getMax()).isEqualTo(19999);
+        assertThat(first.quantile(0.5)).isCloseTo(9999L, within(halfBucket));
+        assertThat(first.quantile(0.9)).isCloseTo(17999L, within(halfBucket));
+    }
+
+    @Test
+    @DisplayName("Should keep exact counts when values arrive below the lowest bucket")
+    void shouldShiftForNewMinimum() {
+        // Given - descending values either side of zero
+        QuantileSketch sketch = new QuantileSketch(16);
+        for (int value = 5; value >= -10; value--) {
+            sketch.add(value);
+        }
+
+        // Then - 16 distinct values fill the slots exactly, so nothing coarsened
+        assertThat(sketch.getWidth()).isEqualTo(1);
+        assertThat(sketch.quantile(0)).isEqualTo(-10);
+        assertThat(sketch.quantile(0.5)).isEqualTo(-3);
+        assertThat(sketch.quantile(1)).isEqualTo(5);
+    }
+}